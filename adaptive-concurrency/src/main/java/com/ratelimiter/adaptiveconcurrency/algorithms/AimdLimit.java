@@ -0,0 +1,66 @@
+package com.ratelimiter.adaptiveconcurrency.algorithms;
+
+/**
+ * Additive increase, multiplicative decrease: the limit grows by one per window while requests succeed
+ * and are fast enough, and shrinks by the backoff ratio when a request is dropped or the average
+ * round trip exceeds the latency threshold.
+ * <p>
+ * Simple and predictable, but it only reacts once the downstream is already overloaded or too slow.
+ */
+public class AimdLimit implements LimitAlgorithm {
+
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+
+    private AimdLimit(Builder builder) {
+        this.backoffRatio = builder.backoffRatio;
+        this.latencyThresholdNanos = builder.latencyThresholdMillis * 1_000_000L;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public double update(double limit, long rttNanos, int maxInFlight, boolean dropped) {
+        if (dropped || rttNanos > latencyThresholdNanos) {
+            return limit * backoffRatio;
+        }
+        if (maxInFlight * 2 < limit) {
+            // Requests never came close to the limit, so the window says nothing about a higher one
+            return limit;
+        }
+        return limit + 1;
+    }
+
+    public static class Builder {
+        private double backoffRatio = 0.9;
+        private long latencyThresholdMillis = 5_000;
+
+        /**
+         * Sets the factor applied to the limit on a drop or a slow window. Defaults to 0.9.
+         */
+        public Builder withBackoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * Sets the average round trip above which a window counts as a drop. Defaults to 5 seconds.
+         */
+        public Builder withLatencyThresholdMillis(long latencyThresholdMillis) {
+            this.latencyThresholdMillis = latencyThresholdMillis;
+            return this;
+        }
+
+        public AimdLimit build() {
+            if (backoffRatio <= 0 || backoffRatio >= 1) {
+                throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+            }
+            if (latencyThresholdMillis <= 0) {
+                throw new IllegalArgumentException("Latency threshold must be greater than 0");
+            }
+            return new AimdLimit(this);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.ratelimiter.adaptiveconcurrency.algorithms;
+
+/**
+ * Scales the limit by the gradient between a long-term and the current round trip.
+ * <p>
+ * The long-term round trip is an exponential average over many windows. While the current round trip
+ * stays within the tolerance of it, the gradient is 1 and the limit grows by a queue allowance of
+ * {@code sqrt(limit)}; as the current round trip rises, the gradient falls towards 0.5 and the limit
+ * shrinks in proportion. Each step moves the limit only part of the way, set by the smoothing factor.
+ * <p>
+ * Reacts to queueing before requests fail, and tolerates a baseline that drifts over time.
+ */
+public class GradientLimit implements LimitAlgorithm {
+
+    private final double tolerance;
+    private final double longWindowWeight;
+    private final double smoothing;
+
+    // Written only from update, which the limiter never runs concurrently
+    private double longRttNanos;
+
+    private GradientLimit(Builder builder) {
+        this.tolerance = builder.tolerance;
+        this.longWindowWeight = 2.0 / (builder.longWindows + 1);
+        this.smoothing = builder.smoothing;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public double update(double limit, long rttNanos, int maxInFlight, boolean dropped) {
+        if (rttNanos == 0) {
+            // Only drops in this window; back off without touching the baseline
+            return dropped ? limit * 0.5 : limit;
+        }
+        if (longRttNanos == 0) {
+            longRttNanos = rttNanos;
+        } else {
+            longRttNanos += (rttNanos - longRttNanos) * longWindowWeight;
+        }
+        if (longRttNanos / rttNanos > 2) {
+            // The round trip dropped well below the baseline; let the baseline catch up faster
+            longRttNanos *= 0.95;
+        }
+        if (maxInFlight * 2 < limit) {
+            // Requests never came close to the limit, so the window says nothing about a higher one
+            return limit;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / rttNanos));
+        double target = limit * gradient + Math.sqrt(limit);
+        return limit * (1 - smoothing) + target * smoothing;
+    }
+
+    public static class Builder {
+        private double tolerance = 1.5;
+        private int longWindows = 600;
+        private double smoothing = 0.2;
+
+        /**
+         * Sets how much slower than the long-term round trip a window may be before the limit shrinks.
+         * Defaults to 1.5.
+         */
+        public Builder withTolerance(double tolerance) {
+            this.tolerance = tolerance;
+            return this;
+        }
+
+        /**
+         * Sets the number of windows the long-term round trip averages over. Defaults to 600.
+         */
+        public Builder withLongWindows(int longWindows) {
+            this.longWindows = longWindows;
+            return this;
+        }
+
+        /**
+         * Sets the fraction of the way to the new limit taken per window. Defaults to 0.2.
+         */
+        public Builder withSmoothing(double smoothing) {
+            this.smoothing = smoothing;
+            return this;
+        }
+
+        public GradientLimit build() {
+            if (tolerance < 1) {
+                throw new IllegalArgumentException("Tolerance must be at least 1");
+            }
+            if (longWindows <= 0) {
+                throw new IllegalArgumentException("Long windows must be greater than 0");
+            }
+            if (smoothing <= 0 || smoothing > 1) {
+                throw new IllegalArgumentException("Smoothing must be greater than 0 and at most 1");
+            }
+            return new GradientLimit(this);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.ratelimiter.adaptiveconcurrency.algorithms;
+
+/**
+ * Computes the next concurrency limit from one window of round-trip samples.
+ * <p>
+ * The limiter calls {@link #update} from one thread at a time, once per sample window, so implementations
+ * may keep their state in plain fields. Each limiter creates its own instance from the configured factory.
+ */
+public interface LimitAlgorithm {
+
+    /**
+     * @param limit       The current limit, possibly fractional.
+     * @param rttNanos    The average round trip of the window's successful requests, or 0 if there were none.
+     * @param maxInFlight The most requests in flight at once during the window.
+     * @param dropped     true if any request of the window was dropped or timed out.
+     * @return The next limit; the limiter clamps it to its minimum and maximum.
+     */
+    double update(double limit, long rttNanos, int maxInFlight, boolean dropped);
+}
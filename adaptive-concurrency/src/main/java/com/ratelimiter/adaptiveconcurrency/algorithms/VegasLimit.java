@@ -0,0 +1,133 @@
+package com.ratelimiter.adaptiveconcurrency.algorithms;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Estimates the downstream queue from the lowest round trip seen, as TCP Vegas does.
+ * <p>
+ * With {@code noLoadRtt} the fastest round trip observed, the queue is
+ * {@code limit * (1 - noLoadRtt / rtt)}. Below {@code alpha} queued requests the limit grows, above
+ * {@code beta} it shrinks, and in between it holds; both thresholds scale with {@code log10(limit)}.
+ * Since the fastest round trip may no longer be reachable, it is re-measured after a jittered number
+ * of windows proportional to the limit.
+ * <p>
+ * Holds a small, stable queue at the downstream, but assumes the fastest round trip reflects an idle one.
+ */
+public class VegasLimit implements LimitAlgorithm {
+
+    private final int alpha;
+    private final int beta;
+    private final double smoothing;
+    private final int probeMultiplier;
+
+    // Written only from update, which the limiter never runs concurrently
+    private long noLoadRttNanos;
+    private long windowsUntilProbe;
+
+    private VegasLimit(Builder builder) {
+        this.alpha = builder.alpha;
+        this.beta = builder.beta;
+        this.smoothing = builder.smoothing;
+        this.probeMultiplier = builder.probeMultiplier;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public double update(double limit, long rttNanos, int maxInFlight, boolean dropped) {
+        double log = Math.max(1, Math.log10(limit));
+        if (dropped) {
+            return smooth(limit, limit - log);
+        }
+        if (rttNanos == 0) {
+            return limit;
+        }
+        if (--windowsUntilProbe <= 0) {
+            // Forget the fastest round trip so a permanently slower downstream becomes the new baseline
+            noLoadRttNanos = rttNanos;
+            windowsUntilProbe = (long) (probeMultiplier * limit * (0.5 + ThreadLocalRandom.current().nextDouble()));
+            return limit;
+        }
+        if (rttNanos < noLoadRttNanos) {
+            noLoadRttNanos = rttNanos;
+            return limit;
+        }
+        if (maxInFlight * 2 < limit) {
+            // Requests never came close to the limit, so the window says nothing about a higher one
+            return limit;
+        }
+
+        double queue = Math.ceil(limit * (1 - (double) noLoadRttNanos / rttNanos));
+        double target;
+        if (queue <= log) {
+            // Barely any queue: grow fast
+            target = limit + beta * log;
+        } else if (queue < alpha * log) {
+            target = limit + log;
+        } else if (queue > beta * log) {
+            target = limit - log;
+        } else {
+            return limit;
+        }
+        return smooth(limit, target);
+    }
+
+    private double smooth(double limit, double target) {
+        return limit * (1 - smoothing) + target * smoothing;
+    }
+
+    public static class Builder {
+        private int alpha = 3;
+        private int beta = 6;
+        private double smoothing = 1.0;
+        private int probeMultiplier = 30;
+
+        /**
+         * Sets the queue, in multiples of {@code log10(limit)}, below which the limit grows. Defaults to 3.
+         */
+        public Builder withAlpha(int alpha) {
+            this.alpha = alpha;
+            return this;
+        }
+
+        /**
+         * Sets the queue, in multiples of {@code log10(limit)}, above which the limit shrinks. Defaults to 6.
+         */
+        public Builder withBeta(int beta) {
+            this.beta = beta;
+            return this;
+        }
+
+        /**
+         * Sets the fraction of the way to the new limit taken per window. Defaults to 1, no smoothing.
+         */
+        public Builder withSmoothing(double smoothing) {
+            this.smoothing = smoothing;
+            return this;
+        }
+
+        /**
+         * Sets how many windows per unit of limit pass before the fastest round trip is re-measured.
+         * Defaults to 30.
+         */
+        public Builder withProbeMultiplier(int probeMultiplier) {
+            this.probeMultiplier = probeMultiplier;
+            return this;
+        }
+
+        public VegasLimit build() {
+            if (alpha <= 0 || beta <= alpha) {
+                throw new IllegalArgumentException("Alpha must be greater than 0 and beta greater than alpha");
+            }
+            if (smoothing <= 0 || smoothing > 1) {
+                throw new IllegalArgumentException("Smoothing must be greater than 0 and at most 1");
+            }
+            if (probeMultiplier <= 0) {
+                throw new IllegalArgumentException("Probe multiplier must be greater than 0");
+            }
+            return new VegasLimit(this);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.ratelimiter.adaptiveconcurrency.configs;
+
+import com.ratelimiter.adaptiveconcurrency.algorithms.GradientLimit;
+import com.ratelimiter.adaptiveconcurrency.algorithms.LimitAlgorithm;
+import com.ratelimiter.common.clock.Clock;
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
+
+import java.util.function.Supplier;
+
+/**
+ * Configuration class for an adaptive limit on the requests in flight to one downstream.
+ * <p>
+ * Instead of a fixed number of requests per time unit, the limiter caps how many requests may run at
+ * once and lets a {@link LimitAlgorithm} move that cap from the observed round trips. Samples are
+ * gathered into windows of at least {@link Builder#withWindow(long, int) minWindowMillis} and
+ * {@code minSamples}; when a window closes, the algorithm sees its average round trip, its peak
+ * concurrency and whether anything was dropped, and returns the next limit.
+ * <p>
+ * This class only holds settings. Each {@code RateLimiterAdaptiveConcurrencyImpl} keeps its own in-flight
+ * count, window and current limit, and creates its own algorithm from the configured factory, so several
+ * limiters built from one configuration neither race on nor mix the round-trip baselines of their
+ * downstreams.
+ */
+public class RateLimiterAdaptiveConcurrency {
+
+    public static final String METRICS_NAME = "adaptive-concurrency";
+
+    private final Supplier<LimitAlgorithm> algorithmFactory;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long minWindowMillis;
+    private final int minSamples;
+    private final Clock clock;
+    private final RateLimiterMetrics metrics;
+    private final String metricsName;
+
+    private RateLimiterAdaptiveConcurrency(Builder builder) {
+        this.algorithmFactory = builder.algorithmFactory != null
+                ? builder.algorithmFactory
+                : () -> GradientLimit.builder().build();
+        this.initialLimit = builder.initialLimit;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.minWindowMillis = builder.minWindowMillis;
+        this.minSamples = builder.minSamples;
+        this.clock = builder.clock;
+        this.metrics = builder.metrics;
+        this.metricsName = builder.metricsName;
+    }
+
+    /**
+     * @return Creates the algorithm of each limiter built from this configuration.
+     */
+    public Supplier<LimitAlgorithm> getAlgorithmFactory() {
+        return algorithmFactory;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public long getMinWindowMillis() {
+        return minWindowMillis;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    public RateLimiterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The name this limiter's measurements are recorded under.
+     */
+    public String getMetricsName() {
+        return metricsName;
+    }
+
+    public static class Builder {
+        private Supplier<LimitAlgorithm> algorithmFactory;
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 1_000;
+        private long minWindowMillis = 250;
+        private int minSamples = 10;
+        private Clock clock = Clock.SYSTEM;
+        private RateLimiterMetrics metrics = RateLimiterMetrics.NOOP;
+        private String metricsName = METRICS_NAME;
+
+        /**
+         * Sets how the limit follows the round trips. Defaults to a {@link GradientLimit} with its defaults.
+         * Algorithms keep state between windows, so the factory is called once per limiter and must
+         * return a new instance each time, e.g. {@code () -> VegasLimit.builder().build()}.
+         */
+        public Builder withAlgorithm(Supplier<LimitAlgorithm> algorithmFactory) {
+            this.algorithmFactory = algorithmFactory;
+            return this;
+        }
+
+        /**
+         * Sets the limit used until the first window closes. Defaults to 20.
+         */
+        public Builder withInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * Sets the lowest limit the algorithm can reach. Defaults to 1.
+         */
+        public Builder withMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        /**
+         * Sets the highest limit the algorithm can reach. Defaults to 1000.
+         */
+        public Builder withMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Sets how long and how many samples a window needs before the limit is updated.
+         * Defaults to 250 milliseconds and 10 samples.
+         */
+        public Builder withWindow(long minWindowMillis, int minSamples) {
+            this.minWindowMillis = minWindowMillis;
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * Sets where decisions are recorded. Defaults to {@link RateLimiterMetrics#NOOP}.
+         */
+        public Builder withMetrics(RateLimiterMetrics metrics) {
+            this.metrics = metrics != null ? metrics : RateLimiterMetrics.NOOP;
+            return this;
+        }
+
+        /**
+         * Sets the name measurements are recorded under, so several limiters sharing one metrics sink
+         * report separately. Defaults to {@link RateLimiterAdaptiveConcurrency#METRICS_NAME}.
+         */
+        public Builder withMetricsName(String metricsName) {
+            this.metricsName = metricsName != null ? metricsName : METRICS_NAME;
+            return this;
+        }
+
+        /**
+         * Sets the time source for the sample windows. Defaults to {@link Clock#SYSTEM}.
+         */
+        public Builder withClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public RateLimiterAdaptiveConcurrency build() {
+            if (minLimit <= 0) {
+                throw new IllegalArgumentException("Min limit must be greater than 0");
+            }
+            if (maxLimit < minLimit) {
+                throw new IllegalArgumentException("Max limit must not be lower than the min limit");
+            }
+            if (initialLimit < minLimit || initialLimit > maxLimit) {
+                throw new IllegalArgumentException("Initial limit must be between the min and max limits");
+            }
+            if (minWindowMillis <= 0) {
+                throw new IllegalArgumentException("Min window must be greater than 0");
+            }
+            if (minSamples <= 0) {
+                throw new IllegalArgumentException("Min samples must be greater than 0");
+            }
+            if (clock == null) {
+                throw new IllegalArgumentException("Clock must not be null");
+            }
+            return new RateLimiterAdaptiveConcurrency(this);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.ratelimiter.adaptiveconcurrency.service;
+
+import com.ratelimiter.adaptiveconcurrency.algorithms.LimitAlgorithm;
+import com.ratelimiter.adaptiveconcurrency.configs.RateLimiterAdaptiveConcurrency;
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementation of the adaptive concurrency limit.
+ * <p>
+ * Every {@link #tryAcquire()} must be paired with exactly one of {@link #release(long)},
+ * {@link #releaseDropped()} or {@link #releaseIgnored()}, typically in a {@code finally} block.
+ * Acquiring is a CAS on the in-flight counter and releasing a few atomic adds; neither takes a lock
+ * or allocates. The window is closed by whichever releasing thread first wins a flag, while the others
+ * carry on. Each instance keeps its own state, starting from the configured initial limit, and its own
+ * {@link LimitAlgorithm}, which only the thread holding that flag updates.
+ */
+public class RateLimiterAdaptiveConcurrencyImpl {
+
+    private final RateLimiterAdaptiveConcurrency config;
+    private final LimitAlgorithm algorithm;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicLong rttSumNanos = new AtomicLong();
+    private final AtomicInteger samples = new AtomicInteger();
+    private final AtomicBoolean dropped = new AtomicBoolean();
+    private final AtomicBoolean updating = new AtomicBoolean();
+    private volatile long windowStartMillis;
+    // The fractional limit is only read and written by the thread holding the updating flag
+    private double exactLimit;
+    private volatile int limit;
+
+    public RateLimiterAdaptiveConcurrencyImpl(RateLimiterAdaptiveConcurrency config) {
+        this.config = config;
+        this.algorithm = config.getAlgorithmFactory().get();
+        if (algorithm == null) {
+            throw new IllegalArgumentException("Algorithm factory must not return null");
+        }
+        this.exactLimit = config.getInitialLimit();
+        this.limit = config.getInitialLimit();
+        this.windowStartMillis = config.getClock().currentTimeMillis();
+    }
+
+    /**
+     * Takes one in-flight slot if the current limit allows it.
+     *
+     * @return true if the request may proceed, false if it should be rejected.
+     */
+    public boolean tryAcquire() {
+        RateLimiterMetrics metrics = config.getMetrics();
+        if (!metrics.isEnabled()) {
+            return acquire();
+        }
+        long start = System.nanoTime();
+        boolean allowed = acquire();
+        metrics.recordDecision(config.getMetricsName(), allowed, System.nanoTime() - start);
+        return allowed;
+    }
+
+    /**
+     * Frees a slot after a successful request and feeds its round trip to the algorithm.
+     *
+     * @param latencyNanos The time the request took, in nanoseconds.
+     */
+    public void release(long latencyNanos) {
+        inFlight.decrementAndGet();
+        if (latencyNanos > 0) {
+            rttSumNanos.addAndGet(latencyNanos);
+            samples.incrementAndGet();
+        }
+        maybeUpdateLimit();
+    }
+
+    /**
+     * Frees a slot after a request the downstream rejected or that timed out, signalling overload.
+     */
+    public void releaseDropped() {
+        inFlight.decrementAndGet();
+        dropped.set(true);
+        maybeUpdateLimit();
+    }
+
+    /**
+     * Frees a slot without a sample, for requests that failed for reasons unrelated to the downstream's load.
+     */
+    public void releaseIgnored() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * @return The number of requests currently allowed in flight.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return The number of requests currently in flight.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private boolean acquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+
+        int max;
+        while ((max = maxInFlight.get()) <= current && !maxInFlight.compareAndSet(max, current + 1)) {
+            // Retry until the peak is at least our own count
+        }
+        return true;
+    }
+
+    private void maybeUpdateLimit() {
+        long now = config.getClock().currentTimeMillis();
+        if (!windowComplete(now) || !updating.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // Another thread may have closed the window between our check and the flag
+            if (!windowComplete(now)) {
+                return;
+            }
+            windowStartMillis = now;
+            int windowSamples = samples.getAndSet(0);
+            long windowRttSumNanos = rttSumNanos.getAndSet(0);
+            boolean windowDropped = dropped.getAndSet(false);
+            // Start the next window's peak from what is already in flight
+            int windowMaxInFlight = maxInFlight.getAndSet(inFlight.get());
+
+            long rttNanos = windowSamples == 0 ? 0 : windowRttSumNanos / windowSamples;
+            setLimit(algorithm.update(exactLimit, rttNanos, windowMaxInFlight, windowDropped));
+        } finally {
+            updating.set(false);
+        }
+    }
+
+    /**
+     * Stores a newly computed limit, clamped to the configured minimum and maximum.
+     * Only called by the thread holding the updating flag.
+     */
+    private void setLimit(double newLimit) {
+        double clamped = Double.isNaN(newLimit)
+                ? exactLimit
+                : Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), newLimit));
+        exactLimit = clamped;
+        limit = (int) clamped;
+    }
+
+    /**
+     * A window closes once it is old enough and has enough round trips. A drop closes it without the
+     * round trips, so overload is answered even when few requests complete.
+     */
+    private boolean windowComplete(long now) {
+        return now - windowStartMillis >= config.getMinWindowMillis()
+                && (samples.get() >= config.getMinSamples() || dropped.get());
+    }
+}
@@ -0,0 +1,30 @@
+package com.ratelimiter.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the selected benchmarks once per thread count with the GC profiler attached,
+ * so every result reports throughput, sample-time latency and allocation rate.
+ * <p>
+ * Usage: {@code java -jar benchmarks/target/benchmarks.jar [JMH options]}; thread counts default to
+ * 1, 2, 4, 8, 16, 32 and 64 and can be overridden with {@code -Dthreads=1,8,32}.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        for (String threads : System.getProperty("threads", "1,2,4,8,16,32,64").split(",")) {
+            new Runner(new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .addProfiler(GCProfiler.class)
+                    .build())
+                    .run();
+        }
+    }
+}
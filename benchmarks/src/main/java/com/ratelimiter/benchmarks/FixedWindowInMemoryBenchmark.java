@@ -0,0 +1,55 @@
+package com.ratelimiter.benchmarks;
+
+import com.rate.limiter.fixedwindow.configs.RateLimiterFixedWindowInMemory;
+import com.rate.limiter.fixedwindow.constants.FixedWindowInMemoryMode;
+import com.rate.limiter.fixedwindow.service.inmemory.RateLimiterFixedWindowInMemoryImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class FixedWindowInMemoryBenchmark {
+
+    @Param({"COMPUTE", "ATOMIC"})
+    public FixedWindowInMemoryMode mode;
+
+    private RateLimiterFixedWindowInMemory allowConfig;
+    private RateLimiterFixedWindowInMemory denyConfig;
+    private RateLimiterFixedWindowInMemoryImpl allowLimiter;
+    private RateLimiterFixedWindowInMemoryImpl denyLimiter;
+
+    @Setup
+    public void setup(KeyWorkload workload) {
+        // Windows outlast the trial so the deny limiter keeps denying after each key's first check
+        allowConfig = new RateLimiterFixedWindowInMemory.Builder()
+                .withLimit(Integer.MAX_VALUE >> 1)
+                .withWindowSize(TimeUnit.HOURS.toMillis(1))
+                .withMode(mode)
+                .build();
+        denyConfig = new RateLimiterFixedWindowInMemory.Builder()
+                .withLimit(1)
+                .withWindowSize(TimeUnit.HOURS.toMillis(1))
+                .withMode(mode)
+                .build();
+        allowLimiter = new RateLimiterFixedWindowInMemoryImpl(allowConfig);
+        denyLimiter = new RateLimiterFixedWindowInMemoryImpl(denyConfig);
+        workload.prefill(keys -> keys.forEach(allowLimiter::isAllowed), keys -> keys.forEach(denyLimiter::isAllowed));
+    }
+
+    @TearDown
+    public void tearDown() {
+        allowConfig.shutdown();
+        denyConfig.shutdown();
+    }
+
+    @Benchmark
+    public boolean isAllowed(KeyWorkload workload, KeyCursor cursor) {
+        String key = cursor.next();
+        return cursor.allowed() ? allowLimiter.isAllowed(key) : denyLimiter.isAllowed(key);
+    }
+}
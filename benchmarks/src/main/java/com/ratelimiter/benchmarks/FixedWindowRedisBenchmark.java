@@ -0,0 +1,44 @@
+package com.ratelimiter.benchmarks;
+
+import com.rate.limiter.fixedwindow.configs.RateLimiterFixedWindowWithRedis;
+import com.rate.limiter.fixedwindow.service.redis.RateLimiterFixedWindowWithRedisImpl;
+import com.ratelimiter.common.models.RedisClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class FixedWindowRedisBenchmark {
+
+    private final LocalRedis localRedis = new LocalRedis();
+    private RateLimiterFixedWindowWithRedisImpl allowLimiter;
+    private RateLimiterFixedWindowWithRedisImpl denyLimiter;
+
+    @Setup
+    public void setup(KeyWorkload workload) {
+        RedisClient redisClient = localRedis.start();
+        allowLimiter = RateLimiterFixedWindowWithRedisImpl.builder()
+                .withFixedWindowWithRedis(new RateLimiterFixedWindowWithRedis(redisClient, 3600, Integer.MAX_VALUE))
+                .build();
+        denyLimiter = RateLimiterFixedWindowWithRedisImpl.builder()
+                .withFixedWindowWithRedis(new RateLimiterFixedWindowWithRedis(redisClient, 3600, 1))
+                .build();
+        workload.prefill(allowLimiter::isAllowedBatch, denyLimiter::isAllowedBatch);
+    }
+
+    @TearDown
+    public void tearDown() {
+        localRedis.stop();
+    }
+
+    @Benchmark
+    public boolean isAllowed(KeyWorkload workload, KeyCursor cursor) {
+        String key = cursor.next();
+        return cursor.allowed() ? allowLimiter.isAllowed(key) : denyLimiter.isAllowed(key);
+    }
+}
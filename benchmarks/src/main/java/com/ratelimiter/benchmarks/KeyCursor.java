@@ -0,0 +1,69 @@
+package com.ratelimiter.benchmarks;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+
+/**
+ * Per-thread precomputed sequence of key indexes, so drawing a key costs two array reads
+ * rather than a random number and a string build inside the measured method.
+ * <p>
+ * A uniform sequence is shifted by a random offset each time it wraps around, so over a trial the
+ * checks reach the whole key space rather than only the keys of one pass; a shifted uniform sample
+ * is still uniform. A Zipfian sequence is replayed as drawn, since shifting it would move the hot keys;
+ * its tail is represented by the keys {@link KeyWorkload#prefill prefilled} into the limiters.
+ */
+@State(Scope.Thread)
+public class KeyCursor {
+
+    private static final int SEQUENCE_LENGTH = 1 << 20;
+    private static final int SEQUENCE_MASK = SEQUENCE_LENGTH - 1;
+
+    private final int[] indexes = new int[SEQUENCE_LENGTH];
+    private final boolean[] allow = new boolean[SEQUENCE_LENGTH];
+    private SplittableRandom random;
+    private String[] allowKeys;
+    private String[] denyKeys;
+    private int keyCount;
+    private boolean shift;
+    private int offset;
+    private int position;
+    private boolean lastAllow;
+
+    @Setup
+    public void setup(KeyWorkload workload) {
+        random = new SplittableRandom(Thread.currentThread().threadId());
+        allowKeys = workload.allowKeys;
+        denyKeys = workload.denyKeys;
+        keyCount = workload.keyCount;
+        shift = workload.zipfian == null;
+        for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+            indexes[i] = workload.zipfian != null
+                    ? workload.zipfian.next(random)
+                    : random.nextInt(keyCount);
+            allow[i] = random.nextDouble() < workload.allowRatio;
+        }
+    }
+
+    /**
+     * @return The next key; {@link #allowed()} tells which limiter it belongs to.
+     */
+    public String next() {
+        int i = position++ & SEQUENCE_MASK;
+        if (i == 0 && shift) {
+            offset = random.nextInt(keyCount);
+        }
+        int index = indexes[i] + offset;
+        if (index >= keyCount) {
+            index -= keyCount;
+        }
+        lastAllow = allow[i];
+        return lastAllow ? allowKeys[index] : denyKeys[index];
+    }
+
+    public boolean allowed() {
+        return lastAllow;
+    }
+}
@@ -0,0 +1,80 @@
+package com.ratelimiter.benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Shared key space for a benchmark trial: how many keys exist, how they are drawn,
+ * and what fraction of checks should be allowed.
+ * <p>
+ * The suites {@link #prefill} their limiters with every key before measuring, so a trial with
+ * {@code keyCount} keys runs against maps or a Redis keyspace of that size, whichever keys the
+ * measured checks then reach.
+ */
+@State(Scope.Benchmark)
+public class KeyWorkload {
+
+    private static final int PREFILL_BATCH = 1000;
+
+    public enum Distribution {
+        UNIFORM,
+        ZIPFIAN
+    }
+
+    @Param({"1", "10000", "10000000"})
+    public int keyCount;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public Distribution distribution;
+
+    /**
+     * Fraction of checks sent to a limiter that never denies; the rest go to one that always denies.
+     */
+    @Param({"1.0", "0.5"})
+    public double allowRatio;
+
+    public String[] allowKeys;
+    public String[] denyKeys;
+    public ZipfianSampler zipfian;
+
+    @Setup
+    public void setup() {
+        allowKeys = new String[keyCount];
+        denyKeys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            allowKeys[i] = "allow:" + i;
+            denyKeys[i] = "deny:" + i;
+        }
+        zipfian = distribution == Distribution.ZIPFIAN ? new ZipfianSampler(keyCount) : null;
+    }
+
+    /**
+     * Checks every key once against the limiter that receives it, in batches, so the limiters hold
+     * the whole key space before the first measured check. Keys of a limiter that gets no checks at
+     * this allow ratio are skipped.
+     *
+     * @param allow Checks a batch of keys against the limiter that never denies.
+     * @param deny  Checks a batch of keys against the limiter that always denies.
+     */
+    public void prefill(Consumer<List<String>> allow, Consumer<List<String>> deny) {
+        if (allowRatio > 0) {
+            prefill(allowKeys, allow);
+        }
+        if (allowRatio < 1) {
+            prefill(denyKeys, deny);
+        }
+    }
+
+    private static void prefill(String[] keys, Consumer<List<String>> check) {
+        List<String> all = Arrays.asList(keys);
+        for (int i = 0; i < keys.length; i += PREFILL_BATCH) {
+            check.accept(all.subList(i, Math.min(keys.length, i + PREFILL_BATCH)));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.ratelimiter.benchmarks;
+
+import com.ratelimiter.common.constants.RedisServerMode;
+import com.ratelimiter.common.models.RedisClient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts a throwaway local {@code redis-server} for the Redis benchmarks. Configure with
+ * {@code -Dredis.port} (default 6399) and {@code -Dredis.server} (default {@code redis-server} on the PATH).
+ * A server already listening on the port is never reused, since the benchmarks empty the server they run on.
+ */
+public final class LocalRedis {
+
+    private static final int PORT = Integer.getInteger("redis.port", 6399);
+    private static final String SERVER = System.getProperty("redis.server", "redis-server");
+
+    private Process process;
+    private RedisClient redisClient;
+
+    public RedisClient start() {
+        if (isListening()) {
+            throw new IllegalStateException("Port " + PORT + " is already in use; choose a free one with -Dredis.port");
+        }
+        try {
+            process = new ProcessBuilder(SERVER, "--port", String.valueOf(PORT),
+                    "--save", "", "--appendonly", "no")
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start " + SERVER + ": " + e.getMessage(), e);
+        }
+        awaitListening();
+        redisClient = new RedisClient.Builder(List.of("localhost:" + PORT))
+                .withRedisServerMode(RedisServerMode.STANDALONE)
+                .build();
+        return redisClient;
+    }
+
+    /**
+     * Deletes every key of the server started by {@link #start()}.
+     */
+    public void flush() {
+        if (process == null || !process.isAlive()) {
+            throw new IllegalStateException("No redis-server was started by this instance");
+        }
+        try (var jedis = redisClient.getResource()) {
+            jedis.flushAll();
+        }
+    }
+
+    public void stop() {
+        if (redisClient != null) {
+            redisClient.close();
+        }
+        if (process != null) {
+            process.destroy();
+            try {
+                // The next trial starts its own server on the same port
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    process.destroyForcibly().waitFor();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void awaitListening() {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!isListening()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("redis-server did not start on port " + PORT);
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for redis-server", e);
+            }
+        }
+    }
+
+    private static boolean isListening() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", PORT), 200);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.ratelimiter.benchmarks;
+
+import com.ratelimiter.common.models.RedisClient;
+import com.ratelimiter.slidingwindow.configs.RateLimiterSlidingWindow;
+import com.ratelimiter.slidingwindow.constants.SlidingWindowMode;
+import com.ratelimiter.slidingwindow.service.RateLimiterSlidingWindowImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class SlidingWindowRedisBenchmark {
+
+    @Param({"LOG", "LOG_SCRIPT", "COUNTER"})
+    public SlidingWindowMode mode;
+
+    private final LocalRedis localRedis = new LocalRedis();
+    private RateLimiterSlidingWindow allowConfig;
+    private RateLimiterSlidingWindow denyConfig;
+    private RateLimiterSlidingWindowImpl allowLimiter;
+    private RateLimiterSlidingWindowImpl denyLimiter;
+
+    @Setup
+    public void setup(KeyWorkload workload) {
+        RedisClient redisClient = localRedis.start();
+        // The log modes keep one member per admitted request, so the allow limit bounds Redis memory;
+        // windows outlast the trial so the prefilled keys do not expire
+        allowConfig = new RateLimiterSlidingWindow.RateLimiterSlidingWindowBuilder()
+                .redisClient(redisClient)
+                .timeUnit(com.ratelimiter.common.constants.TimeUnit.HOURS)
+                .windowSize(1)
+                .limit(1_000_000)
+                .mode(mode)
+                .build();
+        denyConfig = new RateLimiterSlidingWindow.RateLimiterSlidingWindowBuilder()
+                .redisClient(redisClient)
+                .timeUnit(com.ratelimiter.common.constants.TimeUnit.HOURS)
+                .windowSize(1)
+                .limit(1)
+                .mode(mode)
+                .build();
+        allowLimiter = new RateLimiterSlidingWindowImpl(allowConfig);
+        denyLimiter = new RateLimiterSlidingWindowImpl(denyConfig);
+        workload.prefill(allowLimiter::isAllowedBatch, denyLimiter::isAllowedBatch);
+    }
+
+    @TearDown
+    public void tearDown() {
+        localRedis.stop();
+    }
+
+    @Benchmark
+    public boolean isAllowed(KeyWorkload workload, KeyCursor cursor) {
+        String key = cursor.next();
+        return cursor.allowed()
+                ? allowLimiter.isAllowed(allowConfig, key)
+                : denyLimiter.isAllowed(denyConfig, key);
+    }
+}
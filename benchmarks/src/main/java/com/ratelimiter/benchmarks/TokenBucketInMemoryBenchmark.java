@@ -0,0 +1,53 @@
+package com.ratelimiter.benchmarks;
+
+import com.ratelimiter.tokenbucket.configs.RateLimiterTokenBucketInMemory;
+import com.ratelimiter.tokenbucket.configs.TokenBucketState;
+import com.ratelimiter.tokenbucket.service.RateLimiterTokenBucketInMemoryImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class TokenBucketInMemoryBenchmark {
+
+    private RateLimiterTokenBucketInMemory allowConfig;
+    private RateLimiterTokenBucketInMemory denyConfig;
+    private RateLimiterTokenBucketInMemoryImpl allowLimiter;
+    private RateLimiterTokenBucketInMemoryImpl denyLimiter;
+
+    @Setup
+    public void setup(KeyWorkload workload) {
+        allowConfig = new RateLimiterTokenBucketInMemory.Builder()
+                .withCapacity(TokenBucketState.MAX_TOKENS)
+                .withRefillRate(Integer.MAX_VALUE)
+                .withTimeUnit(com.ratelimiter.common.constants.TimeUnit.MILLIS)
+                .build();
+        denyConfig = new RateLimiterTokenBucketInMemory.Builder()
+                .withCapacity(1)
+                .withRefillRate(1)
+                .withTimeUnit(com.ratelimiter.common.constants.TimeUnit.HOURS)
+                .build();
+        allowLimiter = new RateLimiterTokenBucketInMemoryImpl(allowConfig);
+        denyLimiter = new RateLimiterTokenBucketInMemoryImpl(denyConfig);
+        // Full buckets are dropped as idle, so only the deny limiter keeps the prefilled keys;
+        // the allow limiter holds the keys checked since its last cleanup, as in production
+        workload.prefill(keys -> keys.forEach(allowLimiter::isAllowed), keys -> keys.forEach(denyLimiter::isAllowed));
+    }
+
+    @TearDown
+    public void tearDown() {
+        allowConfig.shutdown();
+        denyConfig.shutdown();
+    }
+
+    @Benchmark
+    public boolean isAllowed(KeyWorkload workload, KeyCursor cursor) {
+        String key = cursor.next();
+        return cursor.allowed() ? allowLimiter.isAllowed(key) : denyLimiter.isAllowed(key);
+    }
+}
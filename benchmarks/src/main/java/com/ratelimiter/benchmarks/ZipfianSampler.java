@@ -0,0 +1,48 @@
+package com.ratelimiter.benchmarks;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zipfian sampler over {@code [0, n)} with skew 0.99, following the constant-time method of
+ * Gray et al., "Quickly Generating Billion-Record Synthetic Databases" (as used by YCSB).
+ */
+public class ZipfianSampler {
+
+    private static final double THETA = 0.99;
+
+    private final int n;
+    private final double zetaN;
+    private final double alpha;
+    private final double eta;
+
+    public ZipfianSampler(int n) {
+        this.n = n;
+        this.zetaN = zeta(n);
+        double zeta2 = zeta(2);
+        this.alpha = 1.0 / (1.0 - THETA);
+        this.eta = (1 - Math.pow(2.0 / n, 1 - THETA)) / (1 - zeta2 / zetaN);
+    }
+
+    public int next(SplittableRandom random) {
+        if (n <= 2) {
+            return random.nextInt(n);
+        }
+        double u = random.nextDouble();
+        double uz = u * zetaN;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, THETA)) {
+            return 1;
+        }
+        return (int) Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    private static double zeta(int n) {
+        double sum = 0;
+        for (int i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, THETA);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,162 @@
+package com.ratelimiter.benchmarks.simulation;
+
+import com.rate.limiter.fixedwindow.configs.RateLimiterCountMinSketchInMemory;
+import com.rate.limiter.fixedwindow.configs.RateLimiterFixedWindowInMemory;
+import com.rate.limiter.fixedwindow.configs.RateLimiterFixedWindowWithRedis;
+import com.rate.limiter.fixedwindow.configs.RateLimiterMultiWindowInMemory;
+import com.rate.limiter.fixedwindow.constants.FixedWindowInMemoryMode;
+import com.rate.limiter.fixedwindow.service.inmemory.RateLimiterCountMinSketchInMemoryImpl;
+import com.rate.limiter.fixedwindow.service.inmemory.RateLimiterFixedWindowInMemoryImpl;
+import com.rate.limiter.fixedwindow.service.inmemory.RateLimiterMultiWindowInMemoryImpl;
+import com.rate.limiter.fixedwindow.service.redis.RateLimiterFixedWindowWithRedisImpl;
+import com.ratelimiter.common.clock.Clock;
+import com.ratelimiter.common.constants.TimeUnit;
+import com.ratelimiter.common.models.RateLimitPolicy;
+import com.ratelimiter.common.models.RedisClient;
+import com.ratelimiter.slidingwindow.configs.RateLimiterSlidingWindow;
+import com.ratelimiter.slidingwindow.configs.RateLimiterSlidingWindowInMemory;
+import com.ratelimiter.slidingwindow.constants.SlidingWindowInMemoryMode;
+import com.ratelimiter.slidingwindow.constants.SlidingWindowMode;
+import com.ratelimiter.slidingwindow.service.RateLimiterSlidingWindowImpl;
+import com.ratelimiter.slidingwindow.service.RateLimiterSlidingWindowInMemoryImpl;
+import com.ratelimiter.tokenbucket.configs.RateLimiterTokenBucketInMemory;
+import com.ratelimiter.tokenbucket.service.RateLimiterTokenBucketInMemoryImpl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * One limiter under simulation, configured for {@code limit} requests per key per window and driven by
+ * the simulation's clock. {@link #KINDS} lists every limiter the harness can build, by name.
+ */
+public final class SimulatedLimiter implements AutoCloseable {
+
+    /**
+     * What a limiter is built from.
+     *
+     * @param clock         The virtual clock of the replay.
+     * @param limit         Requests allowed per key per window.
+     * @param windowSeconds The window size.
+     * @param redisClient   The Redis stand-in, or null when none could be started.
+     */
+    public record Setup(Clock clock, int limit, int windowSeconds, RedisClient redisClient) {
+    }
+
+    /**
+     * A limiter implementation the harness can build.
+     *
+     * @param usesRedis Whether the limiter needs the Redis stand-in.
+     */
+    public record Kind(String name, boolean usesRedis, Function<Setup, SimulatedLimiter> factory) {
+    }
+
+    public static final Map<String, Kind> KINDS = new LinkedHashMap<>();
+
+    static {
+        inMemory("fixed-window-compute", setup -> fixedWindow(setup, FixedWindowInMemoryMode.COMPUTE));
+        inMemory("fixed-window-atomic", setup -> fixedWindow(setup, FixedWindowInMemoryMode.ATOMIC));
+        inMemory("fixed-window-compact", setup -> fixedWindow(setup, FixedWindowInMemoryMode.COMPACT));
+        inMemory("count-min-sketch", setup -> {
+            RateLimiterCountMinSketchInMemory config = new RateLimiterCountMinSketchInMemory.Builder()
+                    .withLimit(setup.limit())
+                    .withWindowSize(setup.windowSeconds() * 1000L)
+                    .withClock(setup.clock())
+                    .build();
+            return new SimulatedLimiter(new RateLimiterCountMinSketchInMemoryImpl(config)::isAllowed, config::shutdown);
+        });
+        inMemory("multi-window", setup -> {
+            RateLimiterMultiWindowInMemory config = new RateLimiterMultiWindowInMemory.Builder()
+                    .withPolicy(RateLimitPolicy.builder()
+                            .withLimit(setup.limit(), setup.windowSeconds(), TimeUnit.SECONDS)
+                            .build())
+                    .withClock(setup.clock())
+                    .build();
+            return new SimulatedLimiter(new RateLimiterMultiWindowInMemoryImpl(config)::isAllowed, config::shutdown);
+        });
+        inMemory("sliding-window-log", setup -> slidingWindow(setup, SlidingWindowInMemoryMode.LOG));
+        inMemory("sliding-window-counter", setup -> slidingWindow(setup, SlidingWindowInMemoryMode.COUNTER));
+        inMemory("token-bucket", setup -> {
+            // Refills the limit over one window, so the long-run rate matches the windowed limiters
+            RateLimiterTokenBucketInMemory config = new RateLimiterTokenBucketInMemory.Builder()
+                    .withCapacity(setup.limit())
+                    .withRefillRate(Math.max(1, setup.limit() / setup.windowSeconds()))
+                    .withTimeUnit(TimeUnit.SECONDS)
+                    .withClock(setup.clock())
+                    .build();
+            return new SimulatedLimiter(new RateLimiterTokenBucketInMemoryImpl(config)::isAllowed, config::shutdown);
+        });
+        redis("fixed-window-redis", setup -> {
+            RateLimiterFixedWindowWithRedisImpl limiter = RateLimiterFixedWindowWithRedisImpl.builder()
+                    .withFixedWindowWithRedis(new RateLimiterFixedWindowWithRedis(
+                            setup.redisClient(), setup.windowSeconds(), setup.limit()))
+                    .withClock(setup.clock())
+                    .build();
+            return new SimulatedLimiter(limiter::isAllowed, limiter::close);
+        });
+        redis("sliding-window-redis-log", setup -> slidingWindowRedis(setup, SlidingWindowMode.LOG));
+        redis("sliding-window-redis-log-script", setup -> slidingWindowRedis(setup, SlidingWindowMode.LOG_SCRIPT));
+        redis("sliding-window-redis-counter", setup -> slidingWindowRedis(setup, SlidingWindowMode.COUNTER));
+    }
+
+    private final Predicate<String> check;
+    private final Runnable shutdown;
+
+    private SimulatedLimiter(Predicate<String> check, Runnable shutdown) {
+        this.check = check;
+        this.shutdown = shutdown;
+    }
+
+    public boolean isAllowed(String key) {
+        return check.test(key);
+    }
+
+    @Override
+    public void close() {
+        shutdown.run();
+    }
+
+    private static void inMemory(String name, Function<Setup, SimulatedLimiter> factory) {
+        KINDS.put(name, new Kind(name, false, factory));
+    }
+
+    private static void redis(String name, Function<Setup, SimulatedLimiter> factory) {
+        KINDS.put(name, new Kind(name, true, factory));
+    }
+
+    private static SimulatedLimiter fixedWindow(Setup setup, FixedWindowInMemoryMode mode) {
+        RateLimiterFixedWindowInMemory config = new RateLimiterFixedWindowInMemory.Builder()
+                .withLimit(setup.limit())
+                .withWindowSize(setup.windowSeconds() * 1000L)
+                .withMode(mode)
+                .withMaxKeys(mode == FixedWindowInMemoryMode.COMPACT ? 1 << 20 : 0)
+                .withClock(setup.clock())
+                .build();
+        return new SimulatedLimiter(new RateLimiterFixedWindowInMemoryImpl(config)::isAllowed, config::shutdown);
+    }
+
+    private static SimulatedLimiter slidingWindow(Setup setup, SlidingWindowInMemoryMode mode) {
+        RateLimiterSlidingWindowInMemory config = new RateLimiterSlidingWindowInMemory.RateLimiterSlidingWindowInMemoryBuilder()
+                .timeUnit(TimeUnit.SECONDS)
+                .windowSize(setup.windowSeconds())
+                .limit(setup.limit())
+                .mode(mode)
+                .clock(setup.clock())
+                .build();
+        return new SimulatedLimiter(new RateLimiterSlidingWindowInMemoryImpl(config)::isAllowed, config::shutdown);
+    }
+
+    private static SimulatedLimiter slidingWindowRedis(Setup setup, SlidingWindowMode mode) {
+        RateLimiterSlidingWindow config = new RateLimiterSlidingWindow.RateLimiterSlidingWindowBuilder()
+                .redisClient(setup.redisClient())
+                .timeUnit(TimeUnit.SECONDS)
+                .windowSize(setup.windowSeconds())
+                .limit(setup.limit())
+                .mode(mode)
+                .clock(setup.clock())
+                .build();
+        RateLimiterSlidingWindowImpl limiter = new RateLimiterSlidingWindowImpl(config);
+        return new SimulatedLimiter(key -> limiter.isAllowed(config, key), limiter::close);
+    }
+}
@@ -0,0 +1,153 @@
+package com.ratelimiter.benchmarks.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Accuracy and speed of one replay, measured against an ideal limiter.
+ * <p>
+ * The ideal is an exact sliding window log replayed on the same tick timestamps: a request is admitted
+ * while fewer than {@code limit} requests of its key were admitted in the trailing window. Every
+ * implementation is compared to it, whatever its own algorithm, since that is the limit an endpoint's
+ * owner has in mind.
+ *
+ * @param name               The limiter's name.
+ * @param requests           Requests in the trace.
+ * @param admitted           Requests the limiter admitted.
+ * @param ideal              Requests the ideal limiter admits.
+ * @param excess             Admitted requests that took their key past the limit within a trailing window,
+ *                           e.g. through a race between two checks or a burst across a fixed window boundary.
+ * @param peakRatio          The most requests of one key admitted within a trailing window, over the limit.
+ * @param decisionsPerSecond Decisions per wall-clock second over the whole replay.
+ * @param p50Micros          Median decision latency.
+ * @param p99Micros          99th percentile decision latency.
+ * @param p999Micros         99.9th percentile decision latency.
+ * @param maxMicros          Slowest decision.
+ */
+public record SimulationReport(String name, int requests, long admitted, long ideal, long excess, double peakRatio,
+                               double decisionsPerSecond, double p50Micros, double p99Micros, double p999Micros,
+                               double maxMicros) {
+
+    private static final String FORMAT = "%-32s %10s %10s %8s %9s %6s %12s %9s %9s %9s %9s%n";
+
+    /**
+     * @param replayer The replayer that produced the result, for the tick timestamps.
+     */
+    public static SimulationReport of(String name, Trace trace, TraceReplayer replayer, TraceReplayer.Result result,
+                                      int limit, long windowMillis) {
+        long admitted = 0;
+        long ideal = 0;
+        long excess = 0;
+        int peak = 0;
+        TrailingWindows actual = new TrailingWindows(trace.keyCount(), windowMillis);
+        TrailingWindows reference = new TrailingWindows(trace.keyCount(), windowMillis);
+        for (int i = 0; i < trace.size(); i++) {
+            int key = trace.keyIndex(i);
+            long time = replayer.tickStart(i);
+            if (reference.count(key, time) < limit) {
+                reference.add(key, time);
+                ideal++;
+            }
+            if (result.allowed()[i]) {
+                admitted++;
+                int count = actual.add(key, time);
+                if (count > limit) {
+                    excess++;
+                }
+                peak = Math.max(peak, count);
+            }
+        }
+
+        long[] latencies = result.latencyNanos().clone();
+        Arrays.sort(latencies);
+        double seconds = result.elapsedNanos() / 1e9;
+        return new SimulationReport(name, trace.size(), admitted, ideal, excess, (double) peak / limit,
+                seconds > 0 ? trace.size() / seconds : 0,
+                percentileMicros(latencies, 0.5), percentileMicros(latencies, 0.99),
+                percentileMicros(latencies, 0.999), percentileMicros(latencies, 1.0));
+    }
+
+    /**
+     * @return How far the admitted count is from the ideal, in percent; positive when over-admitting.
+     */
+    public double errorPercent() {
+        return ideal == 0 ? 0 : (admitted - ideal) * 100.0 / ideal;
+    }
+
+    public static String header() {
+        return String.format(FORMAT, "limiter", "admitted", "ideal", "error%", "excess", "peak",
+                "decisions/s", "p50 us", "p99 us", "p99.9 us", "max us");
+    }
+
+    public String row() {
+        return String.format(FORMAT, name, admitted, ideal, String.format("%+.2f", errorPercent()), excess,
+                String.format("%.2f", peakRatio), String.format("%.0f", decisionsPerSecond),
+                String.format("%.1f", p50Micros), String.format("%.1f", p99Micros),
+                String.format("%.1f", p999Micros), String.format("%.1f", maxMicros));
+    }
+
+    private static double percentileMicros(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1000.0;
+    }
+
+    /**
+     * Admission times per key, trimmed to the trailing window as time moves forward.
+     * Times must be added in non-decreasing order.
+     */
+    private static final class TrailingWindows {
+        private final long windowMillis;
+        private final long[][] times;
+        private final int[] heads;
+        private final int[] tails;
+
+        TrailingWindows(int keyCount, long windowMillis) {
+            this.windowMillis = windowMillis;
+            this.times = new long[keyCount][];
+            this.heads = new int[keyCount];
+            this.tails = new int[keyCount];
+        }
+
+        /**
+         * @return Admissions of the key within {@code (time - window, time]}.
+         */
+        int count(int key, long time) {
+            long[] keyTimes = times[key];
+            int head = heads[key];
+            while (head < tails[key] && keyTimes[head] <= time - windowMillis) {
+                head++;
+            }
+            heads[key] = head;
+            return tails[key] - head;
+        }
+
+        /**
+         * Records an admission at {@code time}.
+         *
+         * @return Admissions of the key within the trailing window, including this one.
+         */
+        int add(int key, long time) {
+            long[] keyTimes = times[key];
+            if (keyTimes == null) {
+                keyTimes = times[key] = new long[8];
+            } else if (tails[key] == keyTimes.length) {
+                // Drop the expired prefix before growing
+                count(key, time);
+                int live = tails[key] - heads[key];
+                if (live * 2 <= keyTimes.length) {
+                    System.arraycopy(keyTimes, heads[key], keyTimes, 0, live);
+                } else {
+                    long[] grown = new long[keyTimes.length * 2];
+                    System.arraycopy(keyTimes, heads[key], grown, 0, live);
+                    keyTimes = times[key] = grown;
+                }
+                heads[key] = 0;
+                tails[key] = live;
+            }
+            keyTimes[tails[key]++] = time;
+            return count(key, time);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.ratelimiter.benchmarks.simulation;
+
+import com.ratelimiter.benchmarks.LocalRedis;
+import com.ratelimiter.common.clock.ManualClock;
+import com.ratelimiter.common.models.RedisClient;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays one trace against every selected limiter and prints their accuracy, throughput and latency
+ * side by side.
+ * <p>
+ * Usage: {@code java -cp benchmarks/target/benchmarks.jar com.ratelimiter.benchmarks.simulation.SimulationRunner},
+ * configured with system properties:
+ * <ul>
+ *     <li>{@code trace}: {@code poisson} (default), {@code bursty} or the path of a recorded
+ *     {@code timestampMillis,key} file.</li>
+ *     <li>{@code rate} (2000), {@code duration} in seconds (30), {@code keys} (100),
+ *     {@code distribution} ({@code ZIPFIAN} or {@code UNIFORM}) and {@code seed} (42) for synthetic traces;
+ *     {@code burst.factor} (10), {@code burst.millis} (100) and {@code burst.period} (1000) for bursty ones.</li>
+ *     <li>{@code rateScale} (1): replays the trace this many times faster.</li>
+ *     <li>{@code limit} (100) requests per key per {@code window} seconds (1).</li>
+ *     <li>{@code threads} (8) and {@code tick} in milliseconds (1), see {@link TraceReplayer}.</li>
+ *     <li>{@code limiters}: comma-separated names from {@link SimulatedLimiter#KINDS}; all by default.</li>
+ *     <li>{@code warmup} (1): untimed replays against a throwaway limiter before each measured one.</li>
+ * </ul>
+ * The Redis limiters run against the server started by {@link LocalRedis}, and are skipped if none can be
+ * started. Their keys expire on the server's real clock, so choose traces that replay faster than real time.
+ */
+public class SimulationRunner {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Trace trace = loadTrace().scaled(Double.parseDouble(System.getProperty("rateScale", "1")));
+        int limit = Integer.getInteger("limit", 100);
+        int windowSeconds = Integer.getInteger("window", 1);
+        int threads = Integer.getInteger("threads", 8);
+        int warmup = Integer.getInteger("warmup", 1);
+        TraceReplayer replayer = new TraceReplayer(trace, Long.getLong("tick", 1), threads);
+
+        List<SimulatedLimiter.Kind> kinds = selectedKinds();
+        LocalRedis localRedis = null;
+        RedisClient redisClient = null;
+        if (kinds.stream().anyMatch(SimulatedLimiter.Kind::usesRedis)) {
+            try {
+                localRedis = new LocalRedis();
+                redisClient = localRedis.start();
+            } catch (RuntimeException e) {
+                System.out.println("Skipping the Redis limiters: " + e.getMessage());
+                localRedis = null;
+            }
+        }
+
+        System.out.printf("%d requests over %d keys in %.1f s, limit %d per %d s, %d threads%n%n",
+                trace.size(), trace.keyCount(), trace.durationMillis() / 1000.0, limit, windowSeconds, threads);
+        System.out.print(SimulationReport.header());
+        try {
+            for (SimulatedLimiter.Kind kind : kinds) {
+                if (kind.usesRedis() && redisClient == null) {
+                    continue;
+                }
+                for (int i = 0; i < warmup; i++) {
+                    run(kind, replayer, limit, windowSeconds, localRedis, redisClient);
+                }
+                TraceReplayer.Result result = run(kind, replayer, limit, windowSeconds, localRedis, redisClient);
+                System.out.print(SimulationReport.of(kind.name(), trace, replayer, result,
+                        limit, windowSeconds * 1000L).row());
+            }
+        } finally {
+            if (localRedis != null) {
+                localRedis.stop();
+            }
+        }
+    }
+
+    private static TraceReplayer.Result run(SimulatedLimiter.Kind kind, TraceReplayer replayer, int limit,
+                                            int windowSeconds, LocalRedis localRedis,
+                                            RedisClient redisClient) throws InterruptedException {
+        if (kind.usesRedis()) {
+            // Every run starts from an empty server, as the in-memory limiters start from empty maps;
+            // only the throwaway server started above is ever flushed
+            localRedis.flush();
+        }
+        ManualClock clock = new ManualClock(TraceReplayer.START_MILLIS);
+        try (SimulatedLimiter limiter = kind.factory().apply(
+                new SimulatedLimiter.Setup(clock, limit, windowSeconds, redisClient))) {
+            return replayer.replay(limiter, clock);
+        }
+    }
+
+    private static Trace loadTrace() throws IOException {
+        String source = System.getProperty("trace", "poisson");
+        double rate = Double.parseDouble(System.getProperty("rate", "2000"));
+        long durationMillis = Long.getLong("duration", 30) * 1000;
+        int keys = Integer.getInteger("keys", 100);
+        Trace.KeyDistribution distribution = Trace.KeyDistribution.valueOf(System.getProperty("distribution", "ZIPFIAN"));
+        long seed = Long.getLong("seed", 42);
+        return switch (source) {
+            case "poisson" -> Trace.poisson(rate, durationMillis, keys, distribution, seed);
+            case "bursty" -> Trace.bursty(rate, Double.parseDouble(System.getProperty("burst.factor", "10")),
+                    Long.getLong("burst.millis", 100), Long.getLong("burst.period", 1000),
+                    durationMillis, keys, distribution, seed);
+            default -> Trace.read(Path.of(source));
+        };
+    }
+
+    private static List<SimulatedLimiter.Kind> selectedKinds() {
+        String selected = System.getProperty("limiters");
+        if (selected == null || selected.isBlank()) {
+            return new ArrayList<>(SimulatedLimiter.KINDS.values());
+        }
+        List<SimulatedLimiter.Kind> kinds = new ArrayList<>();
+        for (String name : selected.split(",")) {
+            SimulatedLimiter.Kind kind = SimulatedLimiter.KINDS.get(name.trim());
+            if (kind == null) {
+                throw new IllegalArgumentException("Unknown limiter " + name.trim() + ", expected one of "
+                        + SimulatedLimiter.KINDS.keySet());
+            }
+            kinds.add(kind);
+        }
+        return kinds;
+    }
+}
@@ -0,0 +1,211 @@
+package com.ratelimiter.benchmarks.simulation;
+
+import com.ratelimiter.benchmarks.ZipfianSampler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * A sequence of requests to replay: each has an arrival time, in milliseconds from the start of the
+ * trace, and a key. Requests are sorted by arrival time.
+ * <p>
+ * Synthetic traces draw arrivals from a Poisson process, optionally switching to a higher rate in short
+ * bursts, and keys uniformly or from a Zipfian distribution. Recorded traces are read from a file.
+ */
+public final class Trace {
+
+    public enum KeyDistribution {
+        UNIFORM,
+        ZIPFIAN
+    }
+
+    private final long[] arrivalMillis;
+    private final int[] keyIndexes;
+    private final String[] keys;
+
+    private Trace(long[] arrivalMillis, int[] keyIndexes, String[] keys) {
+        this.arrivalMillis = arrivalMillis;
+        this.keyIndexes = keyIndexes;
+        this.keys = keys;
+    }
+
+    /**
+     * Generates requests arriving at a constant average rate.
+     *
+     * @param ratePerSecond  Average requests per second over all keys.
+     * @param durationMillis Length of the trace.
+     * @param keyCount       Number of distinct keys.
+     * @param distribution   How keys are drawn.
+     * @param seed           Seed for arrivals and keys, so runs can be repeated.
+     */
+    public static Trace poisson(double ratePerSecond, long durationMillis, int keyCount,
+                                KeyDistribution distribution, long seed) {
+        return bursty(ratePerSecond, 1, 0, 1, durationMillis, keyCount, distribution, seed);
+    }
+
+    /**
+     * Generates requests arriving at a base rate that is multiplied by {@code burstFactor} for the first
+     * {@code burstMillis} of every {@code periodMillis}.
+     *
+     * @param ratePerSecond  Average requests per second over all keys outside bursts.
+     * @param burstFactor    How many times the base rate requests arrive at during a burst.
+     * @param burstMillis    Length of each burst.
+     * @param periodMillis   Time from the start of one burst to the start of the next.
+     * @param durationMillis Length of the trace.
+     * @param keyCount       Number of distinct keys.
+     * @param distribution   How keys are drawn.
+     * @param seed           Seed for arrivals and keys, so runs can be repeated.
+     */
+    public static Trace bursty(double ratePerSecond, double burstFactor, long burstMillis, long periodMillis,
+                               long durationMillis, int keyCount, KeyDistribution distribution, long seed) {
+        if (ratePerSecond <= 0 || burstFactor < 1 || burstMillis < 0 || periodMillis <= 0
+                || durationMillis <= 0 || keyCount <= 0) {
+            throw new IllegalArgumentException("Rates, durations and key count must be positive, burst factor at least 1");
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        ZipfianSampler zipfian = distribution == KeyDistribution.ZIPFIAN ? new ZipfianSampler(keyCount) : null;
+        double baseRatePerMilli = ratePerSecond / 1000;
+        double expected = baseRatePerMilli * durationMillis
+                * (1 + (burstFactor - 1) * Math.min(burstMillis, periodMillis) / periodMillis);
+        long[] arrivals = new long[(int) Math.min(1 << 24, expected * 1.05 + 16)];
+        int[] indexes = new int[arrivals.length];
+        int size = 0;
+
+        // Thinning: candidates arrive at the burst rate, and outside bursts only 1 in burstFactor is kept
+        double peakRatePerMilli = baseRatePerMilli * burstFactor;
+        double time = 0;
+        while (true) {
+            time += -Math.log(1 - random.nextDouble()) / peakRatePerMilli;
+            if (time >= durationMillis) {
+                break;
+            }
+            boolean inBurst = (long) time % periodMillis < burstMillis;
+            if (!inBurst && random.nextDouble() * burstFactor >= 1) {
+                continue;
+            }
+            if (size == arrivals.length) {
+                arrivals = Arrays.copyOf(arrivals, size * 2);
+                indexes = Arrays.copyOf(indexes, size * 2);
+            }
+            arrivals[size] = (long) time;
+            indexes[size] = zipfian != null ? zipfian.next(random) : random.nextInt(keyCount);
+            size++;
+        }
+
+        String[] keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "key:" + i;
+        }
+        return new Trace(Arrays.copyOf(arrivals, size), Arrays.copyOf(indexes, size), keys);
+    }
+
+    /**
+     * Reads a recorded trace of {@code timestampMillis,key} lines. Timestamps may be absolute or relative
+     * and in any order; the trace starts at the earliest one. Blank lines and lines starting with
+     * {@code #} are skipped.
+     */
+    public static Trace read(Path path) throws IOException {
+        long[] arrivals = new long[1 << 16];
+        int[] indexes = new int[arrivals.length];
+        Map<String, Integer> keyIndexes = new HashMap<>();
+        int size = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int comma = line.indexOf(',');
+                if (comma <= 0 || comma == line.length() - 1) {
+                    throw new IOException(path + ":" + lineNumber + ": expected timestampMillis,key");
+                }
+                if (size == arrivals.length) {
+                    arrivals = Arrays.copyOf(arrivals, size * 2);
+                    indexes = Arrays.copyOf(indexes, size * 2);
+                }
+                try {
+                    arrivals[size] = Long.parseLong(line.substring(0, comma).strip());
+                } catch (NumberFormatException e) {
+                    throw new IOException(path + ":" + lineNumber + ": invalid timestamp", e);
+                }
+                indexes[size] = keyIndexes.computeIfAbsent(line.substring(comma + 1).strip(), k -> keyIndexes.size());
+                size++;
+            }
+        }
+        if (size == 0) {
+            throw new IOException(path + " holds no requests");
+        }
+
+        // Sort by arrival, keeping the recorded order of requests with the same timestamp
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        long[] unsorted = arrivals;
+        Arrays.sort(order, (a, b) -> Long.compare(unsorted[a], unsorted[b]));
+        long start = arrivals[order[0]];
+        long[] sortedArrivals = new long[size];
+        int[] sortedIndexes = new int[size];
+        for (int i = 0; i < size; i++) {
+            sortedArrivals[i] = arrivals[order[i]] - start;
+            sortedIndexes[i] = indexes[order[i]];
+        }
+
+        String[] keys = new String[keyIndexes.size()];
+        keyIndexes.forEach((key, index) -> keys[index] = key);
+        return new Trace(sortedArrivals, sortedIndexes, keys);
+    }
+
+    /**
+     * @return The same requests arriving {@code scale} times faster (or slower, below 1).
+     */
+    public Trace scaled(double scale) {
+        if (scale <= 0) {
+            throw new IllegalArgumentException("Scale must be greater than 0");
+        }
+        if (scale == 1) {
+            return this;
+        }
+        long[] scaledArrivals = new long[arrivalMillis.length];
+        for (int i = 0; i < scaledArrivals.length; i++) {
+            scaledArrivals[i] = (long) (arrivalMillis[i] / scale);
+        }
+        return new Trace(scaledArrivals, keyIndexes, keys);
+    }
+
+    public int size() {
+        return arrivalMillis.length;
+    }
+
+    public long arrivalMillis(int request) {
+        return arrivalMillis[request];
+    }
+
+    public int keyIndex(int request) {
+        return keyIndexes[request];
+    }
+
+    public String key(int request) {
+        return keys[keyIndexes[request]];
+    }
+
+    public int keyCount() {
+        return keys.length;
+    }
+
+    /**
+     * @return Milliseconds from the first to the last arrival, at least 1.
+     */
+    public long durationMillis() {
+        return arrivalMillis.length == 0 ? 1 : arrivalMillis[arrivalMillis.length - 1] + 1;
+    }
+}
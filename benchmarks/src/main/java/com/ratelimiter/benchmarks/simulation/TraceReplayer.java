@@ -0,0 +1,140 @@
+package com.ratelimiter.benchmarks.simulation;
+
+import com.ratelimiter.common.clock.ManualClock;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays a {@link Trace} against a {@link SimulatedLimiter} on a virtual clock.
+ * <p>
+ * Requests are grouped into ticks of {@code tickMillis}. The clock is set to the start of a tick, the
+ * tick's requests are spread over the worker threads as fast as they go, and all workers meet at a
+ * barrier before the clock moves to the next tick. Requests of one tick therefore race each other just
+ * as concurrent requests do in production, while the clock never runs ahead of the slowest worker and
+ * the outcome does not depend on how fast the machine replays. A larger tick packs more requests into
+ * each race at the cost of coarser timestamps.
+ */
+public final class TraceReplayer {
+
+    /**
+     * Virtual start time of every replay: a whole number of days since the epoch, so window boundaries
+     * fall on the same trace offsets for every window size.
+     */
+    public static final long START_MILLIS = 1_700_006_400_000L;
+
+    /**
+     * @param allowed      The decision for each request of the trace.
+     * @param latencyNanos How long each decision took.
+     * @param elapsedNanos Wall-clock time of the whole replay.
+     */
+    public record Result(boolean[] allowed, long[] latencyNanos, long elapsedNanos) {
+    }
+
+    private final Trace trace;
+    private final long tickMillis;
+    private final int threads;
+
+    public TraceReplayer(Trace trace, long tickMillis, int threads) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be greater than 0");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Threads must be greater than 0");
+        }
+        this.trace = trace;
+        this.tickMillis = tickMillis;
+        this.threads = threads;
+    }
+
+    /**
+     * @return The trace offset the clock shows while the request is checked.
+     */
+    public long tickStart(int request) {
+        long arrival = trace.arrivalMillis(request);
+        return arrival - arrival % tickMillis;
+    }
+
+    /**
+     * Replays the whole trace. The clock must be the one the limiter was built with.
+     */
+    public Result replay(SimulatedLimiter limiter, ManualClock clock) throws InterruptedException {
+        boolean[] allowed = new boolean[trace.size()];
+        long[] latencyNanos = new long[trace.size()];
+        long start = System.nanoTime();
+        if (threads == 1) {
+            for (int i = 0; i < trace.size(); i++) {
+                clock.setCurrentTimeMillis(START_MILLIS + tickStart(i));
+                check(limiter, i, allowed, latencyNanos);
+            }
+        } else {
+            replayConcurrently(limiter, clock, allowed, latencyNanos);
+        }
+        return new Result(allowed, latencyNanos, System.nanoTime() - start);
+    }
+
+    private void replayConcurrently(SimulatedLimiter limiter, ManualClock clock,
+                                    boolean[] allowed, long[] latencyNanos) throws InterruptedException {
+        AtomicInteger cursor = new AtomicInteger();
+        // First and end request of the current tick, written by the barrier action only
+        // and read by the workers after the barrier
+        int[] tick = new int[2];
+        Runnable nextTick = () -> {
+            int first = tick[1];
+            int end = first;
+            if (first < trace.size()) {
+                long tickStart = tickStart(first);
+                while (end < trace.size() && tickStart(end) == tickStart) {
+                    end++;
+                }
+                clock.setCurrentTimeMillis(START_MILLIS + tickStart);
+            }
+            tick[0] = first;
+            tick[1] = end;
+            cursor.set(first);
+        };
+        nextTick.run();
+        CyclicBarrier barrier = new CyclicBarrier(threads, nextTick);
+
+        Thread[] workers = new Thread[threads];
+        Throwable[] failure = new Throwable[1];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    while (tick[0] < trace.size()) {
+                        int end = tick[1];
+                        int i;
+                        while ((i = cursor.getAndIncrement()) < end) {
+                            check(limiter, i, allowed, latencyNanos);
+                        }
+                        barrier.await();
+                    }
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    // Another worker failed and broke the barrier; its failure is the one reported
+                } catch (RuntimeException | Error e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                    barrier.reset();
+                }
+            }, "simulation-worker-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw new IllegalStateException("Replay failed: " + failure[0].getMessage(), failure[0]);
+            }
+        }
+    }
+
+    private void check(SimulatedLimiter limiter, int request, boolean[] allowed, long[] latencyNanos) {
+        String key = trace.key(request);
+        long start = System.nanoTime();
+        allowed[request] = limiter.isAllowed(key);
+        latencyNanos[request] = System.nanoTime() - start;
+    }
+}
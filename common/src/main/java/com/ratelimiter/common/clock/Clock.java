@@ -0,0 +1,20 @@
+package com.ratelimiter.common.clock;
+
+/**
+ * Source of wall-clock time for the rate limiters' window and refill calculations.
+ * <p>
+ * {@link #SYSTEM} reads {@link System#currentTimeMillis()} on every call. {@link CoarseClock} caches a
+ * periodically refreshed value for the hot path, {@link MonotonicClock} never steps backwards,
+ * {@link RedisSyncedClock} follows the Redis server's clock so every node agrees on window boundaries,
+ * and {@link ManualClock} is advanced by hand for deterministic tests.
+ */
+@FunctionalInterface
+public interface Clock {
+
+    Clock SYSTEM = System::currentTimeMillis;
+
+    /**
+     * @return The current time in milliseconds since the epoch.
+     */
+    long currentTimeMillis();
+}
@@ -0,0 +1,56 @@
+package com.ratelimiter.common.clock;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Clock} that caches the time of an underlying clock and refreshes it every {@code tickMillis}
+ * from a background thread, so a read on the hot path is a single volatile load.
+ * Readings lag the underlying clock by up to one tick. Call {@link #close()} to stop the refresh thread.
+ */
+public class CoarseClock implements Clock, AutoCloseable {
+    private final Clock source;
+    private final ScheduledExecutorService executorService;
+    private volatile long currentTimeMillis;
+
+    public CoarseClock(long tickMillis) {
+        this(SYSTEM, tickMillis);
+    }
+
+    /**
+     * @param source     The clock to cache.
+     * @param tickMillis How often the cached value is refreshed.
+     */
+    public CoarseClock(Clock source, long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be greater than 0");
+        }
+        this.source = source;
+        this.currentTimeMillis = source.currentTimeMillis();
+        this.executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limiter-coarse-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executorService.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return currentTimeMillis;
+    }
+
+    private void tick() {
+        long now = source.currentTimeMillis();
+        // Never move backwards, even if the source does
+        if (now > currentTimeMillis) {
+            currentTimeMillis = now;
+        }
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+    }
+}
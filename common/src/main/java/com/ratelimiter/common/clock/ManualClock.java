@@ -0,0 +1,28 @@
+package com.ratelimiter.common.clock;
+
+/**
+ * {@link Clock} that only moves when told to, for deterministic tests.
+ */
+public class ManualClock implements Clock {
+    private volatile long currentTimeMillis;
+
+    public ManualClock(long currentTimeMillis) {
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return currentTimeMillis;
+    }
+
+    public void setCurrentTimeMillis(long currentTimeMillis) {
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    /**
+     * Moves the clock forward (or backward, for a negative amount).
+     */
+    public synchronized void advance(long millis) {
+        this.currentTimeMillis += millis;
+    }
+}
@@ -0,0 +1,28 @@
+package com.ratelimiter.common.clock;
+
+/**
+ * {@link Clock} that reads the wall clock once and then advances with {@link System#nanoTime()},
+ * so it never steps backwards when NTP adjusts the system time. It drifts from the wall clock by
+ * however much the system clock is corrected while it runs.
+ */
+public class MonotonicClock implements Clock {
+    private final long originMillis;
+    private final long originNanos;
+
+    public MonotonicClock() {
+        this(SYSTEM);
+    }
+
+    /**
+     * @param origin The clock read once to anchor this one.
+     */
+    public MonotonicClock(Clock origin) {
+        this.originMillis = origin.currentTimeMillis();
+        this.originNanos = System.nanoTime();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return originMillis + (System.nanoTime() - originNanos) / 1_000_000;
+    }
+}
@@ -0,0 +1,92 @@
+package com.ratelimiter.common.clock;
+
+import com.ratelimiter.common.models.RedisClient;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Clock} that follows the Redis server's clock, so every node using the same Redis agrees on
+ * where windows start and end even if their own clocks are skewed.
+ * <p>
+ * Reads are local: a background thread calls Redis {@code TIME} every {@code syncIntervalMillis} and
+ * stores the offset between the server and the local clock, taking the midpoint of the round trip as
+ * the moment the server answered. If a sync fails, the last known offset keeps being used.
+ * Call {@link #close()} to stop the sync thread.
+ */
+public class RedisSyncedClock implements Clock, AutoCloseable {
+    private final RedisClient redisClient;
+    private final Clock local;
+    private final ScheduledExecutorService executorService;
+    private volatile long offsetMillis;
+    private volatile long lastSyncMillis = -1;
+
+    public RedisSyncedClock(RedisClient redisClient, long syncIntervalMillis) {
+        this(redisClient, new MonotonicClock(), syncIntervalMillis);
+    }
+
+    /**
+     * @param redisClient        The Redis deployment whose clock is followed.
+     * @param local              The local clock the offset is applied to.
+     * @param syncIntervalMillis How often the offset is refreshed.
+     */
+    public RedisSyncedClock(RedisClient redisClient, Clock local, long syncIntervalMillis) {
+        if (syncIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Sync interval must be greater than 0");
+        }
+        this.redisClient = redisClient;
+        this.local = local;
+        trySync();
+        this.executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limiter-redis-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executorService.scheduleWithFixedDelay(this::trySync, syncIntervalMillis, syncIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return local.currentTimeMillis() + offsetMillis;
+    }
+
+    /**
+     * @return Milliseconds the Redis clock is ahead of the local clock, as of the last successful sync.
+     */
+    public long getOffsetMillis() {
+        return offsetMillis;
+    }
+
+    /**
+     * @return The local time of the last successful sync, or -1 if Redis has not answered yet.
+     */
+    public long getLastSyncMillis() {
+        return lastSyncMillis;
+    }
+
+    /**
+     * Reads the Redis server time now and updates the offset.
+     */
+    public void sync() {
+        long before = local.currentTimeMillis();
+        long serverMillis = redisClient.serverTimeMillis();
+        long after = local.currentTimeMillis();
+        this.offsetMillis = serverMillis - (before + (after - before) / 2);
+        this.lastSyncMillis = after;
+    }
+
+    private void trySync() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            // Keep the last known offset; the next sync tries again
+        }
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+    }
+}
@@ -6,4 +6,6 @@ public class Constants {
     public final static Integer SOCKET_TIMEOUT = 1000;
     public final static Integer MAX_ATTEMPTS = 1000;
     public final static Integer POOL_MAX_WAIT = 1000;
+    public final static Integer POOL_MAX_TOTAL = 30;
+    public final static Integer POOL_MIN_IDLE = 0;
 }
@@ -0,0 +1,77 @@
+package com.ratelimiter.common.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link RateLimiterMetrics} that keeps counters and latency histograms in memory.
+ * Recording allocates nothing once a limiter name has been seen; {@link #snapshot()} copies the
+ * current values for export to whatever monitoring system is in use.
+ */
+public class InMemoryRateLimiterMetrics implements RateLimiterMetrics {
+
+    private final Map<String, LimiterStats> limiters = new ConcurrentHashMap<>();
+    private final LatencyHistogram poolWait = new LatencyHistogram();
+    private final LatencyHistogram redisCommand = new LatencyHistogram();
+
+    @Override
+    public void recordDecision(String limiter, boolean allowed, long latencyNanos) {
+        LimiterStats stats = statsFor(limiter);
+        (allowed ? stats.allowed : stats.denied).increment();
+        stats.decisionLatency.record(latencyNanos);
+    }
+
+    @Override
+    public void recordPoolWait(long nanos) {
+        poolWait.record(nanos);
+    }
+
+    @Override
+    public void recordRedisCommand(long nanos) {
+        redisCommand.record(nanos);
+    }
+
+    @Override
+    public void recordKeyCount(String limiter, long keys) {
+        statsFor(limiter).keyCount.set(keys);
+    }
+
+    @Override
+    public void recordCleanup(String limiter, long nanos, int removed) {
+        LimiterStats stats = statsFor(limiter);
+        stats.cleanupDuration.record(nanos);
+        stats.cleanupRemoved.add(removed);
+    }
+
+    /**
+     * @return A point-in-time copy of every counter and histogram.
+     */
+    public MetricsSnapshot snapshot() {
+        Map<String, MetricsSnapshot.LimiterSnapshot> limiterSnapshots = new LinkedHashMap<>();
+        limiters.forEach((name, stats) -> limiterSnapshots.put(name, new MetricsSnapshot.LimiterSnapshot(
+                stats.allowed.sum(),
+                stats.denied.sum(),
+                stats.decisionLatency.snapshot(),
+                stats.keyCount.get(),
+                stats.cleanupDuration.snapshot(),
+                stats.cleanupRemoved.sum())));
+        return new MetricsSnapshot(limiterSnapshots, poolWait.snapshot(), redisCommand.snapshot());
+    }
+
+    private LimiterStats statsFor(String limiter) {
+        LimiterStats stats = limiters.get(limiter);
+        return stats != null ? stats : limiters.computeIfAbsent(limiter, k -> new LimiterStats());
+    }
+
+    private static class LimiterStats {
+        private final LongAdder allowed = new LongAdder();
+        private final LongAdder denied = new LongAdder();
+        private final LatencyHistogram decisionLatency = new LatencyHistogram();
+        private final AtomicLong keyCount = new AtomicLong();
+        private final LatencyHistogram cleanupDuration = new LatencyHistogram();
+        private final LongAdder cleanupRemoved = new LongAdder();
+    }
+}
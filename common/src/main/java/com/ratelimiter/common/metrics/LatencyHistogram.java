@@ -0,0 +1,107 @@
+package com.ratelimiter.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets: every power of two is split into
+ * {@value #SUB_BUCKETS} linear sub-buckets, so any recorded value is reported within about 6%.
+ * Recording is one array index computation and one atomic increment; nothing is allocated.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long value) {
+        counts.incrementAndGet(indexOf(Math.max(0, value)));
+    }
+
+    /**
+     * @return A point-in-time copy of the bucket counts.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy);
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return The largest value that maps to the bucket.
+     */
+    private static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long base = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return base + (1L << shift) - 1;
+    }
+
+    /**
+     * Immutable copy of a histogram's buckets.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long total;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long sum = 0;
+            for (long count : counts) {
+                sum += count;
+            }
+            this.total = sum;
+        }
+
+        public long getCount() {
+            return total;
+        }
+
+        /**
+         * @param percentile A value between 0 and 100.
+         * @return The upper bound of the bucket holding the given percentile, or 0 if nothing was recorded.
+         */
+        public long getPercentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(1, rank)) {
+                    return upperBoundOf(i);
+                }
+            }
+            return upperBoundOf(counts.length - 1);
+        }
+
+        public long getMax() {
+            return getPercentile(100.0);
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + total +
+                    ", p50=" + getPercentile(50) +
+                    ", p99=" + getPercentile(99) +
+                    ", p999=" + getPercentile(99.9) +
+                    ", max=" + getMax() +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.ratelimiter.common.metrics;
+
+import java.util.Map;
+
+/**
+ * Point-in-time copy of the values recorded by {@link InMemoryRateLimiterMetrics}.
+ * All durations are in nanoseconds.
+ */
+public class MetricsSnapshot {
+    private final Map<String, LimiterSnapshot> limiters;
+    private final LatencyHistogram.Snapshot poolWait;
+    private final LatencyHistogram.Snapshot redisCommand;
+
+    MetricsSnapshot(Map<String, LimiterSnapshot> limiters, LatencyHistogram.Snapshot poolWait,
+                    LatencyHistogram.Snapshot redisCommand) {
+        this.limiters = Map.copyOf(limiters);
+        this.poolWait = poolWait;
+        this.redisCommand = redisCommand;
+    }
+
+    /**
+     * @return Per-limiter values, keyed by limiter name.
+     */
+    public Map<String, LimiterSnapshot> getLimiters() {
+        return limiters;
+    }
+
+    /**
+     * @return Time spent waiting for a pooled Redis connection.
+     */
+    public LatencyHistogram.Snapshot getPoolWait() {
+        return poolWait;
+    }
+
+    /**
+     * @return Redis command round-trip times.
+     */
+    public LatencyHistogram.Snapshot getRedisCommand() {
+        return redisCommand;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{" +
+                "limiters=" + limiters +
+                ", poolWait=" + poolWait +
+                ", redisCommand=" + redisCommand +
+                '}';
+    }
+
+    public static class LimiterSnapshot {
+        private final long allowed;
+        private final long denied;
+        private final LatencyHistogram.Snapshot decisionLatency;
+        private final long keyCount;
+        private final LatencyHistogram.Snapshot cleanupDuration;
+        private final long cleanupRemoved;
+
+        LimiterSnapshot(long allowed, long denied, LatencyHistogram.Snapshot decisionLatency, long keyCount,
+                        LatencyHistogram.Snapshot cleanupDuration, long cleanupRemoved) {
+            this.allowed = allowed;
+            this.denied = denied;
+            this.decisionLatency = decisionLatency;
+            this.keyCount = keyCount;
+            this.cleanupDuration = cleanupDuration;
+            this.cleanupRemoved = cleanupRemoved;
+        }
+
+        public long getAllowed() {
+            return allowed;
+        }
+
+        public long getDenied() {
+            return denied;
+        }
+
+        public LatencyHistogram.Snapshot getDecisionLatency() {
+            return decisionLatency;
+        }
+
+        /**
+         * @return Keys held by an in-memory limiter at its last cleanup pass.
+         */
+        public long getKeyCount() {
+            return keyCount;
+        }
+
+        public LatencyHistogram.Snapshot getCleanupDuration() {
+            return cleanupDuration;
+        }
+
+        public long getCleanupRemoved() {
+            return cleanupRemoved;
+        }
+
+        @Override
+        public String toString() {
+            return "{allowed=" + allowed +
+                    ", denied=" + denied +
+                    ", decisionLatency=" + decisionLatency +
+                    ", keyCount=" + keyCount +
+                    ", cleanupDuration=" + cleanupDuration +
+                    ", cleanupRemoved=" + cleanupRemoved +
+                    '}';
+        }
+    }
+}
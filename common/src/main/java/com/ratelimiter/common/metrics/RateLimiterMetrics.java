@@ -0,0 +1,63 @@
+package com.ratelimiter.common.metrics;
+
+/**
+ * Receives measurements from the rate limiters. Implementations must be thread-safe and should not
+ * allocate on the recording methods, since they sit on every limiter decision.
+ * <p>
+ * The default is {@link #NOOP}; {@link InMemoryRateLimiterMetrics} keeps counters and latency
+ * histograms that can be read through a snapshot.
+ */
+public interface RateLimiterMetrics {
+
+    RateLimiterMetrics NOOP = new RateLimiterMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * @return false if recording is a no-op, letting callers skip taking timestamps.
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Records one limiter decision.
+     *
+     * @param limiter       The limiter name.
+     * @param allowed       Whether the request was allowed.
+     * @param latencyNanos  How long the decision took.
+     */
+    default void recordDecision(String limiter, boolean allowed, long latencyNanos) {
+    }
+
+    /**
+     * Records time spent waiting for a pooled Redis connection.
+     */
+    default void recordPoolWait(long nanos) {
+    }
+
+    /**
+     * Records the round-trip time of a Redis command, script or pipeline.
+     */
+    default void recordRedisCommand(long nanos) {
+    }
+
+    /**
+     * Records the number of keys an in-memory limiter currently holds.
+     */
+    default void recordKeyCount(String limiter, long keys) {
+    }
+
+    /**
+     * Records one cleanup pass of an in-memory limiter.
+     *
+     * @param limiter The limiter name.
+     * @param nanos   How long the pass took.
+     * @param removed How many keys it removed.
+     */
+    default void recordCleanup(String limiter, long nanos, int removed) {
+    }
+}
@@ -0,0 +1,200 @@
+package com.ratelimiter.common.models;
+
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Spreads the Redis state of hot keys over several sub-keys, so one logical limit is served by several
+ * cluster shards instead of saturating the primary that owns the key's hash slot.
+ * <p>
+ * Each sub-key carries its own hash tag, chosen so that the sub-keys of a key fall in distinct slots, and
+ * enforces its share of the limit. The shares add up to the full limit, and every share must be at least 1.
+ * A check picks one sub-key, either round-robin (the default, which keeps the shards evenly loaded) or by
+ * hashing the key with a per-process seed, which keeps each node on one shard per key.
+ * Keys not selected for sharding keep their single Redis key.
+ */
+public class KeySharding {
+
+    /**
+     * How a check picks the sub-key it counts against.
+     */
+    public enum ShardSelection {
+        /**
+         * Cycles through the sub-keys of a key.
+         */
+        ROUND_ROBIN,
+        /**
+         * Hashes the key, seeded per process, so all checks of a node for one key use the same sub-key
+         * while nodes spread over different shards.
+         */
+        HASH
+    }
+
+    private static final int NODE_SEED = ThreadLocalRandom.current().nextInt();
+
+    private final int shards;
+    private final Predicate<String> hotKeys;
+    private final ShardSelection selection;
+    private final Map<String, Shards> shardsByKey = new ConcurrentHashMap<>();
+
+    private KeySharding(Builder builder) {
+        this.shards = builder.shards;
+        this.hotKeys = builder.hotKeys;
+        this.selection = builder.selection;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public ShardSelection getSelection() {
+        return selection;
+    }
+
+    /**
+     * @param key The rate limit key.
+     * @return true if the key's state is spread over sub-keys.
+     */
+    public boolean isSharded(String key) {
+        return hotKeys.test(key);
+    }
+
+    /**
+     * @param key The rate limit key, which must be sharded.
+     * @return The index of the sub-key the current check should use.
+     */
+    public int selectShard(String key) {
+        Shards keyShards = shardsFor(key);
+        if (selection == ShardSelection.HASH) {
+            return keyShards.home;
+        }
+        return Math.floorMod(keyShards.next.getAndIncrement(), shards);
+    }
+
+    /**
+     * @param key   The rate limit key.
+     * @param shard The sub-key index.
+     * @return The hash tag of the sub-key, without braces.
+     */
+    public String tag(String key, int shard) {
+        return shardsFor(key).tags[shard];
+    }
+
+    /**
+     * @param limit The limit of the logical key.
+     * @param shard The sub-key index.
+     * @return The part of the limit the sub-key enforces; the parts add up to {@code limit}.
+     */
+    public int shardLimit(int limit, int shard) {
+        return limit / shards + (shard < limit % shards ? 1 : 0);
+    }
+
+    /**
+     * Checks that every sub-key gets a share of at least 1 under the given limit.
+     *
+     * @param limit The limit of the logical keys.
+     * @throws IllegalArgumentException If the limit is smaller than the number of shards.
+     */
+    public void checkLimit(int limit) {
+        if (limit < shards) {
+            throw new IllegalArgumentException("Limit must be at least the number of shards (" + shards + ")");
+        }
+    }
+
+    private Shards shardsFor(String key) {
+        Shards keyShards = shardsByKey.get(key);
+        return keyShards != null ? keyShards : shardsByKey.computeIfAbsent(key, this::createShards);
+    }
+
+    private Shards createShards(String key) {
+        String[] tags = new String[shards];
+        Set<Integer> usedSlots = new HashSet<>();
+        int suffix = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            String tag;
+            // Skip suffixes whose slot is already taken so every sub-key can live on a different shard
+            do {
+                tag = key + ":" + suffix++;
+            } while (!usedSlots.add(JedisClusterCRC16.getSlot("{" + tag + "}")));
+            tags[shard] = tag;
+        }
+        int hash = key.hashCode() * 0x9E3779B9 ^ NODE_SEED;
+        return new Shards(tags, Math.floorMod(hash ^ (hash >>> 16), shards));
+    }
+
+    private static class Shards {
+        private final String[] tags;
+        // The sub-key this node uses under hash selection
+        private final int home;
+        private final AtomicInteger next = new AtomicInteger();
+
+        private Shards(String[] tags, int home) {
+            this.tags = tags;
+            this.home = home;
+        }
+    }
+
+    public static class Builder {
+        private int shards = 8;
+        private Predicate<String> hotKeys;
+        private ShardSelection selection = ShardSelection.ROUND_ROBIN;
+
+        /**
+         * Sets how many sub-keys a hot key is spread over. Defaults to 8.
+         */
+        public Builder withShards(int shards) {
+            this.shards = shards;
+            return this;
+        }
+
+        /**
+         * Shards only the given keys.
+         */
+        public Builder withHotKeys(Set<String> hotKeys) {
+            Set<String> keys = Set.copyOf(hotKeys);
+            this.hotKeys = keys::contains;
+            return this;
+        }
+
+        /**
+         * Shards the keys matching the predicate. The predicate runs on every check, so keep it cheap,
+         * and one small entry is kept per matching key, so it should match a bounded set.
+         */
+        public Builder withHotKeys(Predicate<String> hotKeys) {
+            this.hotKeys = hotKeys;
+            return this;
+        }
+
+        /**
+         * Sets how a check picks its sub-key. Defaults to {@link ShardSelection#ROUND_ROBIN}.
+         */
+        public Builder withSelection(ShardSelection selection) {
+            this.selection = selection;
+            return this;
+        }
+
+        public KeySharding build() {
+            if (shards < 2 || shards > 1024) {
+                throw new IllegalArgumentException("Shards must be between 2 and 1024");
+            }
+            if (hotKeys == null) {
+                throw new IllegalArgumentException("Hot keys must be set");
+            }
+            if (selection == null) {
+                throw new IllegalArgumentException("ShardSelection must not be null");
+            }
+            return new KeySharding(this);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.ratelimiter.common.models;
+
+import com.ratelimiter.common.constants.TimeUnit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Several limits enforced together on the same key, for example 10 per second and 1000 per hour.
+ * <p>
+ * A request is admitted only if its cost fits in every limit, and a denial consumes quota from none of them.
+ * The Redis limiters check all limits in one script call; the in-memory limiter in one compare-and-set.
+ */
+public class RateLimitPolicy {
+
+    /**
+     * The most limits a policy may hold; each one adds keys to every check.
+     */
+    public static final int MAX_LIMITS = 16;
+
+    private final List<Limit> limits;
+
+    private RateLimitPolicy(Builder builder) {
+        this.limits = List.copyOf(builder.limits);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public List<Limit> getLimits() {
+        return limits;
+    }
+
+    /**
+     * @return A policy with the same windows and each limit mapped, for example to one node's share.
+     */
+    public RateLimitPolicy mapLimits(IntUnaryOperator mapper) {
+        Builder builder = new Builder();
+        for (Limit limit : limits) {
+            builder.limits.add(new Limit(mapper.applyAsInt(limit.limit), limit.windowSizeMillis));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Policies with the same limits are equal, so local limiters can be shared by equal policies.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RateLimitPolicy other && limits.equals(other.limits);
+    }
+
+    @Override
+    public int hashCode() {
+        return limits.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimitPolicy{limits=" + limits + '}';
+    }
+
+    /**
+     * One limit of a policy: at most {@code limit} units of cost per window.
+     */
+    public static class Limit {
+        private final int limit;
+        private final long windowSizeMillis;
+
+        private Limit(int limit, long windowSizeMillis) {
+            this.limit = limit;
+            this.windowSizeMillis = windowSizeMillis;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public long getWindowSizeMillis() {
+            return windowSizeMillis;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Limit other && limit == other.limit && windowSizeMillis == other.windowSizeMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * limit + Long.hashCode(windowSizeMillis);
+        }
+
+        @Override
+        public String toString() {
+            return limit + "/" + windowSizeMillis + "ms";
+        }
+    }
+
+    public static class Builder {
+        private final List<Limit> limits = new ArrayList<>();
+
+        /**
+         * Adds a limit of {@code limit} units of cost per window.
+         *
+         * @param limit      The units of cost allowed per window.
+         * @param windowSize The size of the window.
+         * @param timeUnit   The time unit of the window size.
+         * @return The builder instance.
+         */
+        public Builder withLimit(int limit, int windowSize, TimeUnit timeUnit) {
+            limits.add(new Limit(limit, timeUnit != null ? (long) windowSize * timeUnit.getMilliValue() : 0));
+            return this;
+        }
+
+        public RateLimitPolicy build() {
+            if (limits.isEmpty()) {
+                throw new IllegalArgumentException("A policy needs at least one limit");
+            }
+            if (limits.size() > MAX_LIMITS) {
+                throw new IllegalArgumentException("A policy holds at most " + MAX_LIMITS + " limits");
+            }
+            for (Limit limit : limits) {
+                if (limit.limit <= 0) {
+                    throw new IllegalArgumentException("Limit must be greater than 0");
+                }
+                if (limit.windowSizeMillis <= 0) {
+                    throw new IllegalArgumentException("Window size must be greater than 0 and TimeUnit must not be null");
+                }
+            }
+            for (int i = 0; i < limits.size(); i++) {
+                for (int j = 0; j < i; j++) {
+                    if (limits.get(i).windowSizeMillis == limits.get(j).windowSizeMillis) {
+                        // Window sizes name the Redis keys, so two limits on one window would share a counter
+                        throw new IllegalArgumentException("Each limit of a policy needs a different window size");
+                    }
+                }
+            }
+            return new RateLimitPolicy(this);
+        }
+    }
+}
@@ -2,36 +2,81 @@ package com.ratelimiter.common.models;
 
 import com.ratelimiter.common.constants.Constants;
 import com.ratelimiter.common.constants.RedisServerMode;
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.AbstractPipeline;
+import redis.clients.jedis.ClusterPipeline;
+import redis.clients.jedis.ConnectionPool;
+import redis.clients.jedis.DefaultJedisClientConfig;
 import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisClientConfig;
 import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisException;
 
+import java.time.Duration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
+/**
+ * Connections to a standalone Redis server or a Redis Cluster, shared by the Redis limiters.
+ * <p>
+ * Pool sizes, connection validation and cluster topology refresh are set on the {@link Builder}.
+ * With warm-up enabled, {@link Builder#build()} opens the pools' idle connections up front, and limiters
+ * built on the client load their scripts on every node, so the first requests after a deployment
+ * pay neither connection setup nor a NOSCRIPT round trip. {@link #isReady()} serves readiness probes.
+ */
 public class RedisClient {
     private final List<String> nodes;
     private final RedisServerMode redisServerMode;
     private final Integer connectionTimeout;
     private final Integer socketTimeout;
     private final Integer maxAttempts;
+    private final Integer maxTotal;
+    private final Integer minIdle;
+    private final boolean testOnBorrow;
+    private final Integer idleCheckInterval;
+    private final Integer topologyRefreshInterval;
+    private final boolean warmUp;
+    private final RateLimiterMetrics metrics;
+    private final RedisKeyCodec keyCodec;
     private JedisPool jedisPool;
     private JedisCluster jedisClusterClient;
 
-    private RedisClient(List<String> nodes, Integer connectionTimeout, Integer socketTimeout,
-                        RedisServerMode redisServerMode, Integer maxAttempts) {
-        if (redisServerMode == null) {
+    private RedisClient(Builder builder) {
+        if (builder.redisServerMode == null) {
             throw new IllegalArgumentException("RedisServerMode must not be null");
         }
+        if (builder.maxTotal == null || builder.maxTotal <= 0) {
+            throw new IllegalArgumentException("Max total connections must be greater than 0");
+        }
+        if (builder.minIdle == null || builder.minIdle < 0 || builder.minIdle > builder.maxTotal) {
+            throw new IllegalArgumentException("Min idle connections must be between 0 and max total");
+        }
+        if (builder.idleCheckInterval != null && builder.idleCheckInterval <= 0) {
+            throw new IllegalArgumentException("Idle check interval must be greater than 0");
+        }
+        if (builder.topologyRefreshInterval != null && builder.topologyRefreshInterval <= 0) {
+            throw new IllegalArgumentException("Topology refresh interval must be greater than 0");
+        }
 
-        this.nodes = nodes;
-        this.redisServerMode = redisServerMode;
-        this.connectionTimeout = connectionTimeout;
-        this.socketTimeout = socketTimeout;
-        this.maxAttempts = maxAttempts;
+        this.nodes = builder.nodes;
+        this.redisServerMode = builder.redisServerMode;
+        this.connectionTimeout = builder.connectionTimeout;
+        this.socketTimeout = builder.socketTimeout;
+        this.maxAttempts = builder.maxAttempts;
+        this.maxTotal = builder.maxTotal;
+        this.minIdle = builder.minIdle;
+        this.testOnBorrow = builder.testOnBorrow;
+        this.idleCheckInterval = builder.idleCheckInterval;
+        this.topologyRefreshInterval = builder.topologyRefreshInterval;
+        this.warmUp = builder.warmUp;
+        this.metrics = builder.metrics;
+        this.keyCodec = builder.keyCodec;
 
         if (redisServerMode == RedisServerMode.CLUSTER) {
             initializeCluster(nodes);
@@ -40,6 +85,10 @@ public class RedisClient {
         } else {
             throw new IllegalArgumentException("Unsupported RedisServerMode: " + redisServerMode);
         }
+
+        if (warmUp) {
+            warmUpConnections();
+        }
     }
 
     private void initializeCluster(List<String> nodes) {
@@ -50,10 +99,10 @@ public class RedisClient {
                 jedisNodes.add(new HostAndPort(hostPort[0], Integer.parseInt(hostPort[1])));
             }
 
-            GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
-            poolConfig.setMaxWaitMillis(Constants.POOL_MAX_WAIT);
-
-            this.jedisClusterClient = new JedisCluster(jedisNodes, connectionTimeout, socketTimeout, maxAttempts, poolConfig);
+            // Without a refresh interval the slot map is only reloaded when a node answers MOVED
+            Duration topologyRefreshPeriod = topologyRefreshInterval != null ? Duration.ofMillis(topologyRefreshInterval) : null;
+            this.jedisClusterClient = new JedisCluster(jedisNodes, clientConfig(), poolConfig(), topologyRefreshPeriod,
+                    maxAttempts, Duration.ofMillis((long) socketTimeout * maxAttempts));
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize Redis Cluster client: " + e.getMessage(), e);
         }
@@ -67,16 +116,109 @@ public class RedisClient {
         try {
             String[] hostPort = nodes.get(0).split(":");
 
-            GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
-            poolConfig.setMaxWaitMillis(Constants.POOL_MAX_WAIT);
-            poolConfig.setMaxTotal(30);
-
-            this.jedisPool = new JedisPool(poolConfig, hostPort[0], Integer.parseInt(hostPort[1]));
+            this.jedisPool = new JedisPool(poolConfig(), new HostAndPort(hostPort[0], Integer.parseInt(hostPort[1])), clientConfig());
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize Redis Standalone client: " + e.getMessage(), e);
         }
     }
 
+    private JedisClientConfig clientConfig() {
+        return DefaultJedisClientConfig.builder()
+                .connectionTimeoutMillis(connectionTimeout)
+                .socketTimeoutMillis(socketTimeout)
+                .build();
+    }
+
+    /**
+     * Builds the pool settings; in cluster mode they apply to the pool of each node.
+     */
+    private <T> GenericObjectPoolConfig<T> poolConfig() {
+        GenericObjectPoolConfig<T> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxWait(Duration.ofMillis(Constants.POOL_MAX_WAIT));
+        poolConfig.setMaxTotal(maxTotal);
+        // Idle connections above the default of 8 would otherwise be closed as soon as they are returned
+        poolConfig.setMaxIdle(maxTotal);
+        poolConfig.setMinIdle(minIdle);
+        poolConfig.setTestOnBorrow(testOnBorrow);
+        if (idleCheckInterval != null) {
+            // The evictor validates idle connections and tops the pool back up to min idle
+            poolConfig.setTestWhileIdle(true);
+            poolConfig.setTimeBetweenEvictionRuns(Duration.ofMillis(idleCheckInterval));
+        }
+        return poolConfig;
+    }
+
+    /**
+     * Opens the idle connections of every pool and checks one of each with a PING. Failures are left to
+     * the first requests and to {@link #isReady()}, so an unreachable node does not prevent startup.
+     */
+    private void warmUpConnections() {
+        try {
+            if (redisServerMode == RedisServerMode.CLUSTER) {
+                for (ConnectionPool pool : jedisClusterClient.getClusterNodes().values()) {
+                    pool.preparePool();
+                    try (Jedis jedis = new Jedis(pool.getResource())) {
+                        jedis.ping();
+                    }
+                }
+            } else {
+                jedisPool.preparePool();
+                try (Jedis jedis = jedisPool.getResource()) {
+                    jedis.ping();
+                }
+            }
+        } catch (Exception e) {
+            // Best effort, see above
+        }
+    }
+
+    /**
+     * Loads the given scripts on every node if warm-up is enabled, so their first calls are a single EVALSHA.
+     * Limiters call this with their scripts when they are built on this client.
+     *
+     * @param scripts The scripts to load.
+     */
+    public void preload(RedisScript... scripts) {
+        if (!warmUp) {
+            return;
+        }
+        for (RedisScript script : scripts) {
+            try {
+                script.load(this);
+            } catch (JedisException e) {
+                // Best effort; the NOSCRIPT fallback loads the script on first use
+            }
+        }
+    }
+
+    /**
+     * Checks that every known node answers a PING, for use by readiness probes.
+     * In cluster mode these are the nodes of the current slot map, replicas included.
+     *
+     * @return true if every node answered, false otherwise.
+     */
+    public boolean isReady() {
+        try {
+            if (redisServerMode == RedisServerMode.CLUSTER) {
+                if (jedisClusterClient.getClusterNodes().isEmpty()) {
+                    return false;
+                }
+                for (ConnectionPool pool : jedisClusterClient.getClusterNodes().values()) {
+                    try (Jedis jedis = new Jedis(pool.getResource())) {
+                        jedis.ping();
+                    }
+                }
+            } else {
+                try (Jedis jedis = jedisPool.getResource()) {
+                    jedis.ping();
+                }
+            }
+            return true;
+        } catch (JedisException e) {
+            return false;
+        }
+    }
+
     public JedisPool getJedisPool() {
         if (redisServerMode != RedisServerMode.STANDALONE) {
             throw new IllegalStateException("JedisPool is only available in standalone mode.");
@@ -84,6 +226,51 @@ public class RedisClient {
         return this.jedisPool;
     }
 
+    /**
+     * Borrows a connection from the standalone pool, recording how long the borrow waited.
+     * The caller must close the returned connection.
+     */
+    public Jedis getResource() {
+        JedisPool pool = getJedisPool();
+        if (!metrics.isEnabled()) {
+            return pool.getResource();
+        }
+        long start = System.nanoTime();
+        Jedis jedis = pool.getResource();
+        metrics.recordPoolWait(System.nanoTime() - start);
+        return jedis;
+    }
+
+    /**
+     * @return The metrics sink shared by the limiters using this client.
+     */
+    public RateLimiterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The codec the limiters using this client build their keys with.
+     */
+    public RedisKeyCodec getKeyCodec() {
+        return keyCodec;
+    }
+
+    /**
+     * @return The current time in nanoseconds if metrics are enabled, 0 otherwise.
+     */
+    public long startTimer() {
+        return metrics.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a Redis round trip that started at {@code startNanos}, see {@link #startTimer()}.
+     */
+    public void recordRedisCommand(long startNanos) {
+        if (metrics.isEnabled()) {
+            metrics.recordRedisCommand(System.nanoTime() - startNanos);
+        }
+    }
+
     public JedisCluster getJedisClusterClient() {
         if (redisServerMode != RedisServerMode.CLUSTER) {
             throw new IllegalStateException("JedisClusterClient is only available in cluster mode.");
@@ -91,6 +278,53 @@ public class RedisClient {
         return this.jedisClusterClient;
     }
 
+    /**
+     * Queues commands on a pipeline and sends them together, then waits for all replies.
+     * <p>
+     * In standalone mode this is one round trip on one pooled connection. In cluster mode commands are
+     * grouped by the node that owns each key's hash slot, and the per-node pipelines are synced in parallel.
+     *
+     * @param commands Queues the commands; the returned responses can be read once this method returns.
+     */
+    public void pipelined(Consumer<AbstractPipeline> commands) {
+        if (redisServerMode == RedisServerMode.CLUSTER) {
+            try (ClusterPipeline pipeline = getJedisClusterClient().pipelined()) {
+                commands.accept(pipeline);
+                long start = startTimer();
+                pipeline.sync();
+                recordRedisCommand(start);
+            }
+        } else {
+            try (Jedis jedis = getResource();
+                 Pipeline pipeline = jedis.pipelined()) {
+                commands.accept(pipeline);
+                long start = startTimer();
+                pipeline.sync();
+                recordRedisCommand(start);
+            }
+        }
+    }
+
+    /**
+     * Reads the server clock with {@code TIME}. In cluster mode the node owning slot 0 answers,
+     * so every caller reads the same server.
+     *
+     * @return The server time in milliseconds since the epoch.
+     */
+    public long serverTimeMillis() {
+        List<String> time;
+        if (redisServerMode == RedisServerMode.CLUSTER) {
+            try (Jedis jedis = new Jedis(getJedisClusterClient().getConnectionFromSlot(0))) {
+                time = jedis.time();
+            }
+        } else {
+            try (Jedis jedis = getResource()) {
+                time = jedis.time();
+            }
+        }
+        return Long.parseLong(time.get(0)) * 1000 + Long.parseLong(time.get(1)) / 1000;
+    }
+
     public RedisServerMode getRedisServerMode() {
         return this.redisServerMode;
     }
@@ -106,6 +340,14 @@ public class RedisClient {
         private Integer connectionTimeout = Constants.CONNECTION_TIMEOUT;
         private Integer socketTimeout = Constants.SOCKET_TIMEOUT;
         private Integer maxAttempts = Constants.MAX_ATTEMPTS;
+        private Integer maxTotal = Constants.POOL_MAX_TOTAL;
+        private Integer minIdle = Constants.POOL_MIN_IDLE;
+        private boolean testOnBorrow;
+        private Integer idleCheckInterval;
+        private Integer topologyRefreshInterval;
+        private boolean warmUp;
+        private RateLimiterMetrics metrics = RateLimiterMetrics.NOOP;
+        private RedisKeyCodec keyCodec = RedisKeyCodec.TEXT;
 
         public Builder(List<String> nodes) {
             this.nodes = nodes;
@@ -131,8 +373,80 @@ public class RedisClient {
             return this;
         }
 
+        /**
+         * Sets the most connections the pool opens, per node in cluster mode. Defaults to 30.
+         */
+        public Builder withMaxTotal(Integer maxTotal) {
+            this.maxTotal = maxTotal;
+            return this;
+        }
+
+        /**
+         * Sets how many idle connections the pool keeps open, per node in cluster mode. Defaults to 0.
+         * The pool is filled at build time with warm-up, and refilled by the idle check if one is set.
+         */
+        public Builder withMinIdle(Integer minIdle) {
+            this.minIdle = minIdle;
+            return this;
+        }
+
+        /**
+         * Validates each connection with a PING when it is borrowed, at the cost of one round trip per borrow.
+         * Defaults to false.
+         */
+        public Builder withTestOnBorrow(boolean testOnBorrow) {
+            this.testOnBorrow = testOnBorrow;
+            return this;
+        }
+
+        /**
+         * Validates idle connections and restores the min idle count every given number of milliseconds,
+         * on a background thread. Disabled by default.
+         */
+        public Builder withIdleCheckInterval(Integer idleCheckInterval) {
+            this.idleCheckInterval = idleCheckInterval;
+            return this;
+        }
+
+        /**
+         * Reloads the cluster slot map in the background every given number of milliseconds, so resharding
+         * and failovers are picked up before requests are redirected. Disabled by default, in which case
+         * the map is reloaded when a node answers MOVED. Ignored in standalone mode.
+         */
+        public Builder withTopologyRefreshInterval(Integer topologyRefreshInterval) {
+            this.topologyRefreshInterval = topologyRefreshInterval;
+            return this;
+        }
+
+        /**
+         * Opens the min idle connections of every pool at build time, and loads the scripts of limiters
+         * built on the client on every node. Disabled by default.
+         */
+        public Builder withWarmUp(boolean warmUp) {
+            this.warmUp = warmUp;
+            return this;
+        }
+
+        /**
+         * Sets where connection pool waits and Redis round trips are recorded. Limiters built on this
+         * client record their decisions there too. Defaults to {@link RateLimiterMetrics#NOOP}.
+         */
+        public Builder withMetrics(RateLimiterMetrics metrics) {
+            this.metrics = metrics != null ? metrics : RateLimiterMetrics.NOOP;
+            return this;
+        }
+
+        /**
+         * Sets how limiters built on this client encode their keys. Defaults to {@link RedisKeyCodec#TEXT},
+         * which keeps the plain string layout; switching codecs changes every key, so counts start over.
+         */
+        public Builder withKeyCodec(RedisKeyCodec keyCodec) {
+            this.keyCodec = keyCodec != null ? keyCodec : RedisKeyCodec.TEXT;
+            return this;
+        }
+
         public RedisClient build() {
-            return new RedisClient(nodes, connectionTimeout, socketTimeout, redisServerMode, maxAttempts);
+            return new RedisClient(this);
         }
     }
 }
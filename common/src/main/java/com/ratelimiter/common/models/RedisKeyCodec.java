@@ -0,0 +1,366 @@
+package com.ratelimiter.common.models;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Builds the binary Redis keys and arguments of the Redis limiters.
+ * <p>
+ * A key is a pre-encoded prefix, the rate limit identifier (optionally inside a {@code {hash tag}}),
+ * and up to two numbers such as the window, each after a {@code ':'}. Identifiers are encoded to UTF-8
+ * in a scratch buffer borrowed from a small shared pool, and each key is assembled into a single
+ * exactly-sized array, so building a key allocates only the key itself. The pool is sized by the CPUs
+ * rather than the threads, so millions of virtual threads share a few buffers instead of each
+ * allocating its own.
+ * <p>
+ * {@link #TEXT} produces the same bytes as plain string keys. {@link #COMPACT} writes numbers as minimal
+ * big-endian binary and replaces identifiers longer than 32 bytes with a 16-byte SHA-256 digest, which
+ * keeps long identifiers such as JWT subjects or URLs from inflating every key in Redis and on the wire.
+ * Changing the codec changes every key, so counts start over when a deployment switches.
+ */
+public class RedisKeyCodec {
+
+    /**
+     * UTF-8 identifiers and decimal numbers, identical to string keys.
+     */
+    public static final RedisKeyCodec TEXT = new Builder().build();
+
+    /**
+     * Binary numbers, and digests for identifiers longer than 32 bytes.
+     */
+    public static final RedisKeyCodec COMPACT = new Builder().withBinaryNumbers(true).withMaxIdBytes(32).build();
+
+    public static final int DIGEST_BYTES = 16;
+
+    private static final ScratchPool SCRATCH = new ScratchPool(Runtime.getRuntime().availableProcessors() * 2);
+
+    private final boolean binaryNumbers;
+    private final int maxIdBytes;
+
+    private RedisKeyCodec(Builder builder) {
+        this.binaryNumbers = builder.binaryNumbers;
+        this.maxIdBytes = builder.maxIdBytes;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param prefix A constant key prefix.
+     * @return The prefix encoded once, to pass to the key methods.
+     */
+    public static byte[] prefix(String prefix) {
+        return prefix.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public boolean isBinaryNumbers() {
+        return binaryNumbers;
+    }
+
+    /**
+     * @return The longest identifier kept as is, in UTF-8 bytes; 0 if identifiers are never hashed.
+     */
+    public int getMaxIdBytes() {
+        return maxIdBytes;
+    }
+
+    /**
+     * @return {@code prefix + id}, with the identifier inside braces if {@code hashTag} is set.
+     */
+    public byte[] key(byte[] prefix, String id, boolean hashTag) {
+        return encode(prefix, id, hashTag, 0, 0, 0);
+    }
+
+    /**
+     * @return {@code prefix + id + ":" + number}, with the identifier inside braces if {@code hashTag} is set.
+     */
+    public byte[] key(byte[] prefix, String id, boolean hashTag, long number) {
+        return encode(prefix, id, hashTag, 1, number, 0);
+    }
+
+    /**
+     * @return {@code prefix + id + ":" + first + ":" + second}, with the identifier inside braces if {@code hashTag} is set.
+     */
+    public byte[] key(byte[] prefix, String id, boolean hashTag, long first, long second) {
+        return encode(prefix, id, hashTag, 2, first, second);
+    }
+
+    /**
+     * Encodes a script argument. Scripts read arguments with {@code tonumber}, so they are always decimal.
+     */
+    public static byte[] arg(long value) {
+        return String.valueOf(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Builds a sorted-set member that is unique per process and sequence number.
+     *
+     * @param currentTime The request time, kept in text members for readability.
+     * @param instanceId  A random identifier of this process.
+     * @param sequence    A per-process sequence number.
+     * @return {@code currentTime-instanceId-sequence} in text, or the 16 bytes of instance and sequence in binary.
+     */
+    public byte[] member(long currentTime, long instanceId, long sequence) {
+        if (!binaryNumbers) {
+            return (currentTime + "-" + Long.toHexString(instanceId) + "-" + sequence).getBytes(StandardCharsets.US_ASCII);
+        }
+        byte[] member = new byte[16];
+        writeLong(member, 0, instanceId);
+        writeLong(member, 8, sequence);
+        return member;
+    }
+
+    private byte[] encode(byte[] prefix, String id, boolean hashTag, int numbers, long first, long second) {
+        Scratch scratch = SCRATCH.acquire();
+        try {
+            return encode(scratch, prefix, id, hashTag, numbers, first, second);
+        } finally {
+            SCRATCH.release(scratch);
+        }
+    }
+
+    private byte[] encode(Scratch scratch, byte[] prefix, String id, boolean hashTag, int numbers, long first, long second) {
+        int idLength = scratch.encodeUtf8(id);
+        byte[] idBytes = scratch.buffer;
+        if (maxIdBytes > 0 && idLength > maxIdBytes) {
+            idLength = scratch.digest(idLength, hashTag);
+            idBytes = scratch.digest;
+        }
+
+        int length = prefix.length + idLength + (hashTag ? 2 : 0);
+        if (numbers > 0) {
+            length += 1 + numberLength(first);
+        }
+        if (numbers > 1) {
+            length += 1 + numberLength(second);
+        }
+
+        byte[] key = new byte[length];
+        System.arraycopy(prefix, 0, key, 0, prefix.length);
+        int position = prefix.length;
+        if (hashTag) {
+            key[position++] = '{';
+        }
+        System.arraycopy(idBytes, 0, key, position, idLength);
+        position += idLength;
+        if (hashTag) {
+            key[position++] = '}';
+        }
+        if (numbers > 0) {
+            key[position++] = ':';
+            position = writeNumber(key, position, first);
+        }
+        if (numbers > 1) {
+            key[position++] = ':';
+            writeNumber(key, position, second);
+        }
+        return key;
+    }
+
+    private int numberLength(long number) {
+        if (binaryNumbers) {
+            return number < 0 ? Long.BYTES : Math.max(1, (Long.SIZE - Long.numberOfLeadingZeros(number) + 7) / 8);
+        }
+        if (number == Long.MIN_VALUE) {
+            return 20;
+        }
+        int length = number < 0 ? 2 : 1;
+        for (long rest = Math.abs(number); rest >= 10; rest /= 10) {
+            length++;
+        }
+        return length;
+    }
+
+    private int writeNumber(byte[] key, int position, long number) {
+        int length = numberLength(number);
+        if (binaryNumbers) {
+            for (int i = length - 1; i >= 0; i--) {
+                key[position + i] = (byte) number;
+                number >>>= 8;
+            }
+            return position + length;
+        }
+        if (number == Long.MIN_VALUE) {
+            byte[] digits = arg(number);
+            System.arraycopy(digits, 0, key, position, digits.length);
+            return position + digits.length;
+        }
+        int end = position + length;
+        long rest = Math.abs(number);
+        for (int i = end - 1; i >= position; i--) {
+            key[i] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        }
+        if (number < 0) {
+            key[position] = '-';
+        }
+        return end;
+    }
+
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * A bounded set of scratch buffers shared by all threads. A thread takes the buffer of a slot picked
+     * by its id, or of the next slots if that one is in use; if all are busy it encodes in a fresh
+     * buffer, which is kept only if a slot is free again when it is done.
+     */
+    private static final class ScratchPool {
+        private static final int PROBES = 4;
+        // Buffers grown past this for unusually long identifiers are not pooled, so the pool stays small
+        private static final int MAX_POOLED_BUFFER = 4096;
+
+        private final AtomicReferenceArray<Scratch> slots;
+
+        private ScratchPool(int size) {
+            this.slots = new AtomicReferenceArray<>(Math.max(PROBES, size));
+        }
+
+        private Scratch acquire() {
+            int start = slot();
+            for (int i = 0; i < PROBES; i++) {
+                Scratch scratch = slots.getAndSet((start + i) % slots.length(), null);
+                if (scratch != null) {
+                    return scratch;
+                }
+            }
+            return new Scratch();
+        }
+
+        private void release(Scratch scratch) {
+            if (scratch.buffer.length > MAX_POOLED_BUFFER) {
+                return;
+            }
+            int start = slot();
+            for (int i = 0; i < PROBES; i++) {
+                if (slots.compareAndSet((start + i) % slots.length(), null, scratch)) {
+                    return;
+                }
+            }
+        }
+
+        private int slot() {
+            return (int) ((Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L >>> 33) % slots.length());
+        }
+    }
+
+    /**
+     * Encoding buffer and digest state, reused across keys through the {@link ScratchPool}.
+     */
+    private static class Scratch {
+        private byte[] buffer = new byte[256];
+        private final byte[] digest = new byte[DIGEST_BYTES];
+        private final byte[] fullDigest = new byte[32];
+        // Created on the first long identifier, since most codecs never hash
+        private MessageDigest sha256;
+
+        /**
+         * Encodes the string into {@link #buffer} like {@link String#getBytes(java.nio.charset.Charset)},
+         * replacing unpaired surrogates with {@code '?'}.
+         *
+         * @return The number of bytes written.
+         */
+        private int encodeUtf8(String value) {
+            if (buffer.length < value.length() * 3) {
+                buffer = new byte[Math.max(buffer.length * 2, value.length() * 3)];
+            }
+            byte[] out = buffer;
+            int position = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    out[position++] = (byte) c;
+                } else if (c < 0x800) {
+                    out[position++] = (byte) (0xC0 | c >> 6);
+                    out[position++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    out[position++] = (byte) (0xF0 | codePoint >> 18);
+                    out[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    out[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    out[position++] = (byte) (0x80 | codePoint & 0x3F);
+                } else if (Character.isSurrogate(c)) {
+                    out[position++] = '?';
+                } else {
+                    out[position++] = (byte) (0xE0 | c >> 12);
+                    out[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    out[position++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            return position;
+        }
+
+        /**
+         * Hashes the first {@code length} bytes of {@link #buffer} into {@link #digest}.
+         *
+         * @return The digest length.
+         */
+        private int digest(int length, boolean hashTag) {
+            if (sha256 == null) {
+                try {
+                    sha256 = MessageDigest.getInstance("SHA-256");
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException("SHA-256 is not available", e);
+                }
+            }
+            sha256.update(buffer, 0, length);
+            try {
+                sha256.digest(fullDigest, 0, fullDigest.length);
+            } catch (DigestException e) {
+                throw new IllegalStateException("SHA-256 digest failed", e);
+            }
+            System.arraycopy(fullDigest, 0, digest, 0, DIGEST_BYTES);
+            if (hashTag) {
+                for (int i = 0; i < DIGEST_BYTES; i++) {
+                    // A '}' would end the hash tag early, so keys sharing the digest could land in different slots
+                    if (digest[i] == '}') {
+                        digest[i] ^= (byte) 0x80;
+                    }
+                }
+            }
+            return DIGEST_BYTES;
+        }
+    }
+
+    public static class Builder {
+        private boolean binaryNumbers;
+        private int maxIdBytes;
+
+        /**
+         * Writes numbers as minimal big-endian bytes instead of decimal text. Defaults to false.
+         */
+        public Builder withBinaryNumbers(boolean binaryNumbers) {
+            this.binaryNumbers = binaryNumbers;
+            return this;
+        }
+
+        /**
+         * Replaces identifiers longer than the given number of UTF-8 bytes with a 16-byte SHA-256 digest.
+         * Defaults to 0, meaning identifiers are never hashed.
+         */
+        public Builder withMaxIdBytes(int maxIdBytes) {
+            this.maxIdBytes = maxIdBytes;
+            return this;
+        }
+
+        public RedisKeyCodec build() {
+            if (maxIdBytes < 0) {
+                throw new IllegalArgumentException("Max id bytes must not be negative");
+            }
+            if (maxIdBytes > 0 && maxIdBytes < DIGEST_BYTES) {
+                // Shorter raw identifiers could then collide with digests of longer ones
+                throw new IllegalArgumentException("Max id bytes must be 0 or at least " + DIGEST_BYTES);
+            }
+            return new RedisKeyCodec(this);
+        }
+    }
+}
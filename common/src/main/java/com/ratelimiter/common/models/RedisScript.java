@@ -0,0 +1,132 @@
+package com.ratelimiter.common.models;
+
+import com.ratelimiter.common.constants.RedisServerMode;
+import redis.clients.jedis.AbstractPipeline;
+import redis.clients.jedis.ConnectionPool;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * A Lua script executed with EVALSHA, falling back to EVAL when the server answers NOSCRIPT.
+ * <p>
+ * The SHA-1 is computed locally, so the script body is only sent to a node the first time
+ * that node sees it (or after a SCRIPT FLUSH / failover); every other call is one EVALSHA.
+ * Keys and arguments are binary, see {@link RedisKeyCodec}; the script and its SHA-1 are encoded once.
+ */
+public class RedisScript {
+    private final String script;
+    private final String sha;
+    private final byte[] scriptBytes;
+    private final byte[] shaBytes;
+
+    public RedisScript(String script) {
+        this.script = script;
+        this.sha = sha1(script);
+        this.scriptBytes = script.getBytes(StandardCharsets.UTF_8);
+        this.shaBytes = sha.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public String getScript() {
+        return script;
+    }
+
+    public String getSha() {
+        return sha;
+    }
+
+    /**
+     * Runs the script against the Redis deployment behind the given client.
+     *
+     * @param redisClient The Redis client.
+     * @param keys        The keys passed as KEYS; in cluster mode they must share a hash slot.
+     * @param args        The arguments passed as ARGV.
+     * @return The raw script reply.
+     */
+    public Object eval(RedisClient redisClient, List<byte[]> keys, List<byte[]> args) {
+        if (redisClient.getRedisServerMode() == RedisServerMode.CLUSTER) {
+            long start = redisClient.startTimer();
+            Object result = eval(redisClient.getJedisClusterClient(), keys, args);
+            redisClient.recordRedisCommand(start);
+            return result;
+        }
+        try (Jedis jedis = redisClient.getResource()) {
+            long start = redisClient.startTimer();
+            Object result = eval(jedis, keys, args);
+            redisClient.recordRedisCommand(start);
+            return result;
+        }
+    }
+
+    public Object eval(Jedis jedis, List<byte[]> keys, List<byte[]> args) {
+        try {
+            return jedis.evalsha(shaBytes, keys, args);
+        } catch (JedisNoScriptException e) {
+            return jedis.eval(scriptBytes, keys, args);
+        }
+    }
+
+    public Object eval(JedisCluster cluster, List<byte[]> keys, List<byte[]> args) {
+        try {
+            return cluster.evalsha(shaBytes, keys, args);
+        } catch (JedisNoScriptException e) {
+            return cluster.eval(scriptBytes, keys, args);
+        }
+    }
+
+    /**
+     * Queues an EVALSHA on a pipeline. Reading the response throws {@link JedisNoScriptException}
+     * if the node has not cached the script yet; callers then retry with {@link #eval(RedisClient, List, List)}.
+     */
+    public Response<Object> evalsha(AbstractPipeline pipeline, List<byte[]> keys, List<byte[]> args) {
+        return pipeline.evalsha(shaBytes, keys, args);
+    }
+
+    /**
+     * Reads a pipelined {@link #evalsha(AbstractPipeline, List, List)} reply, re-running the script with EVAL
+     * outside the pipeline if the node answered NOSCRIPT.
+     */
+    public Object resolve(Response<Object> response, RedisClient redisClient, List<byte[]> keys, List<byte[]> args) {
+        try {
+            return response.get();
+        } catch (JedisNoScriptException e) {
+            return eval(redisClient, keys, args);
+        }
+    }
+
+    /**
+     * Loads the script into the script cache of the server, or of every node of the cluster's current
+     * slot map, replicas included, so the script is already cached on a replica that gets promoted.
+     *
+     * @param redisClient The Redis client.
+     */
+    public void load(RedisClient redisClient) {
+        if (redisClient.getRedisServerMode() == RedisServerMode.CLUSTER) {
+            for (ConnectionPool pool : redisClient.getJedisClusterClient().getClusterNodes().values()) {
+                try (Jedis jedis = new Jedis(pool.getResource())) {
+                    jedis.scriptLoad(script);
+                }
+            }
+        } else {
+            try (Jedis jedis = redisClient.getResource()) {
+                jedis.scriptLoad(script);
+            }
+        }
+    }
+
+    private static String sha1(String script) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return HexFormat.of().formatHex(digest.digest(script.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+}
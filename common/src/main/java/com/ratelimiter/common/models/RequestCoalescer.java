@@ -0,0 +1,102 @@
+package com.ratelimiter.common.models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs asynchronous rate limit checks on an executor, coalescing concurrent checks for the same key.
+ * <p>
+ * At most one operation per key is in flight. Checks that arrive while it runs are queued and
+ * answered together by the next operation, which asks for as many permits as there are waiters.
+ * Waiters are admitted in arrival order, up to the number of permits the operation granted.
+ */
+public class RequestCoalescer {
+
+    /**
+     * Requests permits for a key from the backing store.
+     */
+    @FunctionalInterface
+    public interface Operation {
+        /**
+         * @param key     The rate limit key.
+         * @param permits The number of coalesced checks.
+         * @return How many of the checks are admitted, between 0 and {@code permits}.
+         */
+        long admit(String key, int permits);
+    }
+
+    private final Operation operation;
+    private final Executor executor;
+    private final Map<String, KeyQueue> queues = new ConcurrentHashMap<>();
+
+    public RequestCoalescer(Operation operation, Executor executor) {
+        this.operation = operation;
+        this.executor = executor;
+    }
+
+    /**
+     * Queues one check for the key.
+     *
+     * @param key The rate limit key.
+     * @return A future completed with true if the check is admitted, false otherwise.
+     */
+    public CompletableFuture<Boolean> submit(String key) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        KeyQueue queue = queues.computeIfAbsent(key, k -> new KeyQueue());
+        boolean startDrain;
+        synchronized (queue) {
+            queue.waiters.add(future);
+            startDrain = !queue.inFlight;
+            queue.inFlight = true;
+        }
+        if (startDrain) {
+            try {
+                executor.execute(() -> drain(key, queue));
+            } catch (RuntimeException e) {
+                // The executor rejected the drain; fail everyone queued behind it
+                List<CompletableFuture<Boolean>> rejected;
+                synchronized (queue) {
+                    rejected = queue.waiters;
+                    queue.waiters = new ArrayList<>();
+                    queue.inFlight = false;
+                }
+                rejected.forEach(waiter -> waiter.completeExceptionally(e));
+            }
+        }
+        return future;
+    }
+
+    private void drain(String key, KeyQueue queue) {
+        while (true) {
+            List<CompletableFuture<Boolean>> batch;
+            synchronized (queue) {
+                if (queue.waiters.isEmpty()) {
+                    queue.inFlight = false;
+                    // A waiter that still holds this queue finds inFlight false and drains it itself
+                    queues.remove(key, queue);
+                    return;
+                }
+                batch = queue.waiters;
+                queue.waiters = new ArrayList<>();
+            }
+
+            try {
+                long admitted = operation.admit(key, batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).complete(i < admitted);
+                }
+            } catch (RuntimeException e) {
+                batch.forEach(future -> future.completeExceptionally(e));
+            }
+        }
+    }
+
+    private static class KeyQueue {
+        private List<CompletableFuture<Boolean>> waiters = new ArrayList<>();
+        private boolean inFlight;
+    }
+}
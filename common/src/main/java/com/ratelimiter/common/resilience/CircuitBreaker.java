@@ -0,0 +1,121 @@
+package com.ratelimiter.common.resilience;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the health of a Redis deployment and stops sending it traffic while it is failing.
+ * <p>
+ * The breaker opens after {@code failureThreshold} consecutive failures (errors or calls over the
+ * latency budget). While open every call is refused. Once {@code openMillis} has passed, one caller
+ * is let through as a probe: a successful probe closes the breaker, a failed one re-opens it for
+ * another {@code openMillis}. The breaker can be shared by every limiter using the same Redis client.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // 0 while closed; otherwise the time the breaker opened, negated while a probe is in flight
+    private final AtomicLong openedAt = new AtomicLong();
+
+    private CircuitBreaker(Builder builder) {
+        this.failureThreshold = builder.failureThreshold;
+        this.openMillis = builder.openMillis;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public long getOpenMillis() {
+        return openMillis;
+    }
+
+    public State getState() {
+        long opened = openedAt.get();
+        if (opened == 0) {
+            return State.CLOSED;
+        }
+        return opened < 0 ? State.HALF_OPEN : State.OPEN;
+    }
+
+    /**
+     * @return true if the call may go to Redis, false if the caller should use its fallback.
+     * A true answer while the breaker is open makes the caller the half-open probe, which must
+     * report back through {@link #onSuccess()} or {@link #onFailure()}.
+     */
+    public boolean tryAcquire() {
+        long opened = openedAt.get();
+        if (opened == 0) {
+            return true;
+        }
+        if (opened < 0 || System.currentTimeMillis() - opened < openMillis) {
+            return false;
+        }
+        // Only the thread that wins this CAS probes; everyone else keeps using the fallback
+        return openedAt.compareAndSet(opened, -opened);
+    }
+
+    public void onSuccess() {
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+        if (openedAt.get() != 0) {
+            openedAt.set(0);
+        }
+    }
+
+    public void onFailure() {
+        long opened = openedAt.get();
+        if (opened < 0) {
+            // The probe failed: stay open for another full interval
+            openedAt.compareAndSet(opened, System.currentTimeMillis());
+            return;
+        }
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold && opened == 0) {
+            openedAt.compareAndSet(0, System.currentTimeMillis());
+        }
+    }
+
+    public static class Builder {
+        private int failureThreshold = 5;
+        private long openMillis = 1000;
+
+        /**
+         * Sets how many consecutive failures open the breaker. Defaults to 5.
+         */
+        public Builder withFailureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        /**
+         * Sets how long the breaker stays open before probing Redis again. Defaults to 1000 ms.
+         */
+        public Builder withOpenMillis(long openMillis) {
+            this.openMillis = openMillis;
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            if (failureThreshold <= 0) {
+                throw new IllegalArgumentException("Failure threshold must be greater than 0");
+            }
+            if (openMillis <= 0) {
+                throw new IllegalArgumentException("Open duration must be greater than 0");
+            }
+            return new CircuitBreaker(this);
+        }
+    }
+}
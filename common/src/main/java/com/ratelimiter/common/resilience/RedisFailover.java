@@ -0,0 +1,223 @@
+package com.ratelimiter.common.resilience;
+
+import com.ratelimiter.common.models.RateLimitPolicy;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Resilience settings for a Redis-backed limiter: a per-call latency budget, a {@link CircuitBreaker}
+ * and a local limiter used while Redis is unhealthy.
+ * <p>
+ * Each Redis call runs on the failover executor (virtual threads by default) and the caller waits at most
+ * {@code latencyBudgetMillis} for it. Calls that fail or run over the budget count as breaker failures
+ * and are answered by the fallback instead. A call that ran over the budget is not cancelled on the
+ * server, so its increment may still land in Redis. While the breaker is open, calls skip Redis
+ * entirely and go straight to the fallback.
+ * <p>
+ * The fallback enforces {@code limit / nodeCount} per node, so the fleet as a whole stays near the
+ * configured limit while every node limits locally.
+ */
+public class RedisFailover {
+
+    /**
+     * Creates the local limiter a Redis-backed limiter falls back to.
+     */
+    @FunctionalInterface
+    public interface FallbackFactory {
+        /**
+         * @param limit        The per-node limit, already divided by the node count.
+         * @param windowMillis The window size of the Redis-backed limiter.
+         * @return The local limiter.
+         */
+        LocalRateLimiter create(int limit, long windowMillis);
+    }
+
+    /**
+     * An in-process limiter answering checks while Redis is unavailable.
+     * <p>
+     * Like the Redis checks they stand in for, checks with a cost or a policy count the whole cost
+     * or nothing, so a denied request consumes no local quota.
+     */
+    @FunctionalInterface
+    public interface LocalRateLimiter {
+        boolean isAllowed(String key);
+
+        /**
+         * Checks a request with the given cost. Limiters that only count single requests deny any larger
+         * cost without consuming anything.
+         */
+        default boolean isAllowed(String key, int cost) {
+            return cost == 1 && isAllowed(key);
+        }
+
+        /**
+         * Checks a request against every limit of a policy. The policy holds the fleet-wide limits, so
+         * implementations enforce each one divided by the node count, see {@link #localPolicy}. Limiters
+         * that cannot enforce policies deny without consuming anything.
+         */
+        default boolean isAllowed(String key, int cost, RateLimitPolicy policy) {
+            return false;
+        }
+    }
+
+    private final CircuitBreaker circuitBreaker;
+    private final long latencyBudgetMillis;
+    private final int nodeCount;
+    private final FallbackFactory fallbackFactory;
+    private final Executor executor;
+
+    private RedisFailover(Builder builder) {
+        this.circuitBreaker = builder.circuitBreaker != null
+                ? builder.circuitBreaker
+                : CircuitBreaker.builder().build();
+        this.latencyBudgetMillis = builder.latencyBudgetMillis;
+        this.nodeCount = builder.nodeCount;
+        this.fallbackFactory = builder.fallbackFactory;
+        this.executor = builder.executor != null
+                ? builder.executor
+                : Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public long getLatencyBudgetMillis() {
+        return latencyBudgetMillis;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return The configured fallback factory, or null if the limiter should use its default.
+     */
+    public FallbackFactory getFallbackFactory() {
+        return fallbackFactory;
+    }
+
+    /**
+     * @param limit The fleet-wide limit.
+     * @return The share of the limit one node enforces while Redis is unavailable, at least 1.
+     */
+    public int localLimit(int limit) {
+        return Math.max(1, limit / nodeCount);
+    }
+
+    /**
+     * @return The policy with each limit divided by the node count, as {@link #localLimit} does.
+     */
+    public RateLimitPolicy localPolicy(RateLimitPolicy policy) {
+        return policy.mapLimits(this::localLimit);
+    }
+
+    /**
+     * Runs a Redis call within the latency budget, answering from the fallback if the breaker is open
+     * or the call fails or times out.
+     *
+     * @param redisCall The call against Redis.
+     * @param fallback  Computes the answer locally.
+     * @return The Redis answer, or the fallback answer.
+     */
+    public <T> T execute(Supplier<T> redisCall, Supplier<T> fallback) {
+        if (!circuitBreaker.tryAcquire()) {
+            return fallback.get();
+        }
+
+        CompletableFuture<T> future;
+        try {
+            future = CompletableFuture.supplyAsync(redisCall, executor);
+        } catch (RuntimeException e) {
+            // The executor rejected the call; treat it like an unavailable Redis
+            circuitBreaker.onFailure();
+            return fallback.get();
+        }
+
+        try {
+            T result = future.get(latencyBudgetMillis, TimeUnit.MILLISECONDS);
+            circuitBreaker.onSuccess();
+            return result;
+        } catch (TimeoutException | ExecutionException e) {
+            future.cancel(true);
+            circuitBreaker.onFailure();
+            return fallback.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            // Counted as a failure so an interrupted probe does not leave the breaker half-open
+            circuitBreaker.onFailure();
+            return fallback.get();
+        }
+    }
+
+    public static class Builder {
+        private CircuitBreaker circuitBreaker;
+        private long latencyBudgetMillis = 50;
+        private int nodeCount = 1;
+        private FallbackFactory fallbackFactory;
+        private Executor executor;
+
+        /**
+         * Sets the breaker guarding Redis. Share one breaker between limiters on the same Redis client
+         * so they trip together. Defaults to a breaker with default settings.
+         */
+        public Builder withCircuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /**
+         * Sets how long a caller waits for one Redis call before falling back. Defaults to 50 ms.
+         */
+        public Builder withLatencyBudgetMillis(long latencyBudgetMillis) {
+            this.latencyBudgetMillis = latencyBudgetMillis;
+            return this;
+        }
+
+        /**
+         * Sets the number of nodes sharing the limit; the fallback enforces the limit divided by it. Defaults to 1.
+         */
+        public Builder withNodeCount(int nodeCount) {
+            this.nodeCount = nodeCount;
+            return this;
+        }
+
+        /**
+         * Sets how the local fallback limiter is created. Limiters that have an in-memory counterpart
+         * use it when this is not set.
+         */
+        public Builder withFallbackFactory(FallbackFactory fallbackFactory) {
+            this.fallbackFactory = fallbackFactory;
+            return this;
+        }
+
+        /**
+         * Sets the executor running Redis calls under the latency budget. Defaults to one virtual thread per task.
+         */
+        public Builder withExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public RedisFailover build() {
+            if (latencyBudgetMillis <= 0) {
+                throw new IllegalArgumentException("Latency budget must be greater than 0");
+            }
+            if (nodeCount <= 0) {
+                throw new IllegalArgumentException("Node count must be greater than 0");
+            }
+            return new RedisFailover(this);
+        }
+    }
+}
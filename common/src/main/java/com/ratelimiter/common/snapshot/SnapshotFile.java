@@ -0,0 +1,421 @@
+package com.ratelimiter.common.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A snapshot of per-key window states, written in one pass and read back in place through memory-mapped segments.
+ * <p>
+ * The file holds a header, the entries one after another, and an open-addressing hash table of entry
+ * offsets. Opening a snapshot only maps the file, so it takes the same time for ten keys as for ten million;
+ * a limiter looks each key up the first time it sees it after a restart. A snapshot is written to a
+ * temporary file while the limiter keeps serving, then moved over the previous one, so readers never see
+ * a partial file.
+ * <p>
+ * Layout, big-endian:
+ * <pre>
+ * header  : magic (4) version (4) saved at (8) window size (8) entry count (8) entries end (8)
+ *           table offset (8) table capacity (8), padded to 64 bytes
+ * entry   : key hash (4) key length (2) UTF-8 key, window start in epoch millis (8) count (4)
+ * table   : one entry offset (8) per slot, 0 for an empty slot
+ * </pre>
+ * The file is mapped in 256 MB segments. An entry that would cross a segment boundary starts at the next
+ * segment instead, and the table is 8-byte aligned, so every read stays within one segment.
+ * <p>
+ * Entries are appended through a small buffer; only the table, whose extent is known once the entries
+ * are written, is mapped for writing. The file is therefore created at its final size and never
+ * truncated under a live mapping.
+ */
+public final class SnapshotFile {
+
+    /**
+     * Receives the entries of a snapshot.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        /**
+         * @param key               The rate limit key.
+         * @param windowStartMillis The start of the key's window, in milliseconds since the epoch.
+         * @param count             The count of the window.
+         */
+        void accept(String key, long windowStartMillis, int count);
+    }
+
+    /**
+     * The saved window of one key.
+     */
+    public record Entry(long windowStartMillis, int count) {
+    }
+
+    /**
+     * The longest key kept, in UTF-8 bytes; longer keys are left out of snapshots.
+     */
+    public static final int MAX_KEY_BYTES = 0xFFFE;
+
+    private static final int MAGIC = 0x524C534E; // "RLSN"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int SEGMENT_BITS = 28;
+    private static final long SEGMENT_BYTES = 1L << SEGMENT_BITS;
+    private static final long SEGMENT_MASK = SEGMENT_BYTES - 1;
+    // hash, key length, window start and count around the key bytes
+    private static final int ENTRY_OVERHEAD = 4 + 2 + 8 + 4;
+    // Key length marking the rest of a segment as padding
+    private static final int PADDING = 0xFFFF;
+
+    private final MappedByteBuffer[] segments;
+    private final long savedAtMillis;
+    private final long windowSizeMillis;
+    private final long size;
+    private final long entriesEnd;
+    private final long tableOffset;
+    private final long tableMask;
+
+    private SnapshotFile(MappedByteBuffer[] segments) throws IOException {
+        this.segments = segments;
+        if (segments.length == 0 || segments[0].limit() < HEADER_BYTES
+                || getInt(0) != MAGIC || getInt(4) != VERSION) {
+            throw new IOException("Not a rate limiter snapshot");
+        }
+        this.savedAtMillis = getLong(8);
+        this.windowSizeMillis = getLong(16);
+        this.size = getLong(24);
+        this.entriesEnd = getLong(32);
+        this.tableOffset = getLong(40);
+        this.tableMask = getLong(48) - 1;
+        MappedByteBuffer last = segments[segments.length - 1];
+        long fileSize = ((long) (segments.length - 1) << SEGMENT_BITS) + last.limit();
+        if (tableMask < 0 || (tableMask & (tableMask + 1)) != 0 || entriesEnd < HEADER_BYTES
+                || entriesEnd > tableOffset || tableOffset + (tableMask + 1) * 8 > fileSize) {
+            throw new IOException("Truncated or corrupt rate limiter snapshot");
+        }
+    }
+
+    /**
+     * Maps an existing snapshot.
+     *
+     * @param path The snapshot file.
+     * @return The snapshot, or null if the file does not exist.
+     * @throws IOException If the file cannot be read or is not a snapshot.
+     */
+    public static SnapshotFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((fileSize + SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long base = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(SEGMENT_BYTES, fileSize - base));
+                segments[i].order(ByteOrder.BIG_ENDIAN);
+            }
+            // The mappings stay valid after the channel is closed
+            return new SnapshotFile(segments);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a snapshot of the given entries, replacing any previous snapshot at the path once complete.
+     *
+     * @param path             The snapshot file.
+     * @param windowSizeMillis The window size of the limiter, checked when the snapshot is restored.
+     * @param savedAtMillis    The time of the snapshot, in milliseconds since the epoch.
+     * @param entries          Passes every entry to the given consumer.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Path path, long windowSizeMillis, long savedAtMillis,
+                             Consumer<EntryConsumer> entries) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            EntryWriter entryWriter = new EntryWriter(channel);
+            entries.accept(entryWriter);
+            entryWriter.flush();
+
+            long tableOffset = (entryWriter.position + 7) & ~7L;
+            long capacity = Long.highestOneBit(Math.max(16, (long) entryWriter.count * 4 / 3) * 2 - 1);
+            TableWriter table = new TableWriter(channel, tableOffset, capacity);
+            for (int i = 0; i < entryWriter.count; i++) {
+                long slot = entryWriter.hashes[i] & (capacity - 1);
+                while (table.get(slot) != 0) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                table.put(slot, entryWriter.offsets[i]);
+            }
+            table.force();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(savedAtMillis)
+                    .putLong(windowSizeMillis)
+                    .putLong(entryWriter.count)
+                    .putLong(entryWriter.position)
+                    .putLong(tableOffset)
+                    .putLong(capacity);
+            header.clear();
+            writeFully(channel, header, 0);
+            channel.force(false);
+        } catch (SnapshotException e) {
+            throw e.getCause();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    public long getSavedAtMillis() {
+        return savedAtMillis;
+    }
+
+    public long getWindowSizeMillis() {
+        return windowSizeMillis;
+    }
+
+    /**
+     * @return The number of entries.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Looks up the saved window of a key with one probe sequence in the mapped table.
+     *
+     * @param key The rate limit key.
+     * @return The saved window, or null if the key is not in the snapshot.
+     */
+    public Entry lookup(String key) {
+        int hash = hash(key);
+        byte[] keyBytes = null;
+        long slot = hash & tableMask;
+        while (true) {
+            long offset = getLong(tableOffset + slot * 8);
+            if (offset == 0) {
+                return null;
+            }
+            if (getInt(offset) == hash) {
+                if (keyBytes == null) {
+                    keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                }
+                int keyLength = getShort(offset + 4);
+                if (keyLength == keyBytes.length && keyEquals(offset + 6, keyBytes)) {
+                    return new Entry(getLong(offset + 6 + keyLength), getInt(offset + 14 + keyLength));
+                }
+            }
+            slot = (slot + 1) & tableMask;
+        }
+    }
+
+    /**
+     * Passes every entry to the consumer, in file order.
+     */
+    public void forEach(EntryConsumer consumer) {
+        long offset = HEADER_BYTES;
+        while (offset < entriesEnd) {
+            long remaining = SEGMENT_BYTES - (offset & SEGMENT_MASK);
+            int keyLength = remaining < ENTRY_OVERHEAD ? PADDING : getShort(offset + 4);
+            if (keyLength == PADDING) {
+                offset += remaining;
+                continue;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            segment(offset).get((int) ((offset + 6) & SEGMENT_MASK), keyBytes);
+            consumer.accept(new String(keyBytes, StandardCharsets.UTF_8),
+                    getLong(offset + 6 + keyLength), getInt(offset + 14 + keyLength));
+            offset += ENTRY_OVERHEAD + keyLength;
+        }
+    }
+
+    private boolean keyEquals(long offset, byte[] keyBytes) {
+        MappedByteBuffer segment = segment(offset);
+        int index = (int) (offset & SEGMENT_MASK);
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (segment.get(index + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private MappedByteBuffer segment(long offset) {
+        return segments[(int) (offset >>> SEGMENT_BITS)];
+    }
+
+    private int getShort(long offset) {
+        return segment(offset).getShort((int) (offset & SEGMENT_MASK)) & 0xFFFF;
+    }
+
+    private int getInt(long offset) {
+        return segment(offset).getInt((int) (offset & SEGMENT_MASK));
+    }
+
+    private long getLong(long offset) {
+        return segment(offset).getLong((int) (offset & SEGMENT_MASK));
+    }
+
+    /**
+     * A hash that is stable across JVMs, since {@link String#hashCode()} is specified.
+     */
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Writes the table through read-write mappings of exactly its extent, one per segment it spans.
+     */
+    private static class TableWriter {
+        private final long tableOffset;
+        private final int firstSegment;
+        private final MappedByteBuffer[] segments;
+
+        private TableWriter(FileChannel channel, long tableOffset, long capacity) throws IOException {
+            long end = tableOffset + capacity * 8;
+            this.tableOffset = tableOffset;
+            this.firstSegment = (int) (tableOffset >>> SEGMENT_BITS);
+            this.segments = new MappedByteBuffer[(int) ((end - 1) >>> SEGMENT_BITS) - firstSegment + 1];
+            for (int i = 0; i < segments.length; i++) {
+                long start = Math.max(tableOffset, (long) (firstSegment + i) << SEGMENT_BITS);
+                long stop = Math.min(end, (long) (firstSegment + i + 1) << SEGMENT_BITS);
+                // Mapping past the end grows the file to exactly the table's end
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, stop - start);
+            }
+        }
+
+        private long get(long slot) {
+            long offset = tableOffset + slot * 8;
+            return segment(offset).getLong(index(offset));
+        }
+
+        private void put(long slot, long entryOffset) {
+            long offset = tableOffset + slot * 8;
+            segment(offset).putLong(index(offset), entryOffset);
+        }
+
+        private MappedByteBuffer segment(long offset) {
+            return segments[(int) (offset >>> SEGMENT_BITS) - firstSegment];
+        }
+
+        private int index(long offset) {
+            // The first mapping starts at the table, the others at their segment's start
+            return (int) (offset >>> SEGMENT_BITS) == firstSegment
+                    ? (int) (offset - tableOffset)
+                    : (int) (offset & SEGMENT_MASK);
+        }
+
+        private void force() {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+    }
+
+    /**
+     * Appends entries after the header through a buffer, recording the offset and hash of each one
+     * for the table.
+     */
+    private static class EntryWriter implements EntryConsumer {
+        // Holds the largest entry
+        private static final int BUFFER_BYTES = 1 << 17;
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        // File offset of the first byte in the buffer
+        private long bufferStart = HEADER_BYTES;
+        private long[] offsets = new long[1024];
+        private int[] hashes = new int[1024];
+        private int count;
+        private long position = HEADER_BYTES;
+
+        private EntryWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void accept(String key, long windowStartMillis, int windowCount) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            if (keyBytes.length > MAX_KEY_BYTES) {
+                return;
+            }
+            int entryBytes = ENTRY_OVERHEAD + keyBytes.length;
+            long offset = position;
+            long remaining = SEGMENT_BYTES - (offset & SEGMENT_MASK);
+            if (remaining < entryBytes) {
+                if (remaining >= ENTRY_OVERHEAD) {
+                    reserve(offset, 6);
+                    buffer.putInt(0).putShort((short) PADDING);
+                }
+                offset += remaining;
+            }
+            int hash = hash(key);
+            reserve(offset, entryBytes);
+            buffer.putInt(hash)
+                    .putShort((short) keyBytes.length)
+                    .put(keyBytes)
+                    .putLong(windowStartMillis)
+                    .putInt(windowCount);
+            position = offset + entryBytes;
+
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                hashes = Arrays.copyOf(hashes, count * 2);
+            }
+            offsets[count] = offset;
+            hashes[count++] = hash;
+        }
+
+        /**
+         * Makes room for {@code bytes} at the given file offset, flushing first if the buffer is full or
+         * the offset skips ahead to the next segment.
+         */
+        private void reserve(long offset, int bytes) {
+            if (offset != bufferStart + buffer.position() || buffer.remaining() < bytes) {
+                flush();
+                bufferStart = offset;
+            }
+        }
+
+        private void flush() {
+            buffer.flip();
+            try {
+                writeFully(channel, buffer, bufferStart);
+            } catch (IOException e) {
+                throw new SnapshotException(e);
+            }
+            bufferStart += buffer.limit();
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Carries an I/O error out of a write made inside the entry callback.
+     */
+    private static class SnapshotException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private SnapshotException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
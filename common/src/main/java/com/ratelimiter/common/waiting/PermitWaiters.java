@@ -0,0 +1,139 @@
+package com.ratelimiter.common.waiting;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Blocking acquisition on top of a limiter's non-blocking check, replacing client retry loops.
+ * <p>
+ * Callers waiting on the same key form a FIFO queue. Only the head of the queue calls the limiter;
+ * a denied attempt reports how long until the permits may be available, and the head parks on a
+ * {@link TimerWheel} for exactly that long before trying again. The others park until the head
+ * leaves or their own timeout passes. A backlog on one key therefore sends one check per computed
+ * wait to the limiter instead of one per waiter per retry.
+ * <p>
+ * A caller arriving while nobody waits on its key tries once before queueing, so uncontended
+ * acquisitions cost a single check.
+ */
+public class PermitWaiters {
+
+    /**
+     * One non-blocking attempt to take the permits.
+     */
+    @FunctionalInterface
+    public interface Attempt {
+        /**
+         * @return 0 if the permits were taken, otherwise the milliseconds until they may be available.
+         */
+        long tryAcquire();
+    }
+
+    private final TimerWheel timerWheel;
+    private final Map<String, ArrayDeque<Waiter>> queues = new ConcurrentHashMap<>();
+
+    public PermitWaiters() {
+        this(TimerWheel.shared());
+    }
+
+    public PermitWaiters(TimerWheel timerWheel) {
+        this.timerWheel = timerWheel;
+    }
+
+    /**
+     * Takes the permits, waiting in FIFO order behind earlier callers for the same key.
+     * Returns false without waiting out the timeout once the computed wait exceeds the time left.
+     *
+     * @param key     The rate limit key.
+     * @param timeout The longest time to wait.
+     * @param attempt The non-blocking attempt.
+     * @return true if the permits were taken, false if the timeout passed first.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean acquire(String key, Duration timeout, Attempt attempt) throws InterruptedException {
+        long timeoutNanos = Math.max(0, timeout.toNanos());
+        long deadline = System.nanoTime() + timeoutNanos;
+        if (!queues.containsKey(key)) {
+            long wait = attempt.tryAcquire();
+            if (wait == 0) {
+                return true;
+            }
+            if (TimeUnit.MILLISECONDS.toNanos(wait) > timeoutNanos) {
+                return false;
+            }
+        }
+
+        Waiter waiter = enqueue(key);
+        try {
+            while (true) {
+                if (waiter.head) {
+                    long wait = attempt.tryAcquire();
+                    if (wait == 0) {
+                        return true;
+                    }
+                    long waitNanos = TimeUnit.MILLISECONDS.toNanos(wait);
+                    if (waitNanos > deadline - System.nanoTime()) {
+                        return false;
+                    }
+                    park(waitNanos);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    park(remaining);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            dequeue(key, waiter);
+        }
+    }
+
+    private void park(long nanos) {
+        TimerWheel.Timeout timeout = timerWheel.schedule(Thread.currentThread(), nanos);
+        LockSupport.park(this);
+        timeout.cancel();
+    }
+
+    private Waiter enqueue(String key) {
+        Waiter waiter = new Waiter(Thread.currentThread());
+        // The map's per-bin lock guards each queue, so queues are created and removed atomically with their waiters
+        queues.compute(key, (k, queue) -> {
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+            }
+            queue.add(waiter);
+            waiter.head = queue.peek() == waiter;
+            return queue;
+        });
+        return waiter;
+    }
+
+    private void dequeue(String key, Waiter waiter) {
+        queues.computeIfPresent(key, (k, queue) -> {
+            boolean wasHead = queue.peek() == waiter;
+            queue.remove(waiter);
+            if (wasHead && !queue.isEmpty()) {
+                Waiter next = queue.peek();
+                next.head = true;
+                LockSupport.unpark(next.thread);
+            }
+            return queue.isEmpty() ? null : queue;
+        });
+    }
+
+    private static class Waiter {
+        private final Thread thread;
+        private volatile boolean head;
+
+        private Waiter(Thread thread) {
+            this.thread = thread;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.ratelimiter.common.waiting;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel that unparks waiting threads when their deadline passes, so any number of parked
+ * waiters is served by one background thread instead of one timed sleep each.
+ * <p>
+ * Deadlines are rounded up to the next tick, so a thread is woken at most one tick late and never early.
+ * New timeouts are handed to the wheel thread through a lock-free queue; only the wheel thread touches the
+ * buckets. While nothing is scheduled the wheel thread parks instead of ticking.
+ */
+public class TimerWheel {
+
+    private static final TimerWheel SHARED = new TimerWheel(1, 512);
+
+    private final long startNanos;
+    private final long tickNanos;
+    private final int mask;
+    private final ArrayDeque<Timeout>[] buckets;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private volatile boolean idle;
+    private long tick;
+    private int scheduled;
+
+    /**
+     * @param tickMillis The wheel resolution, in milliseconds.
+     * @param wheelSize  The number of buckets, rounded up to a power of two.
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickMillis, int wheelSize) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be greater than 0");
+        }
+        if (wheelSize <= 0 || wheelSize > 1 << 20) {
+            throw new IllegalArgumentException("Wheel size must be between 1 and 2^20");
+        }
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.startNanos = System.nanoTime();
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = size - 1;
+        this.buckets = (ArrayDeque<Timeout>[]) new ArrayDeque<?>[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        this.worker = new Thread(this::run, "rate-limiter-timer-wheel");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * @return The wheel shared by every limiter, with a 1 ms tick.
+     */
+    public static TimerWheel shared() {
+        return SHARED;
+    }
+
+    /**
+     * Arranges for the thread to be unparked once the delay has passed.
+     *
+     * @param thread     The thread to unpark.
+     * @param delayNanos The delay, in nanoseconds.
+     * @return A handle to cancel the wake-up if the thread resumes for another reason.
+     */
+    public Timeout schedule(Thread thread, long delayNanos) {
+        Timeout timeout = new Timeout(thread, System.nanoTime() + Math.max(0, delayNanos));
+        pending.add(timeout);
+        if (idle) {
+            LockSupport.unpark(worker);
+        }
+        return timeout;
+    }
+
+    private void run() {
+        while (true) {
+            if (scheduled == 0 && pending.isEmpty()) {
+                idle = true;
+                // Re-check after publishing the flag so a timeout added meanwhile is not missed
+                if (pending.isEmpty()) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+                // Skip the ticks that passed while idle; every bucket is empty
+                tick = Math.max(tick, (System.nanoTime() - startNanos) / tickNanos);
+                continue;
+            }
+
+            long tickEnd = startNanos + (tick + 1) * tickNanos;
+            long sleep = tickEnd - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(this, sleep);
+                continue;
+            }
+            transferPending();
+            expire(buckets[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            // A deadline in the past lands in the current bucket and fires on this pass
+            long deadlineTick = Math.max(tick, (timeout.deadlineNanos - startNanos) / tickNanos);
+            timeout.rounds = (deadlineTick - tick) / buckets.length;
+            buckets[(int) (deadlineTick & mask)].add(timeout);
+            scheduled++;
+        }
+    }
+
+    private void expire(ArrayDeque<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.cancelled) {
+                iterator.remove();
+                scheduled--;
+            } else if (timeout.rounds <= 0) {
+                iterator.remove();
+                scheduled--;
+                LockSupport.unpark(timeout.thread);
+            } else {
+                timeout.rounds--;
+            }
+        }
+    }
+
+    /**
+     * A scheduled wake-up. Cancelled timeouts are dropped when the wheel reaches their bucket.
+     */
+    public static class Timeout {
+        private final Thread thread;
+        private final long deadlineNanos;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Thread thread, long deadlineNanos) {
+            this.thread = thread;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.rate.limiter.fixedwindow.configs;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch of request counts for one window, used by {@link RateLimiterCountMinSketchInMemory}.
+ * <p>
+ * {@code depth} rows of {@code width} atomic counters; a key increments one counter per row and its
+ * estimate is the smallest of those counters. Estimates never undercount, and with probability
+ * {@code 1 - delta} overcount by at most {@code epsilon} times the total requests in the window,
+ * where {@code width = e / epsilon} and {@code depth = ln(1 / delta)}.
+ * Row positions come from the key's 64-bit fingerprint by double hashing, so nothing is allocated per check.
+ */
+public class CountMinSketch {
+    private final int depth;
+    private final int widthBits;
+    private final int widthMask;
+    private final AtomicLongArray cells;
+    private volatile long window = Long.MIN_VALUE;
+
+    /**
+     * @param width The counters per row, rounded up to a power of two.
+     * @param depth The number of rows.
+     */
+    public CountMinSketch(int width, int depth) {
+        this(width, depth, Long.MIN_VALUE);
+    }
+
+    /**
+     * Creates an empty sketch already assigned to a window.
+     *
+     * @param width  The counters per row, rounded up to a power of two.
+     * @param depth  The number of rows.
+     * @param window The window the sketch counts.
+     */
+    public CountMinSketch(int width, int depth, long window) {
+        this.window = window;
+        int roundedWidth = Math.max(2, Integer.highestOneBit(Math.max(1, width - 1)) << 1);
+        this.depth = depth;
+        this.widthBits = Integer.numberOfTrailingZeros(roundedWidth);
+        this.widthMask = roundedWidth - 1;
+        this.cells = new AtomicLongArray(roundedWidth * depth);
+    }
+
+    public int getWidth() {
+        return widthMask + 1;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return The window these counts belong to.
+     */
+    public long getWindow() {
+        return window;
+    }
+
+    /**
+     * @param fingerprint The key's fingerprint.
+     * @return The smallest counter over all rows.
+     */
+    public long estimate(long fingerprint) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, cells.get(cellOf(fingerprint, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Counts one request for the key in every row.
+     */
+    public void increment(long fingerprint) {
+        for (int row = 0; row < depth; row++) {
+            cells.getAndIncrement(cellOf(fingerprint, row));
+        }
+    }
+
+    /**
+     * Zeroes every counter and assigns the sketch to a new window. This takes time in proportion to the
+     * sketch size, so it belongs on a background thread, and callers must ensure no check is still
+     * counting into the old window.
+     */
+    public void reset(long window) {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, 0);
+        }
+        this.window = window;
+    }
+
+    private int cellOf(long fingerprint, int row) {
+        // Kirsch-Mitzenmacher: row hashes h1 + row * h2 behave like independent hashes
+        int h1 = (int) fingerprint;
+        int h2 = (int) (fingerprint >>> 32) | 1;
+        return (row << widthBits) | ((h1 + row * h2) & widthMask);
+    }
+}
@@ -0,0 +1,137 @@
+package com.rate.limiter.fixedwindow.configs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Bucketed expiry queue for fixed windows, indexed by the window in which a key expires.
+ * <p>
+ * A key is enqueued once each time its window starts, into the slot of the window that contains
+ * its expiry time. Each cleanup tick only drains the slots that are fully in the past, so the cost
+ * of a tick tracks the number of keys that are due rather than the total number of keys.
+ * Entries left behind by keys that started a new window since are recognised and dropped when
+ * their slot is drained.
+ */
+public class ExpiryQueue {
+
+    private static final int SLOTS = 4;
+
+    private final long windowSizeMillis;
+    private final Queue<String>[] slots;
+    private volatile long drainedIndex;
+
+    /**
+     * Looks up and removes the window state the queue entries refer to.
+     */
+    public interface Handler {
+        /**
+         * @param key The key.
+         * @return The start tick of the key's current window, or {@link Long#MIN_VALUE} if the key is gone.
+         */
+        long startTickOf(String key);
+
+        /**
+         * Removes the key only if its current window still started at {@code startTick}.
+         *
+         * @param key       The key.
+         * @param startTick The start tick observed through {@link #startTickOf(String)}.
+         * @return true if the key was removed.
+         */
+        boolean removeIfStartedAt(String key, long startTick);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ExpiryQueue(long windowSizeMillis, long now) {
+        this.windowSizeMillis = windowSizeMillis;
+        this.slots = (Queue<String>[]) new Queue<?>[SLOTS];
+        for (int i = 0; i < SLOTS; i++) {
+            slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.drainedIndex = now / windowSizeMillis - 1;
+    }
+
+    /**
+     * Records that the key started a window at {@code startTick}.
+     */
+    public void add(String key, long startTick) {
+        slots[slotOf(expiryIndex(startTick))].offer(key);
+    }
+
+    /**
+     * Removes every key whose window has expired by {@code now}, touching only the slots that are due.
+     *
+     * @return The number of keys removed.
+     */
+    public int drainExpired(long now, Handler handler) {
+        long dueIndex = now / windowSizeMillis - 1;
+        int removed = 0;
+        List<String> deferred = new ArrayList<>();
+        for (long index = drainedIndex + 1; index <= dueIndex; index++) {
+            Queue<String> slot = slots[slotOf(index)];
+            String key;
+            while ((key = slot.poll()) != null) {
+                long startTick = handler.startTickOf(key);
+                if (startTick == Long.MIN_VALUE) {
+                    continue;
+                }
+                long expiryIndex = expiryIndex(startTick);
+                if (expiryIndex <= dueIndex) {
+                    if (handler.removeIfStartedAt(key, startTick)) {
+                        removed++;
+                    }
+                } else if (slotOf(expiryIndex) == slotOf(index)) {
+                    // A later window that wrapped onto this slot; keep it for its own turn
+                    deferred.add(key);
+                }
+                // Otherwise the key restarted and is already queued in a later slot
+            }
+            slot.addAll(deferred);
+            deferred.clear();
+            drainedIndex = index;
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the key whose window started the earliest, even if it has not expired yet.
+     *
+     * @return true if a key was removed, false if the queue holds no live keys.
+     */
+    public boolean evictOldest(Handler handler) {
+        long firstIndex = drainedIndex + 1;
+        List<String> retained = new ArrayList<>();
+        for (long index = firstIndex; index < firstIndex + SLOTS; index++) {
+            Queue<String> slot = slots[slotOf(index)];
+            try {
+                String key;
+                while ((key = slot.poll()) != null) {
+                    long startTick = handler.startTickOf(key);
+                    if (startTick == Long.MIN_VALUE || slotOf(expiryIndex(startTick)) != slotOf(index)) {
+                        continue;
+                    }
+                    if (handler.removeIfStartedAt(key, startTick)) {
+                        return true;
+                    }
+                    if (handler.startTickOf(key) == startTick) {
+                        // The window state was replaced without restarting, so no later entry exists for the key
+                        retained.add(key);
+                    }
+                }
+            } finally {
+                slot.addAll(retained);
+                retained.clear();
+            }
+        }
+        return false;
+    }
+
+    private long expiryIndex(long startTick) {
+        return (startTick + windowSizeMillis) / windowSizeMillis;
+    }
+
+    private int slotOf(long index) {
+        return (int) Math.floorMod(index, (long) SLOTS);
+    }
+}
@@ -0,0 +1,192 @@
+package com.rate.limiter.fixedwindow.configs;
+
+/**
+ * Fixed-capacity window store for very large key counts, used in
+ * {@link com.rate.limiter.fixedwindow.constants.FixedWindowInMemoryMode#COMPACT} mode.
+ * <p>
+ * Keys are hashed to 64-bit fingerprints; the fingerprint and the packed window state
+ * (see {@link FixedWindowState}) live side by side in preallocated {@code long[]} arrays, about
+ * 16 bytes per slot with no per-key objects, so memory is fixed at construction and checks allocate nothing.
+ * Two keys with the same fingerprint share a window, which at 64 bits is vanishingly rare.
+ * <p>
+ * The arrays are split into stripes, each guarded by its own monitor. A key may sit in any of the
+ * {@value #PROBE_LENGTH} slots following its home slot. Expired slots are reused in place, so no cleanup
+ * pass is needed. When every slot in that range holds a live window, one is evicted clock-style: slots
+ * hit since the last sweep get a second chance. An evicted key starts a fresh window when it returns.
+ */
+public class FingerprintWindowStore {
+
+    public static final int PROBE_LENGTH = 16;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final int slotMask;
+
+    /**
+     * @param capacity The number of keys to hold, rounded up to a power of two (at most 2^30).
+     */
+    public FingerprintWindowStore(int capacity) {
+        int slots = Math.max(PROBE_LENGTH, Integer.highestOneBit(Math.max(1, Math.min(capacity, 1 << 30) - 1)) << 1);
+        int stripeCount = Math.min(Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 4,
+                slots / PROBE_LENGTH);
+        int slotsPerStripe = slots / stripeCount;
+
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(slotsPerStripe);
+        }
+        this.stripeMask = stripeCount - 1;
+        this.slotMask = slotsPerStripe - 1;
+    }
+
+    /**
+     * @return The number of slots, which bounds the number of keys held.
+     */
+    public long capacity() {
+        return (long) stripes.length * (slotMask + 1);
+    }
+
+    /**
+     * @return The number of occupied slots, including windows that expired but were not reused yet.
+     */
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return The number of live windows evicted to make room for other keys.
+     */
+    public long evictions() {
+        long evictions = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                evictions += stripe.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    /**
+     * Counts one request for the key in its current window.
+     *
+     * @param key              The key.
+     * @param now              The current tick, in milliseconds.
+     * @param windowSizeMillis The window size.
+     * @param limit            The number of requests allowed per window.
+     * @return true if the request is allowed, false otherwise.
+     */
+    public boolean tryAcquire(String key, long now, long windowSizeMillis, int limit) {
+        return tryAcquire(key, now, windowSizeMillis, limit, 1) == 0;
+    }
+
+    /**
+     * Counts several requests for the key in its current window if they all fit.
+     *
+     * @param key              The key.
+     * @param now              The current tick, in milliseconds.
+     * @param windowSizeMillis The window size.
+     * @param limit            The number of requests allowed per window.
+     * @param permits          The number of requests, at most the limit.
+     * @return 0 if the requests were counted, otherwise the milliseconds until the key's window expires.
+     */
+    public long tryAcquire(String key, long now, long windowSizeMillis, int limit, int permits) {
+        long fingerprint = fingerprint(key);
+        Stripe stripe = stripes[(int) (fingerprint >>> 32) & stripeMask];
+        synchronized (stripe) {
+            return stripe.tryAcquire(fingerprint, (int) fingerprint & slotMask, now, windowSizeMillis, limit, permits);
+        }
+    }
+
+    /**
+     * Hashes the key's characters into a non-zero 64-bit fingerprint without allocating.
+     */
+    public static long fingerprint(String key) {
+        long hash = 0x9E3779B97F4A7C15L ^ key.length();
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0xFF51AFD7ED558CCDL;
+        }
+        // Finalizer from MurmurHash3 so every bit of the input affects the slot and stripe bits
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash; // 0 marks an empty slot
+    }
+
+    private static class Stripe {
+        private final long[] fingerprints;
+        private final long[] states;
+        private final long[] referenced;
+        private final int mask;
+        private int size;
+        private long evictions;
+
+        private Stripe(int slots) {
+            this.fingerprints = new long[slots];
+            this.states = new long[slots];
+            this.referenced = new long[Math.max(1, slots / Long.SIZE)];
+            this.mask = slots - 1;
+        }
+
+        private long tryAcquire(long fingerprint, int home, long now, long windowSizeMillis, int limit, int permits) {
+            int free = -1;
+            for (int i = 0; i < PROBE_LENGTH; i++) {
+                int slot = (home + i) & mask;
+                long current = fingerprints[slot];
+                if (current == fingerprint) {
+                    referenced[slot >>> 6] |= 1L << slot;
+                    return increment(slot, now, windowSizeMillis, limit, permits);
+                }
+                if (free < 0 && (current == 0 || FixedWindowState.isExpired(states[slot], now, windowSizeMillis))) {
+                    free = slot;
+                }
+            }
+
+            if (free < 0) {
+                free = evict(home);
+                evictions++;
+            } else if (fingerprints[free] == 0) {
+                size++;
+            }
+            fingerprints[free] = fingerprint;
+            states[free] = FixedWindowState.pack(now, permits);
+            referenced[free >>> 6] &= ~(1L << free);
+            return 0;
+        }
+
+        private long increment(int slot, long now, long windowSizeMillis, int limit, int permits) {
+            long state = states[slot];
+            if (FixedWindowState.isExpired(state, now, windowSizeMillis)) {
+                // Reset window
+                states[slot] = FixedWindowState.pack(now, permits);
+                return 0;
+            }
+            if (FixedWindowState.count(state) + permits <= limit) {
+                states[slot] = state + permits;
+                return 0;
+            }
+            return FixedWindowState.millisUntilExpiry(state, now, windowSizeMillis);
+        }
+
+        /**
+         * Sweeps the key's probe range, clearing reference bits until an unreferenced slot is found.
+         */
+        private int evict(int home) {
+            for (int i = 0; i < PROBE_LENGTH; i++) {
+                int slot = (home + i) & mask;
+                long bit = 1L << slot;
+                if ((referenced[slot >>> 6] & bit) == 0) {
+                    return slot;
+                }
+                referenced[slot >>> 6] &= ~bit;
+            }
+            // Every slot was referenced; they have all lost their second chance now
+            return home;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.rate.limiter.fixedwindow.configs;
+
+/**
+ * Packs a key's window start and request count into a single {@code long}
+ * so both can be updated with one compare-and-set.
+ * <p>
+ * Layout: the upper 33 bits hold the window start in milliseconds relative to the limiter's
+ * creation, the lower 31 bits hold the count. Window starts are compared modulo 2^33
+ * (about 99 days), which is far longer than any key stays idle before cleanup removes it.
+ */
+public final class FixedWindowState {
+
+    public static final int COUNT_BITS = 31;
+    public static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    public static final long START_MASK = (1L << (Long.SIZE - COUNT_BITS)) - 1;
+
+    /**
+     * Marker for a window removed by cleanup; callers must look the window up again.
+     */
+    public static final long RETIRED = -1L;
+
+    private FixedWindowState() {
+    }
+
+    public static long pack(long startTime, long count) {
+        return ((startTime & START_MASK) << COUNT_BITS) | count;
+    }
+
+    public static long startTime(long state) {
+        return state >>> COUNT_BITS;
+    }
+
+    public static int count(long state) {
+        return (int) (state & COUNT_MASK);
+    }
+
+    public static boolean isExpired(long state, long now, long windowSizeMillis) {
+        return ((now - startTime(state)) & START_MASK) >= windowSizeMillis;
+    }
+
+    /**
+     * @return The milliseconds until the window of a live state expires, at least 1.
+     */
+    public static long millisUntilExpiry(long state, long now, long windowSizeMillis) {
+        return Math.max(1, windowSizeMillis - ((now - startTime(state)) & START_MASK));
+    }
+}
@@ -0,0 +1,116 @@
+package com.rate.limiter.fixedwindow.configs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small table of the keys with the most requests in the current window, kept next to a
+ * {@link CountMinSketch} so the sources being limited can be reported by name.
+ * <p>
+ * Only keys that hit the limit are offered. A key enters the table with the sketch's estimate of its
+ * allowed requests plus the denied one, and from then on every request for it is counted exactly in its
+ * own counter, so a key's count only carries the sketch's overcount from before it entered the table.
+ * Counting a key already in the table is lock-free; a new key takes the table's monitor and replaces
+ * the smallest entry once the table is full. Offers below the smallest entry of a full table return
+ * without locking, so a flood of distinct keys does not contend.
+ */
+public class HeavyHitters {
+    private final int capacity;
+    private final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+    private volatile long window = Long.MIN_VALUE;
+    private volatile long minCount;
+
+    public HeavyHitters(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Counts an allowed request if the key is in the table.
+     *
+     * @param key    The key.
+     * @param window The window of the request.
+     */
+    public void count(String key, long window) {
+        if (window == this.window && !counts.isEmpty()) {
+            AtomicLong count = counts.get(key);
+            if (count != null) {
+                count.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Counts a request that hit the limit, adding the key to the table if it is among the largest.
+     *
+     * @param key      The key.
+     * @param estimate The sketch's estimate of the key's allowed requests, used only if the key is new.
+     * @param window   The window of the request.
+     */
+    public void offer(String key, long estimate, long window) {
+        // The denied request itself
+        long initial = estimate + 1;
+        if (window == this.window) {
+            AtomicLong count = counts.get(key);
+            if (count != null) {
+                count.incrementAndGet();
+                return;
+            }
+            if (counts.size() >= capacity && initial <= minCount) {
+                return;
+            }
+        }
+
+        synchronized (this) {
+            if (window < this.window) {
+                return;
+            }
+            if (window > this.window) {
+                counts.clear();
+                minCount = 0;
+                this.window = window;
+            }
+            AtomicLong count = counts.get(key);
+            if (count != null) {
+                count.incrementAndGet();
+                return;
+            }
+            if (counts.size() >= capacity) {
+                String smallest = null;
+                long smallestCount = Long.MAX_VALUE;
+                for (Map.Entry<String, AtomicLong> entry : counts.entrySet()) {
+                    if (entry.getValue().get() < smallestCount) {
+                        smallest = entry.getKey();
+                        smallestCount = entry.getValue().get();
+                    }
+                }
+                if (initial <= smallestCount) {
+                    minCount = smallestCount;
+                    return;
+                }
+                counts.remove(smallest);
+            }
+            counts.put(key, new AtomicLong(initial));
+            if (counts.size() >= capacity) {
+                minCount = counts.values().stream().mapToLong(AtomicLong::get).min().orElse(0);
+            }
+        }
+    }
+
+    /**
+     * @param window The current window.
+     * @return A copy of the keys and request counts recorded in that window.
+     */
+    public Map<String, Long> snapshot(long window) {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        if (window == this.window) {
+            counts.forEach((key, count) -> snapshot.put(key, count.get()));
+        }
+        return snapshot;
+    }
+}
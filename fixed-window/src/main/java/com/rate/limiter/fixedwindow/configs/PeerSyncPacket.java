@@ -0,0 +1,133 @@
+package com.rate.limiter.fixedwindow.configs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format of the counts exchanged by {@link RateLimiterFixedWindowPeerSync}.
+ * <p>
+ * A packet is a header followed by as many entries as fit in {@link #MAX_BYTES}, small enough for one
+ * unfragmented UDP datagram:
+ * <pre>
+ *   header: magic (1) | sender node id (8) | window size ms (varint) | base window (varint)
+ *   entry:  key length (varint) | key (UTF-8) | base window - window (varint) | count (varint)
+ * </pre>
+ * Counts are the sender's own, absolute for the window, so the receiver can merge them by maximum and a
+ * lost packet is made good by any later one. Since nearly every entry is in the current window and counts
+ * are small, an entry usually costs the key plus three bytes.
+ */
+public final class PeerSyncPacket {
+
+    public static final int MAX_BYTES = 1400;
+
+    private static final byte MAGIC = (byte) 0xC7;
+
+    /**
+     * Receives the entries of a packet.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(String key, long window, int count);
+    }
+
+    private PeerSyncPacket() {
+    }
+
+    /**
+     * Starts a packet in the buffer, which must hold {@link #MAX_BYTES}.
+     */
+    public static void writeHeader(ByteBuffer buffer, long nodeId, long windowSizeMillis, long baseWindow) {
+        buffer.clear();
+        buffer.put(MAGIC);
+        buffer.putLong(nodeId);
+        writeVarLong(buffer, windowSizeMillis);
+        writeVarLong(buffer, baseWindow);
+    }
+
+    /**
+     * Appends an entry if it fits.
+     *
+     * @param key        The key, already encoded as UTF-8.
+     * @param baseWindow The base window written in the header; {@code window} must not be after it.
+     * @return false if the packet is full and must be sent first.
+     */
+    public static boolean writeEntry(ByteBuffer buffer, byte[] key, long baseWindow, long window, int count) {
+        // Worst case for the three varints, so the check never overestimates the room left
+        if (buffer.position() + key.length + 5 + 10 + 5 > MAX_BYTES) {
+            return false;
+        }
+        writeVarLong(buffer, key.length);
+        buffer.put(key);
+        writeVarLong(buffer, baseWindow - window);
+        writeVarLong(buffer, count);
+        return true;
+    }
+
+    /**
+     * @return The sender's node id, or 0 if the buffer does not hold a packet of this format.
+     */
+    public static long readNodeId(ByteBuffer buffer) {
+        if (buffer.remaining() < 9 || buffer.get(buffer.position()) != MAGIC) {
+            return 0;
+        }
+        return buffer.getLong(buffer.position() + 1);
+    }
+
+    /**
+     * Reads the entries of a packet whose window size matches.
+     *
+     * @return false if the packet is malformed or was sent with another window size; entries read
+     * before a malformation was found have already been passed on, which merging by maximum tolerates.
+     */
+    public static boolean read(ByteBuffer buffer, long windowSizeMillis, EntryConsumer entries) {
+        try {
+            if (buffer.get() != MAGIC) {
+                return false;
+            }
+            buffer.getLong();
+            if (readVarLong(buffer) != windowSizeMillis) {
+                return false;
+            }
+            long baseWindow = readVarLong(buffer);
+            while (buffer.hasRemaining()) {
+                int keyLength = (int) readVarLong(buffer);
+                if (keyLength < 0 || keyLength > buffer.remaining()) {
+                    return false;
+                }
+                String key = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), keyLength,
+                        StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + keyLength);
+                long window = baseWindow - readVarLong(buffer);
+                long count = readVarLong(buffer);
+                if (count < 0 || count > Integer.MAX_VALUE) {
+                    return false;
+                }
+                entries.accept(key, window, (int) count);
+            }
+            return true;
+        } catch (RuntimeException e) {
+            // Truncated varint or header: drop the rest of the packet
+            return false;
+        }
+    }
+
+    private static void writeVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+}
@@ -0,0 +1,115 @@
+package com.rate.limiter.fixedwindow.configs;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Grow-only counter (G-counter) of one key's requests in one window, with a slot per node.
+ * <p>
+ * This node only ever increments its own slot; the peers' slots are merged from their sync packets by
+ * taking the maximum, so packets may be lost, duplicated or reordered without over- or under-counting.
+ * The sum of the peers' slots is kept alongside, so a check reads two integers whatever the fleet size.
+ */
+public final class PeerWindowCounter {
+
+    /**
+     * Marker for a counter removed by cleanup; callers must look the key up again.
+     */
+    public static final PeerWindowCounter RETIRED = new PeerWindowCounter(Long.MIN_VALUE, 0);
+
+    private final long window;
+    private final AtomicInteger local = new AtomicInteger();
+    private final AtomicIntegerArray remote;
+    private final AtomicInteger remoteTotal = new AtomicInteger();
+    private volatile boolean dirty;
+
+    /**
+     * @param window The window index, {@code timeMillis / windowSizeMillis}.
+     * @param peers  The number of peers, one slot each.
+     */
+    public PeerWindowCounter(long window, int peers) {
+        this.window = window;
+        this.remote = new AtomicIntegerArray(peers);
+    }
+
+    public long getWindow() {
+        return window;
+    }
+
+    /**
+     * Counts the cost in this node's slot if the merged count stays within the limit.
+     *
+     * @return true if the cost was counted.
+     */
+    public boolean tryAdd(int cost, int limit) {
+        while (true) {
+            int count = local.get();
+            if ((long) count + cost + remoteTotal.get() > limit) {
+                return false;
+            }
+            if (local.compareAndSet(count, count + cost)) {
+                if (!dirty) {
+                    // Checked first so hot keys do not write the flag on every request
+                    dirty = true;
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Merges a peer's count for this window.
+     *
+     * @param peer  The peer's slot.
+     * @param count The peer's own count, as it last reported it.
+     */
+    public void merge(int peer, int count) {
+        while (true) {
+            int known = remote.get(peer);
+            if (count <= known) {
+                return;
+            }
+            if (remote.compareAndSet(peer, known, count)) {
+                remoteTotal.addAndGet(count - known);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Merges every peer's count from another counter of the same window.
+     */
+    public void mergeRemote(PeerWindowCounter other) {
+        for (int peer = 0; peer < remote.length(); peer++) {
+            merge(peer, other.remote.get(peer));
+        }
+    }
+
+    /**
+     * @return This node's count.
+     */
+    public int getLocalCount() {
+        return local.get();
+    }
+
+    /**
+     * @return The merged count of all nodes, as far as this node knows.
+     */
+    public int getTotalCount() {
+        return local.get() + remoteTotal.get();
+    }
+
+    /**
+     * Clears the changed flag. The flag is cleared before the count is read for sending,
+     * so an increment racing with the sync is sent again at the next one.
+     *
+     * @return true if this node's count changed since the last call.
+     */
+    public boolean takeChanged() {
+        if (!dirty) {
+            return false;
+        }
+        dirty = false;
+        return true;
+    }
+}
@@ -0,0 +1,184 @@
+package com.rate.limiter.fixedwindow.configs;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Configuration for local quota leasing on top of {@link RateLimiterFixedWindowWithRedis}.
+ * <p>
+ * Instead of one Redis round trip per request, a node reserves a block of permits for a key with
+ * one INCRBY and serves them from a local counter. Unused permits are discarded when the window
+ * rolls over. At most {@code maxLeaseFraction * limit} permits are reserved per block, so the
+ * permits a node can strand (leased but unused while other nodes are denied) stay within that bound.
+ * One small {@link Lease} is kept per leased key, so leasing suits a bounded set of high-volume keys;
+ * leases left unused for a whole window are removed when the next window starts.
+ */
+public class QuotaLeasing {
+
+    private final double maxLeaseFraction;
+    private final long targetLeaseMillis;
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private final AtomicLong prunedWindow = new AtomicLong(Long.MIN_VALUE);
+
+    private QuotaLeasing(Builder builder) {
+        this.maxLeaseFraction = builder.maxLeaseFraction;
+        this.targetLeaseMillis = builder.targetLeaseMillis;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public double getMaxLeaseFraction() {
+        return maxLeaseFraction;
+    }
+
+    public long getTargetLeaseMillis() {
+        return targetLeaseMillis;
+    }
+
+    public Map<String, Lease> getLeases() {
+        return leases;
+    }
+
+    /**
+     * Claims the pruning of the given window, so that only one caller per window runs {@link #removeExpired(long)}.
+     *
+     * @return true if the caller should prune now.
+     */
+    public boolean claimPrune(long currentWindow) {
+        long pruned = prunedWindow.get();
+        return pruned < currentWindow && prunedWindow.compareAndSet(pruned, currentWindow);
+    }
+
+    /**
+     * Removes the leases last used before the previous window. Their permits are void already,
+     * and keeping the lease of the previous window lets a steadily used key keep its block size.
+     *
+     * @return The number of leases removed.
+     */
+    public int removeExpired(long currentWindow) {
+        int removed = 0;
+        for (Map.Entry<String, Lease> entry : leases.entrySet()) {
+            Lease lease = entry.getValue();
+            // Refills hold the monitor, so a lease is never retired between a refill's check and its update
+            synchronized (lease) {
+                long state = lease.state.get();
+                if (state == Lease.RETIRED || Lease.window(state) >= currentWindow - 1
+                        || !lease.state.compareAndSet(state, Lease.RETIRED)) {
+                    continue;
+                }
+            }
+            leases.remove(entry.getKey(), lease);
+            removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * @param limit The per-window limit of the leased key.
+     * @return The largest block a single reservation may take.
+     */
+    public int maxLeaseSize(int limit) {
+        return (int) Math.max(1, Math.min(limit, (long) (limit * maxLeaseFraction)));
+    }
+
+    /**
+     * Permits a node holds locally for one key. The window number (upper 32 bits) and the remaining
+     * permits (lower 32 bits) share one {@link AtomicLong} so a permit taken is always from the
+     * current window's block. Reservations happen under the lease's monitor; takes are lock-free.
+     */
+    public static class Lease {
+        /**
+         * State of a lease removed by {@link #removeExpired(long)}; callers must look the key up again.
+         */
+        public static final long RETIRED = Long.MIN_VALUE;
+
+        private static final long REMAINING_MASK = 0xFFFFFFFFL;
+
+        private final AtomicLong state = new AtomicLong(pack(-1, 0));
+        private volatile long exhaustedWindow = -1;
+        private int lastLeaseSize;
+        private long lastLeaseAtMillis;
+
+        public static long pack(long window, long remaining) {
+            return (window << 32) | remaining;
+        }
+
+        public static long window(long state) {
+            return state >> 32;
+        }
+
+        public static long remaining(long state) {
+            return state & REMAINING_MASK;
+        }
+
+        public AtomicLong getState() {
+            return state;
+        }
+
+        /**
+         * @return The window in which Redis refused further permits for this key.
+         */
+        public long getExhaustedWindow() {
+            return exhaustedWindow;
+        }
+
+        public void setExhaustedWindow(long exhaustedWindow) {
+            this.exhaustedWindow = exhaustedWindow;
+        }
+
+        /**
+         * Sizes the next block so it lasts about {@code targetLeaseMillis} at the rate the previous
+         * block was consumed. Must be called while holding the lease's monitor.
+         *
+         * @return The number of permits to reserve.
+         */
+        public int nextLeaseSize(long nowMillis, long targetLeaseMillis, int maxLeaseSize) {
+            long size = 1;
+            if (lastLeaseSize > 0) {
+                long elapsed = Math.max(1, nowMillis - lastLeaseAtMillis);
+                size = lastLeaseSize * targetLeaseMillis / elapsed;
+                // Grow at most twofold per block so a short burst does not strand a large block
+                size = Math.min(size, 2L * lastLeaseSize);
+            }
+            size = Math.max(1, Math.min(size, maxLeaseSize));
+            lastLeaseSize = (int) size;
+            lastLeaseAtMillis = nowMillis;
+            return (int) size;
+        }
+    }
+
+    public static class Builder {
+        private double maxLeaseFraction = 0.01;
+        private long targetLeaseMillis = 100;
+
+        /**
+         * Sets the accuracy bound: the largest fraction of the limit one reservation may take.
+         * Defaults to 0.01.
+         */
+        public Builder withMaxLeaseFraction(double maxLeaseFraction) {
+            this.maxLeaseFraction = maxLeaseFraction;
+            return this;
+        }
+
+        /**
+         * Sets how long a leased block should last at the observed request rate. Defaults to 100 ms.
+         */
+        public Builder withTargetLeaseMillis(long targetLeaseMillis) {
+            this.targetLeaseMillis = targetLeaseMillis;
+            return this;
+        }
+
+        public QuotaLeasing build() {
+            if (maxLeaseFraction <= 0 || maxLeaseFraction > 1) {
+                throw new IllegalArgumentException("Max lease fraction must be in (0, 1]");
+            }
+            if (targetLeaseMillis <= 0) {
+                throw new IllegalArgumentException("Target lease duration must be greater than 0");
+            }
+            return new QuotaLeasing(this);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.rate.limiter.fixedwindow.configs;
+
+import com.ratelimiter.common.clock.Clock;
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Configuration class for approximate rate limiting with count-min sketches, for key spaces too large
+ * to track per key (for example per-source limits under a DDoS).
+ * <p>
+ * Each window has its own {@link CountMinSketch}; a key's count is the current window's estimate plus
+ * the previous window's estimate weighted by its overlap with a sliding window. Memory is fixed by the
+ * error bounds and does not grow with the number of keys. Sketches rotate through three slots: the
+ * current window, the previous one, and the next one, which the scheduled task clears ahead of time.
+ * If a check reaches a window before the task has cleared it, it swaps in a newly allocated sketch
+ * rather than clearing one on the request path.
+ * <p>
+ * Counts are never underestimated, so a key is not allowed past its limit (beyond checks that race on
+ * the same counters), but light keys may be denied when they share every counter with heavy ones.
+ * The overcount is at most {@code errorRate} times the total requests in the window (with probability
+ * {@code 1 - failureProbability}), so choose the error rate such that it stays well below the limit
+ * at the expected total load.
+ */
+public class RateLimiterCountMinSketchInMemory {
+
+    public static final String METRICS_NAME = "count-min-sketch-in-memory";
+
+    private final int limit;
+    private final long windowSizeMillis;
+    private final double errorRate;
+    private final double failureProbability;
+    private final Clock clock;
+    private final long epochMillis;
+    private final int sketchWidth;
+    private final int sketchDepth;
+    private final AtomicReferenceArray<CountMinSketch> sketches;
+    private final HeavyHitters heavyHitters;
+    private final RateLimiterMetrics metrics;
+    private final String metricsName;
+    private final ScheduledExecutorService executorService;
+
+    private RateLimiterCountMinSketchInMemory(Builder builder) {
+        this.limit = builder.limit;
+        this.windowSizeMillis = builder.windowSizeMillis;
+        this.errorRate = builder.errorRate;
+        this.failureProbability = builder.failureProbability;
+        this.clock = builder.clock;
+        this.epochMillis = clock.currentTimeMillis();
+        this.metrics = builder.metrics;
+        this.metricsName = builder.metricsName;
+        this.heavyHitters = builder.heavyHitters > 0 ? new HeavyHitters(builder.heavyHitters) : null;
+
+        this.sketchWidth = (int) Math.ceil(Math.E / errorRate);
+        this.sketchDepth = (int) Math.ceil(Math.log(1 / failureProbability));
+        this.sketches = new AtomicReferenceArray<>(3);
+        for (int i = 0; i < sketches.length(); i++) {
+            sketches.set(i, new CountMinSketch(sketchWidth, sketchDepth));
+        }
+        long currentWindow = currentWindow();
+        sketches.get(slotOf(currentWindow)).reset(currentWindow);
+
+        this.executorService = builder.executorService != null
+                ? builder.executorService
+                : Executors.newScheduledThreadPool(1);
+
+        // Clear the next window's sketch while the current one is in use
+        this.executorService.scheduleAtFixedRate(
+                this::prepareNextWindow,
+                0,
+                windowSizeMillis,
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public long getWindowSizeMillis() {
+        return windowSizeMillis;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public double getFailureProbability() {
+        return failureProbability;
+    }
+
+    public RateLimiterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The name this limiter's measurements are recorded under.
+     */
+    public String getMetricsName() {
+        return metricsName;
+    }
+
+    /**
+     * @return The heavy-hitter table, or null if it is disabled.
+     */
+    public HeavyHitters getHeavyHitters() {
+        return heavyHitters;
+    }
+
+    /**
+     * @return The keys that hit the limit in the current window and their request counts,
+     * empty if the heavy-hitter table is disabled; see {@link HeavyHitters}.
+     */
+    public Map<String, Long> heavyHitters() {
+        return heavyHitters != null ? heavyHitters.snapshot(currentWindow()) : Map.of();
+    }
+
+    /**
+     * @return Milliseconds elapsed since this limiter was created.
+     */
+    public long currentTick() {
+        return clock.currentTimeMillis() - epochMillis;
+    }
+
+    public long currentWindow() {
+        return currentTick() / windowSizeMillis;
+    }
+
+    /**
+     * Returns the sketch counting the given window. If the scheduled task has not prepared it yet,
+     * a new empty sketch replaces the stale one, so a check never waits for a sketch to be cleared.
+     *
+     * @param window The current window.
+     * @return The sketch for that window.
+     */
+    public CountMinSketch sketchFor(long window) {
+        int slot = slotOf(window);
+        while (true) {
+            CountMinSketch sketch = sketches.get(slot);
+            if (sketch.getWindow() >= window) {
+                return sketch;
+            }
+            CountMinSketch fresh = new CountMinSketch(sketchWidth, sketchDepth, window);
+            if (sketches.compareAndSet(slot, sketch, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    /**
+     * @param window The current window.
+     * @return The sketch of the window before it, or null if nothing was counted in that window.
+     */
+    public CountMinSketch previousSketch(long window) {
+        CountMinSketch sketch = sketches.get(slotOf(window - 1));
+        return sketch.getWindow() == window - 1 ? sketch : null;
+    }
+
+    private void prepareNextWindow() {
+        long start = System.nanoTime();
+        long nextWindow = currentWindow() + 1;
+        int slot = slotOf(nextWindow);
+        CountMinSketch sketch = sketches.get(slot);
+        if (sketch.getWindow() < nextWindow) {
+            // The slot holds the window before the previous one, which no check reads any more.
+            // Should a check swap in a sketch meanwhile, this one is simply dropped.
+            sketch.reset(nextWindow);
+        }
+        if (metrics.isEnabled()) {
+            metrics.recordCleanup(metricsName, System.nanoTime() - start, 0);
+        }
+    }
+
+    private int slotOf(long window) {
+        return (int) Math.floorMod(window, (long) sketches.length());
+    }
+
+    public void shutdown() {
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+        }
+    }
+
+    public static class Builder {
+        private int limit;
+        private long windowSizeMillis;
+        private double errorRate = 0.0001;
+        private double failureProbability = 0.01;
+        private int heavyHitters;
+        private ScheduledExecutorService executorService;
+        private RateLimiterMetrics metrics = RateLimiterMetrics.NOOP;
+        private String metricsName = METRICS_NAME;
+        private Clock clock = Clock.SYSTEM;
+
+        public Builder withLimit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        public Builder withWindowSize(long windowSizeMillis) {
+            this.windowSizeMillis = windowSizeMillis;
+            return this;
+        }
+
+        /**
+         * Sets the overcount bound as a fraction of the total requests per window; sets the sketch width.
+         * Defaults to 0.0001.
+         */
+        public Builder withErrorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /**
+         * Sets the probability that an estimate exceeds the error bound; sets the sketch depth. Defaults to 0.01.
+         */
+        public Builder withFailureProbability(double failureProbability) {
+            this.failureProbability = failureProbability;
+            return this;
+        }
+
+        /**
+         * Keeps the given number of keys that hit the limit, with their request counts, for reporting.
+         * Defaults to 0, meaning disabled.
+         */
+        public Builder withHeavyHitters(int heavyHitters) {
+            this.heavyHitters = heavyHitters;
+            return this;
+        }
+
+        public Builder withExecutorService(ScheduledExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * Sets where decisions and sketch rotations are recorded. Defaults to {@link RateLimiterMetrics#NOOP}.
+         */
+        public Builder withMetrics(RateLimiterMetrics metrics) {
+            this.metrics = metrics != null ? metrics : RateLimiterMetrics.NOOP;
+            return this;
+        }
+
+        /**
+         * Sets the name measurements are recorded under, so several limiters sharing one metrics sink
+         * report separately. Defaults to {@link RateLimiterCountMinSketchInMemory#METRICS_NAME}.
+         */
+        public Builder withMetricsName(String metricsName) {
+            this.metricsName = metricsName != null ? metricsName : METRICS_NAME;
+            return this;
+        }
+
+        /**
+         * Sets the time source for windows. Defaults to {@link Clock#SYSTEM}.
+         */
+        public Builder withClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public RateLimiterCountMinSketchInMemory build() {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("Limit must be greater than 0");
+            }
+            if (windowSizeMillis <= 0) {
+                throw new IllegalArgumentException("Window size must be greater than 0");
+            }
+            if (errorRate <= 0 || errorRate >= 1) {
+                throw new IllegalArgumentException("Error rate must be in (0, 1)");
+            }
+            if (failureProbability <= 0 || failureProbability >= 1) {
+                throw new IllegalArgumentException("Failure probability must be in (0, 1)");
+            }
+            // The width is rounded up to a power of two, which may double it
+            if (Math.ceil(Math.E / errorRate) * Math.ceil(Math.log(1 / failureProbability)) > 1 << 29) {
+                throw new IllegalArgumentException("Error bounds are too tight for one sketch");
+            }
+            if (heavyHitters < 0) {
+                throw new IllegalArgumentException("Heavy hitters must not be negative");
+            }
+            if (clock == null) {
+                throw new IllegalArgumentException("Clock must not be null");
+            }
+            return new RateLimiterCountMinSketchInMemory(this);
+        }
+    }
+}
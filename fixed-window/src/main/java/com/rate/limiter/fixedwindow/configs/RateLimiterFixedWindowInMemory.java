@@ -1,22 +1,59 @@
 package com.rate.limiter.fixedwindow.configs;
 
+import com.rate.limiter.fixedwindow.constants.FixedWindowInMemoryMode;
+import com.ratelimiter.common.clock.Clock;
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
+import com.ratelimiter.common.snapshot.SnapshotFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class RateLimiterFixedWindowInMemory {
 
+    public static final String METRICS_NAME = "fixed-window-in-memory";
+
     private final int limit;
     private final long windowSizeMillis;
+    private final FixedWindowInMemoryMode mode;
+    private final Clock clock;
+    private final long epochMillis;
     private final Map<String, WindowData> requestCounts;
+    private final Map<String, AtomicLong> packedCounts;
+    private final FingerprintWindowStore compactStore;
+    private final ExpiryQueue expiryQueue;
+    private final ExpiryQueue.Handler expiryHandler;
+    private final int maxKeys;
+    private final RateLimiterMetrics metrics;
+    private final String metricsName;
     private final ScheduledExecutorService executorService;
+    private final Path snapshotPath;
+    // The snapshot found at startup, until every window in it has expired
+    private volatile SnapshotFile restoredSnapshot;
 
     private RateLimiterFixedWindowInMemory(Builder builder) {
         this.limit = builder.limit;
         this.windowSizeMillis = builder.windowSizeMillis;
+        this.mode = builder.mode;
+        this.clock = builder.clock;
+        this.epochMillis = clock.currentTimeMillis();
         this.executorService = builder.executorService != null
                 ? builder.executorService
                 : Executors.newScheduledThreadPool(1);
         this.requestCounts = new ConcurrentHashMap<>();
+        this.packedCounts = new ConcurrentHashMap<>();
+        this.maxKeys = builder.maxKeys;
+        this.compactStore = mode == FixedWindowInMemoryMode.COMPACT ? new FingerprintWindowStore(maxKeys) : null;
+        this.metrics = builder.metrics;
+        this.metricsName = builder.metricsName;
+        this.expiryQueue = new ExpiryQueue(windowSizeMillis, currentTick());
+        this.expiryHandler = mode == FixedWindowInMemoryMode.ATOMIC
+                ? new PackedCountsExpiryHandler()
+                : new RequestCountsExpiryHandler();
+        this.snapshotPath = builder.snapshotPath;
+        this.restoredSnapshot = snapshotPath != null ? openSnapshot() : null;
 
         // Start a periodic cleanup task
         this.executorService.scheduleAtFixedRate(
@@ -25,12 +62,63 @@ public class RateLimiterFixedWindowInMemory {
                 windowSizeMillis,
                 TimeUnit.MILLISECONDS
         );
+        if (snapshotPath != null) {
+            this.executorService.scheduleWithFixedDelay(
+                    this::writeSnapshot,
+                    builder.snapshotIntervalMillis,
+                    builder.snapshotIntervalMillis,
+                    TimeUnit.MILLISECONDS
+            );
+        }
     }
 
     public Map<String, WindowData> getRequestCounts() {
         return requestCounts;
     }
 
+    /**
+     * @return Per-key packed window state used in {@link FixedWindowInMemoryMode#ATOMIC} mode, see {@link FixedWindowState}.
+     */
+    public Map<String, AtomicLong> getPackedCounts() {
+        return packedCounts;
+    }
+
+    /**
+     * @return The preallocated store used in {@link FixedWindowInMemoryMode#COMPACT} mode, null otherwise.
+     */
+    public FingerprintWindowStore getCompactStore() {
+        return compactStore;
+    }
+
+    public RateLimiterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The name this limiter's measurements are recorded under.
+     */
+    public String getMetricsName() {
+        return metricsName;
+    }
+
+    public FixedWindowInMemoryMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return The current time of the configured clock, in milliseconds since the epoch.
+     */
+    public long currentTimeMillis() {
+        return clock.currentTimeMillis();
+    }
+
+    /**
+     * @return Milliseconds elapsed since this limiter was created, used as the packed window start.
+     */
+    public long currentTick() {
+        return clock.currentTimeMillis() - epochMillis;
+    }
+
     public int getLimit() {
         return limit;
     }
@@ -39,12 +127,193 @@ public class RateLimiterFixedWindowInMemory {
         return windowSizeMillis;
     }
 
+    /**
+     * Registers a newly started window so the cleanup task can expire it.
+     *
+     * @param key       The key whose window started.
+     * @param startTick The window start, see {@link #currentTick()}.
+     */
+    public void trackWindowStart(String key, long startTick) {
+        expiryQueue.add(key, startTick);
+    }
+
+    public void trackWindowStart(String key, WindowData data) {
+        expiryQueue.add(key, data.getStartTime() - epochMillis);
+    }
+
+    /**
+     * Evicts the keys whose windows started the earliest while more than the configured maximum are held.
+     * Does nothing when no maximum is configured.
+     */
+    public void enforceMaxKeys() {
+        if (maxKeys <= 0 || mode == FixedWindowInMemoryMode.COMPACT) {
+            return;
+        }
+        Map<String, ?> counts = mode == FixedWindowInMemoryMode.ATOMIC ? packedCounts : requestCounts;
+        while (counts.size() > maxKeys && expiryQueue.evictOldest(expiryHandler)) {
+            // Keep evicting until back under the cap or nothing evictable is left
+        }
+    }
+
     private void cleanupExpiredEntries() {
-        long currentTime = System.currentTimeMillis();
-        requestCounts.entrySet().removeIf(entry -> currentTime - entry.getValue().getStartTime() >= windowSizeMillis);
+        if (mode == FixedWindowInMemoryMode.COMPACT) {
+            // Expired slots are reused in place, so there is nothing to clean up
+            if (metrics.isEnabled()) {
+                metrics.recordKeyCount(metricsName, compactStore.size());
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        int removed = expiryQueue.drainExpired(currentTick(), expiryHandler);
+        if (metrics.isEnabled()) {
+            metrics.recordCleanup(metricsName, System.nanoTime() - start, removed);
+            metrics.recordKeyCount(metricsName,
+                    mode == FixedWindowInMemoryMode.ATOMIC ? packedCounts.size() : requestCounts.size());
+        }
     }
 
+    /**
+     * Looks up the window a key had when the snapshot found at startup was written. Keys are looked up
+     * the first time they are seen, so restoring costs nothing up front, whatever the snapshot size.
+     *
+     * @param key The key, which has no window in memory.
+     * @return The key's saved window if it has not expired yet, with its start no later than now, or null.
+     */
+    public WindowData restoreWindow(String key) {
+        SnapshotFile snapshot = restoredSnapshot;
+        if (snapshot == null) {
+            return null;
+        }
+        long currentTime = clock.currentTimeMillis();
+        if (currentTime - snapshot.getSavedAtMillis() >= windowSizeMillis) {
+            // Every window in the snapshot has expired, so it can be dropped
+            restoredSnapshot = null;
+            return null;
+        }
+        SnapshotFile.Entry entry = snapshot.lookup(key);
+        if (entry == null || currentTime - entry.windowStartMillis() >= windowSizeMillis) {
+            return null;
+        }
+        return new WindowData(Math.min(entry.count(), limit), Math.min(entry.windowStartMillis(), currentTime));
+    }
+
+    /**
+     * @return The tick of a time in milliseconds since the epoch, see {@link #currentTick()}.
+     */
+    public long tickOf(long timeMillis) {
+        return timeMillis - epochMillis;
+    }
+
+    private SnapshotFile openSnapshot() {
+        try {
+            SnapshotFile snapshot = SnapshotFile.open(snapshotPath);
+            // A snapshot of another window size holds counts this limiter cannot interpret
+            return snapshot != null && snapshot.getWindowSizeMillis() == windowSizeMillis ? snapshot : null;
+        } catch (IOException e) {
+            // An unreadable snapshot only means starting with empty windows
+            return null;
+        }
+    }
+
+    /**
+     * Writes every live window to the snapshot file, iterating the maps while requests keep updating them.
+     * Windows restored from the previous snapshot and not touched since are carried over.
+     */
+    private synchronized void writeSnapshot() {
+        long currentTime = clock.currentTimeMillis();
+        long now = tickOf(currentTime);
+        SnapshotFile previous = restoredSnapshot;
+        Map<String, ?> counts = mode == FixedWindowInMemoryMode.ATOMIC ? packedCounts : requestCounts;
+        try {
+            SnapshotFile.write(snapshotPath, windowSizeMillis, currentTime, entries -> {
+                if (mode == FixedWindowInMemoryMode.ATOMIC) {
+                    packedCounts.forEach((key, window) -> {
+                        long state = window.get();
+                        if (state != FixedWindowState.RETIRED && !FixedWindowState.isExpired(state, now, windowSizeMillis)) {
+                            entries.accept(key, epochMillis + unwrapStartTick(state, now), FixedWindowState.count(state));
+                        }
+                    });
+                } else {
+                    requestCounts.forEach((key, data) -> {
+                        if (currentTime - data.getStartTime() < windowSizeMillis) {
+                            entries.accept(key, data.getStartTime(), data.getCount());
+                        }
+                    });
+                }
+                if (previous != null) {
+                    previous.forEach((key, windowStartMillis, count) -> {
+                        if (currentTime - windowStartMillis < windowSizeMillis && !counts.containsKey(key)) {
+                            entries.accept(key, windowStartMillis, count);
+                        }
+                    });
+                }
+            });
+        } catch (IOException e) {
+            // Keep serving from memory; the next run tries again
+        }
+    }
+
+    /**
+     * Recovers the full start tick of a packed state, whose start is stored modulo 2^33.
+     */
+    private static long unwrapStartTick(long state, long now) {
+        return now - ((now - FixedWindowState.startTime(state)) & FixedWindowState.START_MASK);
+    }
+
+    private class RequestCountsExpiryHandler implements ExpiryQueue.Handler {
+        @Override
+        public long startTickOf(String key) {
+            WindowData data = requestCounts.get(key);
+            return data == null ? Long.MIN_VALUE : data.getStartTime() - epochMillis;
+        }
+
+        @Override
+        public boolean removeIfStartedAt(String key, long startTick) {
+            WindowData data = requestCounts.get(key);
+            return data != null
+                    && data.getStartTime() - epochMillis == startTick
+                    && requestCounts.remove(key, data);
+        }
+    }
+
+    private class PackedCountsExpiryHandler implements ExpiryQueue.Handler {
+        @Override
+        public long startTickOf(String key) {
+            AtomicLong window = packedCounts.get(key);
+            if (window == null) {
+                return Long.MIN_VALUE;
+            }
+            long state = window.get();
+            return state == FixedWindowState.RETIRED ? Long.MIN_VALUE : unwrapStartTick(state, currentTick());
+        }
+
+        @Override
+        public boolean removeIfStartedAt(String key, long startTick) {
+            AtomicLong window = packedCounts.get(key);
+            if (window == null) {
+                return false;
+            }
+            while (true) {
+                long state = window.get();
+                if (state == FixedWindowState.RETIRED || unwrapStartTick(state, currentTick()) != startTick) {
+                    return false;
+                }
+                // Retire first so a concurrent increment cannot land on a window that is being unlinked
+                if (window.compareAndSet(state, FixedWindowState.RETIRED)) {
+                    packedCounts.remove(key, window);
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the background tasks, writing a last snapshot first if snapshots are enabled.
+     */
     public void shutdown() {
+        if (snapshotPath != null) {
+            writeSnapshot();
+        }
         executorService.shutdown();
         try {
             if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -59,6 +328,13 @@ public class RateLimiterFixedWindowInMemory {
         private int limit;
         private long windowSizeMillis;
         private ScheduledExecutorService executorService;
+        private FixedWindowInMemoryMode mode = FixedWindowInMemoryMode.COMPUTE;
+        private int maxKeys;
+        private RateLimiterMetrics metrics = RateLimiterMetrics.NOOP;
+        private String metricsName = METRICS_NAME;
+        private Clock clock = Clock.SYSTEM;
+        private Path snapshotPath;
+        private long snapshotIntervalMillis;
 
         public Builder withLimit(int limit) {
             this.limit = limit;
@@ -75,6 +351,58 @@ public class RateLimiterFixedWindowInMemory {
             return this;
         }
 
+        public Builder withMode(FixedWindowInMemoryMode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * Caps the number of keys held in memory. When exceeded, the keys whose windows started
+         * the earliest are evicted first. Defaults to 0, meaning unbounded.
+         * In {@link FixedWindowInMemoryMode#COMPACT} mode this is the preallocated capacity and is required.
+         */
+        public Builder withMaxKeys(int maxKeys) {
+            this.maxKeys = maxKeys;
+            return this;
+        }
+
+        /**
+         * Sets where decisions, key counts and cleanup passes are recorded. Defaults to {@link RateLimiterMetrics#NOOP}.
+         */
+        public Builder withMetrics(RateLimiterMetrics metrics) {
+            this.metrics = metrics != null ? metrics : RateLimiterMetrics.NOOP;
+            return this;
+        }
+
+        /**
+         * Sets the name measurements are recorded under, so several limiters sharing one metrics sink
+         * report separately. Defaults to {@link RateLimiterFixedWindowInMemory#METRICS_NAME}.
+         */
+        public Builder withMetricsName(String metricsName) {
+            this.metricsName = metricsName != null ? metricsName : METRICS_NAME;
+            return this;
+        }
+
+        /**
+         * Sets the time source for windows. Defaults to {@link Clock#SYSTEM}.
+         */
+        public Builder withClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Saves the live windows to the given file every {@code intervalMillis} and on {@link #shutdown()},
+         * and restores them from it after a restart, so a rolling deploy does not reset every key's quota.
+         * Windows that expired while the node was down are not restored. Not available in
+         * {@link FixedWindowInMemoryMode#COMPACT} mode, which does not keep the keys. Disabled by default.
+         */
+        public Builder withSnapshot(Path snapshotPath, long intervalMillis) {
+            this.snapshotPath = snapshotPath;
+            this.snapshotIntervalMillis = intervalMillis;
+            return this;
+        }
+
         public RateLimiterFixedWindowInMemory build() {
             if (limit <= 0) {
                 throw new IllegalArgumentException("Limit must be greater than 0");
@@ -82,6 +410,24 @@ public class RateLimiterFixedWindowInMemory {
             if (windowSizeMillis <= 0) {
                 throw new IllegalArgumentException("Window size must be greater than 0");
             }
+            if (maxKeys < 0) {
+                throw new IllegalArgumentException("Max keys must not be negative");
+            }
+            if (mode == null) {
+                throw new IllegalArgumentException("FixedWindowInMemoryMode must not be null");
+            }
+            if (clock == null) {
+                throw new IllegalArgumentException("Clock must not be null");
+            }
+            if (mode == FixedWindowInMemoryMode.COMPACT && maxKeys == 0) {
+                throw new IllegalArgumentException("COMPACT mode requires max keys to size the store");
+            }
+            if (snapshotPath != null && snapshotIntervalMillis <= 0) {
+                throw new IllegalArgumentException("Snapshot interval must be greater than 0");
+            }
+            if (snapshotPath != null && mode == FixedWindowInMemoryMode.COMPACT) {
+                throw new IllegalArgumentException("Snapshots are not available in COMPACT mode");
+            }
             return new RateLimiterFixedWindowInMemory(this);
         }
     }
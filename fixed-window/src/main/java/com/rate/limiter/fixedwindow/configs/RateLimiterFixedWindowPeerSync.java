@@ -0,0 +1,517 @@
+package com.rate.limiter.fixedwindow.configs;
+
+import com.ratelimiter.common.clock.Clock;
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Configuration class for fixed window rate limiting shared by a fleet of nodes without a central store.
+ * <p>
+ * Each node counts its own requests per key and window in a {@link PeerWindowCounter} and checks them
+ * against the limit together with the last counts it received from its peers. Every sync interval it sends
+ * the counts that changed to each peer over UDP (see {@link PeerSyncPacket}), and every
+ * {@code fullSyncEvery} intervals all of its counts of the current window, which makes good any lost packet.
+ * Windows are aligned to the epoch, as with the Redis limiter, so nodes with synchronized clocks agree on them.
+ * Counts a peer sends for the next window, because its clock runs slightly ahead, are held aside until this
+ * node's clock reaches that window; checks only ever count into the current window.
+ * <p>
+ * A check never waits for the network. The price is that the fleet may over-admit by what the other nodes
+ * admitted since their last packet arrived: about {@code (nodes - 1) * per-node rate * (sync interval +
+ * network delay)} per key and window.
+ */
+public class RateLimiterFixedWindowPeerSync {
+
+    public static final String METRICS_NAME = "fixed-window-peer-sync";
+
+    private final int limit;
+    private final long windowSizeMillis;
+    private final long nodeId;
+    private final long[] peerIds;
+    private final String[] peerHosts;
+    private final int[] peerPorts;
+    // Resolved again on every sync, and only ever touched by the sync task
+    private final InetSocketAddress[] peerAddresses;
+    private final int fullSyncEvery;
+    private final Clock clock;
+    private final Map<String, AtomicReference<PeerWindowCounter>> counters;
+    // Peers' counts for the window after the current one, promoted when a check opens that window
+    private final Map<String, PeerWindowCounter> nextWindowCounters;
+    private final RateLimiterMetrics metrics;
+    private final String metricsName;
+    private final ScheduledExecutorService executorService;
+    private final DatagramChannel channel;
+    private final Thread receiver;
+    // Only used by the sync task, which never runs concurrently with itself
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(PeerSyncPacket.MAX_BYTES);
+    private long syncs;
+
+    private RateLimiterFixedWindowPeerSync(Builder builder) {
+        this.limit = builder.limit;
+        this.windowSizeMillis = builder.windowSizeMillis;
+        this.nodeId = nodeId(builder.nodeAddress);
+        this.peerIds = new long[builder.peers.size()];
+        this.peerHosts = new String[builder.peers.size()];
+        this.peerPorts = new int[builder.peers.size()];
+        this.peerAddresses = new InetSocketAddress[builder.peers.size()];
+        for (int i = 0; i < peerIds.length; i++) {
+            peerIds[i] = nodeId(builder.peers.get(i));
+            // Left unresolved if the host cannot be looked up yet; the sync task keeps trying
+            peerAddresses[i] = socketAddress(builder.peers.get(i));
+            peerHosts[i] = peerAddresses[i].getHostString();
+            peerPorts[i] = peerAddresses[i].getPort();
+        }
+        this.fullSyncEvery = builder.fullSyncEvery;
+        this.clock = builder.clock;
+        this.counters = new ConcurrentHashMap<>();
+        this.nextWindowCounters = new ConcurrentHashMap<>();
+        this.metrics = builder.metrics;
+        this.metricsName = builder.metricsName;
+        try {
+            // Bound on every interface, so the configured address only has to name this node to its peers
+            this.channel = DatagramChannel.open()
+                    .bind(new InetSocketAddress(socketAddress(builder.nodeAddress).getPort()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not bind " + builder.nodeAddress + ": " + e.getMessage(), e);
+        }
+        this.receiver = new Thread(this::receive, "rate-limiter-peer-sync");
+        this.receiver.setDaemon(true);
+        this.receiver.start();
+        this.executorService = builder.executorService != null
+                ? builder.executorService
+                : Executors.newScheduledThreadPool(1);
+
+        this.executorService.scheduleAtFixedRate(
+                this::sync,
+                builder.syncIntervalMillis,
+                builder.syncIntervalMillis,
+                TimeUnit.MILLISECONDS
+        );
+        // Start a periodic cleanup task for counters of past windows
+        this.executorService.scheduleAtFixedRate(
+                this::cleanupExpiredCounters,
+                windowSizeMillis,
+                windowSizeMillis,
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public long getWindowSizeMillis() {
+        return windowSizeMillis;
+    }
+
+    public Map<String, AtomicReference<PeerWindowCounter>> getCounters() {
+        return counters;
+    }
+
+    public RateLimiterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The name this limiter's measurements are recorded under.
+     */
+    public String getMetricsName() {
+        return metricsName;
+    }
+
+    /**
+     * @return The index of the current window, {@code timeMillis / windowSizeMillis}.
+     */
+    public long currentWindow() {
+        return clock.currentTimeMillis() / windowSizeMillis;
+    }
+
+    /**
+     * Returns the key's counter for the window, replacing the counter of an earlier window and taking over
+     * the counts peers already sent for it. Counters are only opened for windows this node's clock has
+     * reached, so a later counter is only returned if the clock was set back.
+     */
+    public PeerWindowCounter counterFor(String key, long window) {
+        AtomicReference<PeerWindowCounter> ref = counters.get(key);
+        PeerWindowCounter promoted = null;
+        while (true) {
+            if (ref == null) {
+                ref = counters.computeIfAbsent(key, k -> new AtomicReference<>(openWindow(k, window)));
+            }
+            PeerWindowCounter counter = ref.get();
+            if (counter == PeerWindowCounter.RETIRED) {
+                // Help the cleanup task unlink the retired key before creating a fresh one
+                counters.remove(key, ref);
+                ref = null;
+                continue;
+            }
+            if (counter.getWindow() >= window) {
+                if (promoted != null && counter.getWindow() == window) {
+                    // Another check opened the window first; keep the peers' counts taken over by this one
+                    counter.mergeRemote(promoted);
+                }
+                return counter;
+            }
+            PeerWindowCounter next = promoted != null ? promoted : openWindow(key, window);
+            if (ref.compareAndSet(counter, next)) {
+                return next;
+            }
+            promoted = next;
+        }
+    }
+
+    /**
+     * @return A counter for the window, holding the counts peers sent for it while it was still ahead.
+     */
+    private PeerWindowCounter openWindow(String key, long window) {
+        PeerWindowCounter held = nextWindowCounters.isEmpty() ? null : nextWindowCounters.remove(key);
+        if (held != null && held.getWindow() == window) {
+            return held;
+        }
+        if (held != null && held.getWindow() > window) {
+            // Still ahead, e.g. after the clock was set back
+            nextWindowCounters.putIfAbsent(key, held);
+        }
+        return new PeerWindowCounter(window, peerIds.length);
+    }
+
+    /**
+     * Sends the counts that changed since the last sync, or all counts of the current window on every
+     * {@code fullSyncEvery}-th run. Counts of the previous window are still sent once they change, for
+     * peers whose clocks are slightly behind.
+     */
+    private void sync() {
+        if (peerAddresses.length == 0) {
+            return;
+        }
+        try {
+            resolvePeers();
+            syncCounts();
+        } catch (RuntimeException e) {
+            // An exception would cancel the scheduled task for good; the next sync starts over
+        }
+    }
+
+    private void syncCounts() {
+        long window = currentWindow();
+        boolean full = ++syncs % fullSyncEvery == 0;
+        PeerSyncPacket.writeHeader(sendBuffer, nodeId, windowSizeMillis, window);
+        int[] entries = new int[1];
+        counters.forEach((key, ref) -> {
+            PeerWindowCounter counter = ref.get();
+            // A counter ahead of the clock, after it was set back, is sent once the clock catches up
+            if (counter == PeerWindowCounter.RETIRED || counter.getWindow() < window - 1 || counter.getWindow() > window) {
+                return;
+            }
+            boolean changed = counter.takeChanged();
+            if (!changed && !(full && counter.getWindow() == window && counter.getLocalCount() > 0)) {
+                return;
+            }
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            int count = counter.getLocalCount();
+            if (!PeerSyncPacket.writeEntry(sendBuffer, keyBytes, window, counter.getWindow(), count)) {
+                if (entries[0] == 0) {
+                    // Longer than a whole packet; peers cannot be told about this key
+                    return;
+                }
+                send();
+                PeerSyncPacket.writeHeader(sendBuffer, nodeId, windowSizeMillis, window);
+                entries[0] = 0;
+                if (!PeerSyncPacket.writeEntry(sendBuffer, keyBytes, window, counter.getWindow(), count)) {
+                    return;
+                }
+            }
+            entries[0]++;
+        });
+        if (entries[0] > 0) {
+            send();
+        }
+    }
+
+    private void send() {
+        sendBuffer.flip();
+        for (InetSocketAddress peer : peerAddresses) {
+            if (peer.isUnresolved()) {
+                continue;
+            }
+            try {
+                channel.send(sendBuffer.duplicate(), peer);
+            } catch (IOException | RuntimeException e) {
+                // Best effort: the next full sync repeats every count this peer missed
+            }
+        }
+    }
+
+    /**
+     * Looks every peer's host up again, so a peer that could not be resolved at startup, or has moved to
+     * another address, is reached from the next sync on. Lookups go through the JVM's DNS cache, so most
+     * syncs do not touch the resolver; a failed lookup keeps the last known address.
+     */
+    private void resolvePeers() {
+        for (int i = 0; i < peerAddresses.length; i++) {
+            InetSocketAddress resolved = new InetSocketAddress(peerHosts[i], peerPorts[i]);
+            if (!resolved.isUnresolved() && !resolved.equals(peerAddresses[i])) {
+                peerAddresses[i] = resolved;
+            }
+        }
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocate(65_536);
+        while (channel.isOpen()) {
+            buffer.clear();
+            try {
+                channel.receive(buffer);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                // A datagram that could not be read; the next one may be fine
+                continue;
+            }
+            buffer.flip();
+            int peer = peerSlot(PeerSyncPacket.readNodeId(buffer));
+            if (peer < 0) {
+                // Not one of the configured peers
+                continue;
+            }
+            long window = currentWindow();
+            PeerSyncPacket.read(buffer, windowSizeMillis, (key, entryWindow, count) -> {
+                if (entryWindow < window || entryWindow > window + 1) {
+                    return;
+                }
+                if (entryWindow > window) {
+                    holdForNextWindow(key, entryWindow).merge(peer, count);
+                    return;
+                }
+                PeerWindowCounter counter = counterFor(key, entryWindow);
+                if (counter.getWindow() == entryWindow) {
+                    counter.merge(peer, count);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the counter holding peers' counts for the next window, replacing one left from an earlier
+     * window that no check promoted. Counts further ahead are dropped: they mean a clock more than a
+     * window off, and peers send them again once the windows line up.
+     */
+    private PeerWindowCounter holdForNextWindow(String key, long window) {
+        return nextWindowCounters.compute(key, (k, held) -> held == null || held.getWindow() < window
+                ? new PeerWindowCounter(window, peerIds.length)
+                : held);
+    }
+
+    private int peerSlot(long id) {
+        if (id == 0) {
+            return -1;
+        }
+        for (int i = 0; i < peerIds.length; i++) {
+            if (peerIds[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void cleanupExpiredCounters() {
+        long start = System.nanoTime();
+        long window = currentWindow();
+        int[] removed = new int[1];
+        counters.forEach((key, ref) -> {
+            PeerWindowCounter counter = ref.get();
+            // Keep the previous window until the next pass, so its last changes are still synced
+            if (counter == PeerWindowCounter.RETIRED || counter.getWindow() >= window - 1) {
+                return;
+            }
+            // Retire first so a concurrent check cannot count into a counter that is being unlinked
+            if (ref.compareAndSet(counter, PeerWindowCounter.RETIRED)) {
+                counters.remove(key, ref);
+                removed[0]++;
+            }
+        });
+        // Counts held for a window that has passed without a check on the key
+        nextWindowCounters.values().removeIf(counter -> counter.getWindow() < window);
+        if (metrics.isEnabled()) {
+            metrics.recordCleanup(metricsName, System.nanoTime() - start, removed[0]);
+            metrics.recordKeyCount(metricsName, counters.size());
+        }
+    }
+
+    /**
+     * Stops syncing and closes the socket; checks keep working on the local counts alone.
+     */
+    public void shutdown() {
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing left to do with a socket that fails to close
+        }
+    }
+
+    /**
+     * Identifies a node in packets by its configured address, so every node must list a peer under the
+     * same {@code host:port} that peer is configured with.
+     */
+    private static long nodeId(String address) {
+        long id = UUID.nameUUIDFromBytes(address.getBytes(StandardCharsets.UTF_8)).getMostSignificantBits();
+        // 0 marks an unreadable packet
+        return id != 0 ? id : 1;
+    }
+
+    private static InetSocketAddress socketAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0 || colon == address.length() - 1) {
+            throw new IllegalArgumentException("Address must be host:port, got " + address);
+        }
+        try {
+            return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Address must be host:port, got " + address, e);
+        }
+    }
+
+    public static class Builder {
+        private int limit;
+        private long windowSizeMillis;
+        private String nodeAddress;
+        private List<String> peers = List.of();
+        private long syncIntervalMillis = 100;
+        private int fullSyncEvery = 10;
+        private ScheduledExecutorService executorService;
+        private RateLimiterMetrics metrics = RateLimiterMetrics.NOOP;
+        private String metricsName = METRICS_NAME;
+        private Clock clock = Clock.SYSTEM;
+
+        /**
+         * Sets the number of requests allowed per key and window across the whole fleet.
+         */
+        public Builder withLimit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        public Builder withWindowSize(long windowSizeMillis) {
+            this.windowSizeMillis = windowSizeMillis;
+            return this;
+        }
+
+        /**
+         * Sets this node's {@code host:port}. The port is bound on every interface; the whole address
+         * identifies the node to its peers. Required.
+         */
+        public Builder withNodeAddress(String nodeAddress) {
+            this.nodeAddress = nodeAddress;
+            return this;
+        }
+
+        /**
+         * Sets the {@code host:port} of every other node, as each is configured with {@link #withNodeAddress}.
+         * Packets from other addresses are ignored. Defaults to none, which makes the limiter node-local.
+         */
+        public Builder withPeers(List<String> peers) {
+            this.peers = peers;
+            return this;
+        }
+
+        /**
+         * Sets how often changed counts are sent to the peers. Defaults to 100 milliseconds.
+         * Shorter intervals lower the over-admission at the cost of more packets.
+         */
+        public Builder withSyncInterval(long syncIntervalMillis) {
+            this.syncIntervalMillis = syncIntervalMillis;
+            return this;
+        }
+
+        /**
+         * Sets every how many syncs all counts of the current window are sent, not only the changed ones,
+         * bounding how long a lost packet goes unnoticed. Defaults to 10.
+         */
+        public Builder withFullSyncEvery(int fullSyncEvery) {
+            this.fullSyncEvery = fullSyncEvery;
+            return this;
+        }
+
+        public Builder withExecutorService(ScheduledExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * Sets where decisions, key counts and cleanup passes are recorded. Defaults to {@link RateLimiterMetrics#NOOP}.
+         */
+        public Builder withMetrics(RateLimiterMetrics metrics) {
+            this.metrics = metrics != null ? metrics : RateLimiterMetrics.NOOP;
+            return this;
+        }
+
+        /**
+         * Sets the name measurements are recorded under, so several limiters sharing one metrics sink
+         * report separately. Defaults to {@link RateLimiterFixedWindowPeerSync#METRICS_NAME}.
+         */
+        public Builder withMetricsName(String metricsName) {
+            this.metricsName = metricsName != null ? metricsName : METRICS_NAME;
+            return this;
+        }
+
+        /**
+         * Sets the time source for windows. Defaults to {@link Clock#SYSTEM}; nodes must keep their clocks
+         * synchronized, e.g. with NTP, for their windows to line up.
+         */
+        public Builder withClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public RateLimiterFixedWindowPeerSync build() {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("Limit must be greater than 0");
+            }
+            if (windowSizeMillis <= 0) {
+                throw new IllegalArgumentException("Window size must be greater than 0");
+            }
+            if (nodeAddress == null) {
+                throw new IllegalArgumentException("Node address is required");
+            }
+            socketAddress(nodeAddress);
+            if (peers == null) {
+                throw new IllegalArgumentException("Peers must not be null");
+            }
+            if (peers.contains(nodeAddress) || new HashSet<>(peers).size() != peers.size()) {
+                throw new IllegalArgumentException("Peers must be distinct and must not include this node");
+            }
+            if (syncIntervalMillis <= 0 || syncIntervalMillis > windowSizeMillis) {
+                throw new IllegalArgumentException("Sync interval must be greater than 0 and at most the window size");
+            }
+            if (fullSyncEvery <= 0) {
+                throw new IllegalArgumentException("Full sync interval must be greater than 0");
+            }
+            if (clock == null) {
+                throw new IllegalArgumentException("Clock must not be null");
+            }
+            return new RateLimiterFixedWindowPeerSync(this);
+        }
+    }
+}
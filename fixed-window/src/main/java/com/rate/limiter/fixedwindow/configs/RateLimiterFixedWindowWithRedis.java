@@ -1,14 +1,56 @@
 package com.rate.limiter.fixedwindow.configs;
 
+import com.ratelimiter.common.models.RateLimitPolicy;
 import com.ratelimiter.common.models.RedisClient;
+import com.ratelimiter.common.models.RedisKeyCodec;
+import com.ratelimiter.common.models.RedisScript;
 import com.ratelimiter.common.constants.RedisServerMode;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Response;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Configuration class for fixed window rate limiting using Redis.
  */
 public class RateLimiterFixedWindowWithRedis {
+
+    /**
+     * KEYS[1] = window counter; ARGV = permits, limit, window size (s).
+     * Counts the permits only if all of them fit; returns 1 if they were counted, 0 otherwise.
+     */
+    private static final RedisScript RESERVE_ALL_SCRIPT = new RedisScript(
+            "local permits = tonumber(ARGV[1])\n" +
+            "if tonumber(redis.call('GET', KEYS[1]) or '0') + permits > tonumber(ARGV[2]) then\n" +
+            "  return 0\n" +
+            "end\n" +
+            "if redis.call('INCRBY', KEYS[1], permits) == permits then\n" +
+            "  redis.call('EXPIRE', KEYS[1], ARGV[3])\n" +
+            "end\n" +
+            "return 1");
+
+    /**
+     * KEYS = one window counter per limit; ARGV = cost, then the limit and window size (ms) of each key.
+     * Counts the cost in every window only if it fits in all of them; returns 0 if counted,
+     * otherwise the 1-based position of the first limit that is exceeded.
+     */
+    private static final RedisScript RESERVE_ALL_WINDOWS_SCRIPT = new RedisScript(
+            "local cost = tonumber(ARGV[1])\n" +
+            "for i = 1, #KEYS do\n" +
+            "  if tonumber(redis.call('GET', KEYS[i]) or '0') + cost > tonumber(ARGV[2 * i]) then\n" +
+            "    return i\n" +
+            "  end\n" +
+            "end\n" +
+            "for i = 1, #KEYS do\n" +
+            "  if redis.call('INCRBY', KEYS[i], cost) == cost then\n" +
+            "    redis.call('PEXPIRE', KEYS[i], ARGV[2 * i + 1])\n" +
+            "  end\n" +
+            "end\n" +
+            "return 0");
+
     private final RedisClient redisClient;
     private final int windowSize; // in seconds
     private final int limit;
@@ -17,6 +59,7 @@ public class RateLimiterFixedWindowWithRedis {
         this.redisClient = redisClient;
         this.windowSize = windowSize;
         this.limit = limit;
+        redisClient.preload(RESERVE_ALL_SCRIPT, RESERVE_ALL_WINDOWS_SCRIPT);
     }
 
     public int getWindowSize() {
@@ -27,13 +70,17 @@ public class RateLimiterFixedWindowWithRedis {
         return limit;
     }
 
+    public RedisClient getRedisClient() {
+        return redisClient;
+    }
+
     /**
      * Increments the request count for the given Redis key.
      *
-     * @param redisKey The key associated with the request.
+     * @param redisKey The key associated with the request, see {@link RedisKeyCodec}.
      * @return The updated request count.
      */
-    public long incrementKey(String redisKey) {
+    public long incrementKey(byte[] redisKey) {
         try {
             if (redisClient.getRedisServerMode() == RedisServerMode.CLUSTER) {
                 return handleClusterIncrement(redisKey);
@@ -45,21 +92,163 @@ public class RateLimiterFixedWindowWithRedis {
         }
     }
 
-    private long handleClusterIncrement(String redisKey) {
+    /**
+     * Increments the request counts for several distinct Redis keys in one pipeline.
+     * Expiry for newly created keys is set in a second pipeline, only when such keys exist.
+     *
+     * @param redisKeys The distinct keys associated with the request.
+     * @return The updated request count of each key, in the order given.
+     */
+    public long[] incrementKeys(List<byte[]> redisKeys) {
+        try {
+            List<Response<Long>> responses = new ArrayList<>(redisKeys.size());
+            redisClient.pipelined(pipeline -> redisKeys.forEach(redisKey -> responses.add(pipeline.incr(redisKey))));
+
+            long[] counts = new long[responses.size()];
+            List<byte[]> newKeys = new ArrayList<>();
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = responses.get(i).get();
+                if (counts[i] == 1) {
+                    newKeys.add(redisKeys.get(i));
+                }
+            }
+            if (!newKeys.isEmpty()) {
+                redisClient.pipelined(pipeline -> newKeys.forEach(redisKey -> pipeline.expire(redisKey, windowSize)));
+            }
+            return counts;
+        } catch (Exception e) {
+            throw new RuntimeException("Error in rate limiter: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reserves a block of permits for the given Redis key with a single INCRBY.
+     *
+     * @param redisKey The key associated with the request.
+     * @param permits  The number of permits to reserve.
+     * @return The number of permits granted, between 0 and {@code permits}.
+     */
+    public long reservePermits(byte[] redisKey, int permits) {
+        return reservePermits(redisKey, permits, limit);
+    }
+
+    /**
+     * Reserves a block of permits for the given Redis key against a limit other than the configured one,
+     * such as the share of a sharded key.
+     *
+     * @param redisKey The key associated with the request.
+     * @param permits  The number of permits to reserve.
+     * @param limit    The limit of this Redis key.
+     * @return The number of permits granted, between 0 and {@code permits}.
+     */
+    public long reservePermits(byte[] redisKey, int permits, int limit) {
+        try {
+            long count;
+            if (redisClient.getRedisServerMode() == RedisServerMode.CLUSTER) {
+                JedisCluster cluster = redisClient.getJedisClusterClient();
+                long start = redisClient.startTimer();
+                count = cluster.incrBy(redisKey, permits);
+                if (count == permits) {
+                    cluster.expire(redisKey, windowSize); // Set expiry for new keys
+                }
+                redisClient.recordRedisCommand(start);
+            } else {
+                try (Jedis jedis = redisClient.getResource()) {
+                    long start = redisClient.startTimer();
+                    count = jedis.incrBy(redisKey, permits);
+                    if (count == permits) {
+                        jedis.expire(redisKey, windowSize); // Set expiry for new keys
+                    }
+                    redisClient.recordRedisCommand(start);
+                }
+            }
+            return Math.max(0, Math.min(permits, limit - (count - permits)));
+        } catch (Exception e) {
+            throw new RuntimeException("Error in rate limiter: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reserves the given number of permits for the Redis key only if all of them fit, in one script call.
+     * Unlike {@link #reservePermits(byte[], int)}, a denied request leaves the count untouched.
+     *
+     * @param redisKey The key associated with the request.
+     * @param permits  The number of permits to reserve.
+     * @return true if the permits were reserved, false otherwise.
+     */
+    public boolean tryReserveAll(byte[] redisKey, int permits) {
+        try {
+            Object result = RESERVE_ALL_SCRIPT.eval(redisClient, List.of(redisKey),
+                    List.of(RedisKeyCodec.arg(permits), RedisKeyCodec.arg(limit), RedisKeyCodec.arg(windowSize)));
+            return Long.valueOf(1L).equals(result);
+        } catch (Exception e) {
+            throw new RuntimeException("Error in rate limiter: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Counts the cost in one window counter per limit of the policy, only if it fits in all of them,
+     * in one script call. In cluster mode the keys must share a hash slot.
+     *
+     * @param redisKeys The window counter of each limit, in the policy's order.
+     * @param cost      The cost of the request.
+     * @param policy    The limits to enforce.
+     * @return true if the cost was counted, false otherwise.
+     */
+    public boolean tryReserveAll(List<byte[]> redisKeys, int cost, RateLimitPolicy policy) {
+        try {
+            List<byte[]> args = new ArrayList<>(1 + 2 * redisKeys.size());
+            args.add(RedisKeyCodec.arg(cost));
+            for (RateLimitPolicy.Limit policyLimit : policy.getLimits()) {
+                args.add(RedisKeyCodec.arg(policyLimit.getLimit()));
+                args.add(RedisKeyCodec.arg(policyLimit.getWindowSizeMillis()));
+            }
+            return Long.valueOf(0L).equals(RESERVE_ALL_WINDOWS_SCRIPT.eval(redisClient, redisKeys, args));
+        } catch (Exception e) {
+            throw new RuntimeException("Error in rate limiter: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the current counts of several Redis keys in one pipeline.
+     *
+     * @param redisKeys The keys to read.
+     * @return The count of each key, 0 for missing keys, in the order given.
+     */
+    public long[] getCounts(List<byte[]> redisKeys) {
+        try {
+            List<Response<byte[]>> responses = new ArrayList<>(redisKeys.size());
+            redisClient.pipelined(pipeline -> redisKeys.forEach(redisKey -> responses.add(pipeline.get(redisKey))));
+            long[] counts = new long[responses.size()];
+            for (int i = 0; i < counts.length; i++) {
+                byte[] count = responses.get(i).get();
+                counts[i] = count != null ? Long.parseLong(new String(count, StandardCharsets.US_ASCII)) : 0;
+            }
+            return counts;
+        } catch (Exception e) {
+            throw new RuntimeException("Error in rate limiter: " + e.getMessage(), e);
+        }
+    }
+
+    private long handleClusterIncrement(byte[] redisKey) {
         JedisCluster cluster = redisClient.getJedisClusterClient();
+        long start = redisClient.startTimer();
         long count = cluster.incr(redisKey);
         if (count == 1) {
             cluster.expire(redisKey, windowSize); // Set expiry for new keys
         }
+        redisClient.recordRedisCommand(start);
         return count;
     }
 
-    private long handleStandaloneIncrement(String redisKey) {
-        try (Jedis jedis = redisClient.getJedisPool().getResource()) {
+    private long handleStandaloneIncrement(byte[] redisKey) {
+        try (Jedis jedis = redisClient.getResource()) {
+            long start = redisClient.startTimer();
             long count = jedis.incr(redisKey);
             if (count == 1) {
                 jedis.expire(redisKey, windowSize); // Set expiry for new keys
             }
+            redisClient.recordRedisCommand(start);
             return count;
         }
     }
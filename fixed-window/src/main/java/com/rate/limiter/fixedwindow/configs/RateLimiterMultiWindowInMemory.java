@@ -0,0 +1,213 @@
+package com.rate.limiter.fixedwindow.configs;
+
+import com.ratelimiter.common.clock.Clock;
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
+import com.ratelimiter.common.models.RateLimitPolicy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Configuration class for in-memory fixed window rate limiting against several limits at once,
+ * see {@link RateLimitPolicy}.
+ * <p>
+ * Each key holds one immutable {@code long[]} with a packed window state (see {@link FixedWindowState})
+ * per limit. A check reads the array, verifies the cost fits in every window and swaps in an updated
+ * copy with one compare-and-set, so all limits change together or not at all, without locks.
+ * Denied checks write nothing. A scheduled task removes keys whose windows have all expired.
+ */
+public class RateLimiterMultiWindowInMemory {
+
+    public static final String METRICS_NAME = "multi-window-in-memory";
+
+    /**
+     * Marker for a key removed by cleanup; callers must look the key up again.
+     */
+    public static final long[] RETIRED = new long[0];
+
+    private final RateLimitPolicy policy;
+    private final int[] limits;
+    private final long[] windowSizesMillis;
+    private final Clock clock;
+    private final long epochMillis;
+    private final Map<String, AtomicReference<long[]>> windows;
+    private final RateLimiterMetrics metrics;
+    private final String metricsName;
+    private final ScheduledExecutorService executorService;
+
+    private RateLimiterMultiWindowInMemory(Builder builder) {
+        this.policy = builder.policy;
+        List<RateLimitPolicy.Limit> policyLimits = policy.getLimits();
+        this.limits = new int[policyLimits.size()];
+        this.windowSizesMillis = new long[policyLimits.size()];
+        long shortestWindowMillis = Long.MAX_VALUE;
+        for (int i = 0; i < limits.length; i++) {
+            limits[i] = policyLimits.get(i).getLimit();
+            windowSizesMillis[i] = policyLimits.get(i).getWindowSizeMillis();
+            shortestWindowMillis = Math.min(shortestWindowMillis, windowSizesMillis[i]);
+        }
+        this.clock = builder.clock;
+        this.epochMillis = clock.currentTimeMillis();
+        this.windows = new ConcurrentHashMap<>();
+        this.metrics = builder.metrics;
+        this.metricsName = builder.metricsName;
+        this.executorService = builder.executorService != null
+                ? builder.executorService
+                : Executors.newScheduledThreadPool(1);
+
+        // Start a periodic cleanup task for keys whose windows have all expired
+        this.executorService.scheduleAtFixedRate(
+                this::cleanupExpiredKeys,
+                shortestWindowMillis,
+                shortestWindowMillis,
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    public RateLimitPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return The limit of each window, in the policy's order.
+     */
+    public int[] getLimits() {
+        return limits;
+    }
+
+    /**
+     * @return The size of each window, in the policy's order.
+     */
+    public long[] getWindowSizesMillis() {
+        return windowSizesMillis;
+    }
+
+    public Map<String, AtomicReference<long[]>> getWindows() {
+        return windows;
+    }
+
+    public RateLimiterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The name this limiter's measurements are recorded under.
+     */
+    public String getMetricsName() {
+        return metricsName;
+    }
+
+    /**
+     * @return Milliseconds elapsed since this limiter was created, which window starts are measured in.
+     */
+    public long currentTick() {
+        return clock.currentTimeMillis() - epochMillis;
+    }
+
+    private void cleanupExpiredKeys() {
+        long start = System.nanoTime();
+        long now = currentTick();
+        int[] removed = new int[1];
+        windows.forEach((key, window) -> {
+            long[] states = window.get();
+            if (states == RETIRED || !allExpired(states, now)) {
+                return;
+            }
+            // Retire first so a concurrent check cannot count into windows that are being unlinked
+            if (window.compareAndSet(states, RETIRED)) {
+                windows.remove(key, window);
+                removed[0]++;
+            }
+        });
+        if (metrics.isEnabled()) {
+            metrics.recordCleanup(metricsName, System.nanoTime() - start, removed[0]);
+            metrics.recordKeyCount(metricsName, windows.size());
+        }
+    }
+
+    private boolean allExpired(long[] states, long now) {
+        for (int i = 0; i < states.length; i++) {
+            if (!FixedWindowState.isExpired(states[i], now, windowSizesMillis[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void shutdown() {
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+        }
+    }
+
+    public static class Builder {
+        private RateLimitPolicy policy;
+        private ScheduledExecutorService executorService;
+        private RateLimiterMetrics metrics = RateLimiterMetrics.NOOP;
+        private String metricsName = METRICS_NAME;
+        private Clock clock = Clock.SYSTEM;
+
+        /**
+         * Sets the limits every key is checked against. Required.
+         */
+        public Builder withPolicy(RateLimitPolicy policy) {
+            this.policy = policy;
+            return this;
+        }
+
+        public Builder withExecutorService(ScheduledExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * Sets where decisions, key counts and cleanup passes are recorded. Defaults to {@link RateLimiterMetrics#NOOP}.
+         */
+        public Builder withMetrics(RateLimiterMetrics metrics) {
+            this.metrics = metrics != null ? metrics : RateLimiterMetrics.NOOP;
+            return this;
+        }
+
+        /**
+         * Sets the name measurements are recorded under, so several limiters sharing one metrics sink
+         * report separately. Defaults to {@link RateLimiterMultiWindowInMemory#METRICS_NAME}.
+         */
+        public Builder withMetricsName(String metricsName) {
+            this.metricsName = metricsName != null ? metricsName : METRICS_NAME;
+            return this;
+        }
+
+        /**
+         * Sets the time source for windows. Defaults to {@link Clock#SYSTEM}.
+         */
+        public Builder withClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public RateLimiterMultiWindowInMemory build() {
+            if (policy == null) {
+                throw new IllegalArgumentException("RateLimitPolicy is required");
+            }
+            for (RateLimitPolicy.Limit limit : policy.getLimits()) {
+                if (limit.getWindowSizeMillis() > FixedWindowState.START_MASK) {
+                    throw new IllegalArgumentException("Window size must fit in the packed window start");
+                }
+            }
+            if (clock == null) {
+                throw new IllegalArgumentException("Clock must not be null");
+            }
+            return new RateLimiterMultiWindowInMemory(this);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.rate.limiter.fixedwindow.constants;
+
+/**
+ * How per-key window state is kept by the in-memory fixed window limiter.
+ */
+public enum FixedWindowInMemoryMode {
+    /**
+     * Immutable {@code WindowData} replaced through {@code ConcurrentHashMap.compute}.
+     */
+    COMPUTE,
+    /**
+     * Window start and count packed into one mutable {@code AtomicLong} per key and updated by CAS.
+     * Once a key exists, a check takes no lock and allocates nothing.
+     */
+    ATOMIC,
+    /**
+     * Key fingerprints and packed window state in preallocated primitive arrays sized by {@code maxKeys},
+     * see {@code FingerprintWindowStore}. Memory is fixed regardless of key count and no check allocates;
+     * when the store is full, clock-style eviction makes room.
+     */
+    COMPACT
+}
@@ -0,0 +1,62 @@
+package com.rate.limiter.fixedwindow.service.inmemory;
+
+import com.rate.limiter.fixedwindow.configs.CountMinSketch;
+import com.rate.limiter.fixedwindow.configs.FingerprintWindowStore;
+import com.rate.limiter.fixedwindow.configs.HeavyHitters;
+import com.rate.limiter.fixedwindow.configs.RateLimiterCountMinSketchInMemory;
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
+
+/**
+ * Approximate rate limiting with count-min sketches, see {@link RateLimiterCountMinSketchInMemory}.
+ * <p>
+ * A check reads {@code depth} counters from the current and previous sketches and, if allowed, increments
+ * the current ones. It takes no lock and allocates nothing, whatever the number of keys, unless it
+ * reaches a window before the background rotation has prepared its sketch.
+ */
+public class RateLimiterCountMinSketchInMemoryImpl {
+
+    private final RateLimiterCountMinSketchInMemory countMinSketchInMemory;
+
+    public RateLimiterCountMinSketchInMemoryImpl(RateLimiterCountMinSketchInMemory countMinSketchInMemory) {
+        this.countMinSketchInMemory = countMinSketchInMemory;
+    }
+
+    public boolean isAllowed(String key) {
+        RateLimiterMetrics metrics = countMinSketchInMemory.getMetrics();
+        if (!metrics.isEnabled()) {
+            return evaluate(key);
+        }
+        long start = System.nanoTime();
+        boolean allowed = evaluate(key);
+        metrics.recordDecision(countMinSketchInMemory.getMetricsName(), allowed, System.nanoTime() - start);
+        return allowed;
+    }
+
+    private boolean evaluate(String key) {
+        long windowSizeMillis = countMinSketchInMemory.getWindowSizeMillis();
+        long now = countMinSketchInMemory.currentTick();
+        long window = now / windowSizeMillis;
+        long fingerprint = FingerprintWindowStore.fingerprint(key);
+
+        CountMinSketch current = countMinSketchInMemory.sketchFor(window);
+        CountMinSketch previous = countMinSketchInMemory.previousSketch(window);
+        long currentCount = current.estimate(fingerprint);
+        long previousCount = previous != null ? previous.estimate(fingerprint) : 0;
+        long elapsed = now - window * windowSizeMillis;
+        int limit = countMinSketchInMemory.getLimit();
+
+        // currentCount + previousCount * (windowSizeMillis - elapsed) / windowSizeMillis < limit, without dividing
+        HeavyHitters heavyHitters = countMinSketchInMemory.getHeavyHitters();
+        if (currentCount * windowSizeMillis + previousCount * (windowSizeMillis - elapsed) >= limit * windowSizeMillis) {
+            if (heavyHitters != null) {
+                heavyHitters.offer(key, currentCount, window);
+            }
+            return false;
+        }
+        current.increment(fingerprint);
+        if (heavyHitters != null) {
+            heavyHitters.count(key, window);
+        }
+        return true;
+    }
+}
@@ -1,34 +1,219 @@
 package com.rate.limiter.fixedwindow.service.inmemory;
 
+import com.rate.limiter.fixedwindow.configs.FixedWindowState;
 import com.rate.limiter.fixedwindow.configs.RateLimiterFixedWindowInMemory;
+import com.rate.limiter.fixedwindow.constants.FixedWindowInMemoryMode;
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
+import com.ratelimiter.common.waiting.PermitWaiters;
 
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class RateLimiterFixedWindowInMemoryImpl {
 
     private final RateLimiterFixedWindowInMemory fixedWindowInMemory;
+    private final PermitWaiters waiters = new PermitWaiters();
 
     public RateLimiterFixedWindowInMemoryImpl(RateLimiterFixedWindowInMemory fixedWindowInMemory) {
         this.fixedWindowInMemory = fixedWindowInMemory;
     }
 
     public boolean isAllowed(String key) {
-        return fixedWindowInMemory.getRequestCounts().compute(key, (k, data) -> handleRequest(data)).getCount() <= fixedWindowInMemory.getLimit();
+        RateLimiterMetrics metrics = fixedWindowInMemory.getMetrics();
+        if (!metrics.isEnabled()) {
+            return evaluate(key);
+        }
+        long start = System.nanoTime();
+        boolean allowed = evaluate(key);
+        metrics.recordDecision(fixedWindowInMemory.getMetricsName(), allowed, System.nanoTime() - start);
+        return allowed;
+    }
+
+    /**
+     * Checks if a request with the given cost is allowed, counting the whole cost or nothing.
+     *
+     * @param key  The unique identifier for the request.
+     * @param cost The units of the limit the request uses.
+     * @return true if the request is allowed, false otherwise (always false if the cost exceeds the limit).
+     */
+    public boolean isAllowed(String key, int cost) {
+        if (cost <= 0) {
+            throw new IllegalArgumentException("Cost must be greater than 0");
+        }
+        return cost <= fixedWindowInMemory.getLimit() && tryAcquire(key, cost) == 0;
+    }
+
+    /**
+     * Takes the given number of permits in the key's current window if they all fit, without waiting.
+     *
+     * @param key     The unique identifier for the request.
+     * @param permits The number of permits, at most the limit.
+     * @return 0 if the permits were taken, otherwise the milliseconds until the window resets.
+     */
+    public long tryAcquire(String key, int permits) {
+        checkPermits(permits);
+        RateLimiterMetrics metrics = fixedWindowInMemory.getMetrics();
+        if (!metrics.isEnabled()) {
+            return reserve(key, permits);
+        }
+        long start = System.nanoTime();
+        long wait = reserve(key, permits);
+        metrics.recordDecision(fixedWindowInMemory.getMetricsName(), wait == 0, System.nanoTime() - start);
+        return wait;
+    }
+
+    /**
+     * Takes the given number of permits, waiting for the window to reset if needed. Callers waiting on the
+     * same key are served in FIFO order, and only the first of them checks the window, when it resets.
+     *
+     * @param key     The unique identifier for the request.
+     * @param permits The number of permits, at most the limit.
+     * @param timeout The longest time to wait.
+     * @return true if the permits were taken, false if they would not be available within the timeout.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean acquire(String key, int permits, Duration timeout) throws InterruptedException {
+        checkPermits(permits);
+        return waiters.acquire(key, timeout, () -> tryAcquire(key, permits));
     }
 
-    private RateLimiterFixedWindowInMemory.WindowData handleRequest(RateLimiterFixedWindowInMemory.WindowData data) {
-        long currentTime = System.currentTimeMillis();
+    private void checkPermits(int permits) {
+        if (permits <= 0 || permits > fixedWindowInMemory.getLimit()) {
+            throw new IllegalArgumentException("Permits must be between 1 and the limit");
+        }
+    }
+
+    private boolean evaluate(String key) {
+        if (fixedWindowInMemory.getMode() != FixedWindowInMemoryMode.COMPUTE) {
+            return reserve(key, 1) == 0;
+        }
+        boolean allowed = fixedWindowInMemory.getRequestCounts().compute(key, (k, data) -> handleRequest(k, data != null ? data : restore(k))).getCount() <= fixedWindowInMemory.getLimit();
+        fixedWindowInMemory.enforceMaxKeys();
+        return allowed;
+    }
+
+    private RateLimiterFixedWindowInMemory.WindowData handleRequest(String key, RateLimiterFixedWindowInMemory.WindowData data) {
+        long currentTime = fixedWindowInMemory.currentTimeMillis();
         long windowSizeMillis = fixedWindowInMemory.getWindowSizeMillis();
 
         if (data == null || currentTime - data.getStartTime() >= windowSizeMillis) {
             // Reset window
-            return new RateLimiterFixedWindowInMemory.WindowData(1, currentTime);
+            RateLimiterFixedWindowInMemory.WindowData window = new RateLimiterFixedWindowInMemory.WindowData(1, currentTime);
+            fixedWindowInMemory.trackWindowStart(key, window);
+            return window;
         } else if (data.getCount() < fixedWindowInMemory.getLimit()) {
             // Increment count
             return new RateLimiterFixedWindowInMemory.WindowData(data.getCount() + 1, data.getStartTime());
+        } else if (data.getCount() == fixedWindowInMemory.getLimit()) {
+            // First denied request: step past the limit once so the caller sees the denial
+            return new RateLimiterFixedWindowInMemory.WindowData(data.getCount() + 1, data.getStartTime());
         } else {
             // Return unchanged data (denied request)
             return data;
         }
     }
+
+    /**
+     * @return 0 if the permits were taken, otherwise the milliseconds until the window resets.
+     */
+    private long reserve(String key, int permits) {
+        if (fixedWindowInMemory.getMode() == FixedWindowInMemoryMode.ATOMIC) {
+            return reserveAtomic(key, permits);
+        }
+        if (fixedWindowInMemory.getMode() == FixedWindowInMemoryMode.COMPACT) {
+            return fixedWindowInMemory.getCompactStore().tryAcquire(key, fixedWindowInMemory.currentTick(),
+                    fixedWindowInMemory.getWindowSizeMillis(), fixedWindowInMemory.getLimit(), permits);
+        }
+
+        long[] wait = new long[1];
+        fixedWindowInMemory.getRequestCounts().compute(key, (k, current) -> {
+            RateLimiterFixedWindowInMemory.WindowData data = current != null ? current : restore(k);
+            long currentTime = fixedWindowInMemory.currentTimeMillis();
+            long windowSizeMillis = fixedWindowInMemory.getWindowSizeMillis();
+            if (data == null || currentTime - data.getStartTime() >= windowSizeMillis) {
+                RateLimiterFixedWindowInMemory.WindowData window = new RateLimiterFixedWindowInMemory.WindowData(permits, currentTime);
+                fixedWindowInMemory.trackWindowStart(k, window);
+                return window;
+            }
+            if (data.getCount() + permits <= fixedWindowInMemory.getLimit()) {
+                return new RateLimiterFixedWindowInMemory.WindowData(data.getCount() + permits, data.getStartTime());
+            }
+            wait[0] = Math.max(1, data.getStartTime() + windowSizeMillis - currentTime);
+            return data;
+        });
+        fixedWindowInMemory.enforceMaxKeys();
+        return wait[0];
+    }
+
+    /**
+     * @return The key's window from the startup snapshot, registered for expiry, or null if there is none.
+     */
+    private RateLimiterFixedWindowInMemory.WindowData restore(String key) {
+        RateLimiterFixedWindowInMemory.WindowData restored = fixedWindowInMemory.restoreWindow(key);
+        if (restored != null) {
+            fixedWindowInMemory.trackWindowStart(key, restored);
+        }
+        return restored;
+    }
+
+    private long reserveAtomic(String key, int permits) {
+        long windowSizeMillis = fixedWindowInMemory.getWindowSizeMillis();
+        int limit = fixedWindowInMemory.getLimit();
+
+        AtomicLong window = windowFor(key);
+        while (true) {
+            long state = window.get();
+            if (state == FixedWindowState.RETIRED) {
+                window = windowFor(key);
+                continue;
+            }
+
+            long currentTime = fixedWindowInMemory.currentTick();
+            long next;
+            boolean reset = FixedWindowState.isExpired(state, currentTime, windowSizeMillis);
+            if (reset) {
+                // Reset window
+                next = FixedWindowState.pack(currentTime, permits);
+            } else if (FixedWindowState.count(state) + permits <= limit) {
+                // Increment count
+                next = state + permits;
+            } else {
+                // Denied request, nothing to write
+                return FixedWindowState.millisUntilExpiry(state, currentTime, windowSizeMillis);
+            }
+
+            if (window.compareAndSet(state, next)) {
+                if (reset) {
+                    fixedWindowInMemory.trackWindowStart(key, currentTime);
+                }
+                return 0;
+            }
+        }
+    }
+
+    private AtomicLong windowFor(String key) {
+        Map<String, AtomicLong> packedCounts = fixedWindowInMemory.getPackedCounts();
+        AtomicLong window = packedCounts.get(key);
+        if (window != null && window.get() != FixedWindowState.RETIRED) {
+            return window;
+        }
+        if (window != null) {
+            // Help the cleanup task unlink the retired window before creating a fresh one
+            packedCounts.remove(key, window);
+        }
+        window = packedCounts.computeIfAbsent(key, k -> {
+            RateLimiterFixedWindowInMemory.WindowData restored = fixedWindowInMemory.restoreWindow(k);
+            if (restored != null) {
+                long startTick = fixedWindowInMemory.tickOf(restored.getStartTime());
+                fixedWindowInMemory.trackWindowStart(k, startTick);
+                return new AtomicLong(FixedWindowState.pack(startTick, restored.getCount()));
+            }
+            long currentTime = fixedWindowInMemory.currentTick();
+            fixedWindowInMemory.trackWindowStart(k, currentTime);
+            return new AtomicLong(FixedWindowState.pack(currentTime, 0));
+        });
+        fixedWindowInMemory.enforceMaxKeys();
+        return window;
+    }
 }
@@ -0,0 +1,57 @@
+package com.rate.limiter.fixedwindow.service.inmemory;
+
+import com.rate.limiter.fixedwindow.configs.PeerWindowCounter;
+import com.rate.limiter.fixedwindow.configs.RateLimiterFixedWindowPeerSync;
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
+
+/**
+ * Implementation of fixed window rate limiting across peers, see {@link RateLimiterFixedWindowPeerSync}.
+ * <p>
+ * A check reads the key's counter and compare-and-sets this node's count; it takes no lock and never
+ * touches the network. It allocates only when a key enters a new window.
+ */
+public class RateLimiterFixedWindowPeerSyncImpl {
+
+    private final RateLimiterFixedWindowPeerSync peerSync;
+
+    public RateLimiterFixedWindowPeerSyncImpl(RateLimiterFixedWindowPeerSync peerSync) {
+        this.peerSync = peerSync;
+    }
+
+    /**
+     * Checks if a request is allowed for a given key, counting the requests of every node as last synced.
+     *
+     * @param key The unique identifier for the request.
+     * @return true if the request is allowed, false otherwise.
+     */
+    public boolean isAllowed(String key) {
+        return isAllowed(key, 1);
+    }
+
+    /**
+     * Checks if a request with the given cost is allowed, counting the whole cost or nothing.
+     *
+     * @param key  The unique identifier for the request.
+     * @param cost The units of the limit the request uses.
+     * @return true if the request is allowed, false otherwise (always false if the cost exceeds the limit).
+     */
+    public boolean isAllowed(String key, int cost) {
+        if (cost <= 0) {
+            throw new IllegalArgumentException("Cost must be greater than 0");
+        }
+        RateLimiterMetrics metrics = peerSync.getMetrics();
+        if (!metrics.isEnabled()) {
+            return evaluate(key, cost);
+        }
+        long start = System.nanoTime();
+        boolean allowed = evaluate(key, cost);
+        metrics.recordDecision(peerSync.getMetricsName(), allowed, System.nanoTime() - start);
+        return allowed;
+    }
+
+    private boolean evaluate(String key, int cost) {
+        // Cleanup only retires counters of past windows, so the current one is never lost under a check
+        PeerWindowCounter counter = peerSync.counterFor(key, peerSync.currentWindow());
+        return counter.tryAdd(cost, peerSync.getLimit());
+    }
+}
@@ -0,0 +1,110 @@
+package com.rate.limiter.fixedwindow.service.inmemory;
+
+import com.rate.limiter.fixedwindow.configs.FixedWindowState;
+import com.rate.limiter.fixedwindow.configs.RateLimiterMultiWindowInMemory;
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Implementation of in-memory fixed window rate limiting against every limit of a policy in one pass.
+ * <p>
+ * A check is one read, one loop over the windows and one compare-and-set; it takes no lock,
+ * and a denied check allocates nothing.
+ */
+public class RateLimiterMultiWindowInMemoryImpl {
+
+    private final RateLimiterMultiWindowInMemory multiWindowInMemory;
+
+    public RateLimiterMultiWindowInMemoryImpl(RateLimiterMultiWindowInMemory multiWindowInMemory) {
+        this.multiWindowInMemory = multiWindowInMemory;
+    }
+
+    /**
+     * Checks if a request is allowed by every limit of the policy.
+     *
+     * @param key The unique identifier for the request.
+     * @return true if the request is allowed, false otherwise.
+     */
+    public boolean isAllowed(String key) {
+        return isAllowed(key, 1);
+    }
+
+    /**
+     * Checks if a request with the given cost is allowed by every limit of the policy. The cost is counted
+     * in all windows or, if any limit would be exceeded, in none of them.
+     *
+     * @param key  The unique identifier for the request.
+     * @param cost The units of each limit the request uses.
+     * @return true if the request is allowed, false otherwise.
+     */
+    public boolean isAllowed(String key, int cost) {
+        if (cost <= 0) {
+            throw new IllegalArgumentException("Cost must be greater than 0");
+        }
+        RateLimiterMetrics metrics = multiWindowInMemory.getMetrics();
+        if (!metrics.isEnabled()) {
+            return evaluate(key, cost);
+        }
+        long start = System.nanoTime();
+        boolean allowed = evaluate(key, cost);
+        metrics.recordDecision(multiWindowInMemory.getMetricsName(), allowed, System.nanoTime() - start);
+        return allowed;
+    }
+
+    private boolean evaluate(String key, int cost) {
+        int[] limits = multiWindowInMemory.getLimits();
+        long[] windowSizesMillis = multiWindowInMemory.getWindowSizesMillis();
+
+        AtomicReference<long[]> window = windowsFor(key);
+        while (true) {
+            long[] states = window.get();
+            if (states == RateLimiterMultiWindowInMemory.RETIRED) {
+                window = windowsFor(key);
+                continue;
+            }
+
+            long currentTime = multiWindowInMemory.currentTick();
+            for (int i = 0; i < states.length; i++) {
+                long count = FixedWindowState.isExpired(states[i], currentTime, windowSizesMillis[i])
+                        ? 0
+                        : FixedWindowState.count(states[i]);
+                if (count + cost > limits[i]) {
+                    // Denied request, nothing to write
+                    return false;
+                }
+            }
+
+            long[] next = new long[states.length];
+            for (int i = 0; i < states.length; i++) {
+                next[i] = FixedWindowState.isExpired(states[i], currentTime, windowSizesMillis[i])
+                        ? FixedWindowState.pack(currentTime, cost)
+                        : states[i] + cost;
+            }
+            if (window.compareAndSet(states, next)) {
+                return true;
+            }
+        }
+    }
+
+    private AtomicReference<long[]> windowsFor(String key) {
+        Map<String, AtomicReference<long[]>> windows = multiWindowInMemory.getWindows();
+        AtomicReference<long[]> window = windows.get(key);
+        if (window != null && window.get() != RateLimiterMultiWindowInMemory.RETIRED) {
+            return window;
+        }
+        if (window != null) {
+            // Help the cleanup task unlink the retired key before creating a fresh one
+            windows.remove(key, window);
+        }
+        return windows.computeIfAbsent(key, k -> {
+            long currentTime = multiWindowInMemory.currentTick();
+            long[] states = new long[multiWindowInMemory.getLimits().length];
+            for (int i = 0; i < states.length; i++) {
+                states[i] = FixedWindowState.pack(currentTime, 0);
+            }
+            return new AtomicReference<>(states);
+        });
+    }
+}
@@ -1,21 +1,166 @@
 package com.rate.limiter.fixedwindow.service.redis;
 
+import com.rate.limiter.fixedwindow.configs.QuotaLeasing;
+import com.rate.limiter.fixedwindow.configs.RateLimiterFixedWindowInMemory;
+import com.rate.limiter.fixedwindow.configs.RateLimiterMultiWindowInMemory;
 import com.rate.limiter.fixedwindow.configs.RateLimiterFixedWindowWithRedis;
+import com.rate.limiter.fixedwindow.constants.FixedWindowInMemoryMode;
+import com.rate.limiter.fixedwindow.service.inmemory.RateLimiterFixedWindowInMemoryImpl;
+import com.rate.limiter.fixedwindow.service.inmemory.RateLimiterMultiWindowInMemoryImpl;
+import com.ratelimiter.common.clock.Clock;
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
+import com.ratelimiter.common.models.KeySharding;
+import com.ratelimiter.common.models.RateLimitPolicy;
+import com.ratelimiter.common.models.RedisKeyCodec;
+import com.ratelimiter.common.models.RequestCoalescer;
+import com.ratelimiter.common.resilience.RedisFailover;
+import com.ratelimiter.common.waiting.PermitWaiters;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * Implementation of fixed window rate limiting using Redis.
+ * Call {@link #close()} to stop the cleanup thread of the default failover limiter.
  */
-public class RateLimiterFixedWindowWithRedisImpl {
+public class RateLimiterFixedWindowWithRedisImpl implements AutoCloseable {
+    public static final String METRICS_NAME = "fixed-window-redis";
+    private static final byte[] KEY_PREFIX = RedisKeyCodec.prefix("rate:");
+
     private final RateLimiterFixedWindowWithRedis fixedWindowWithRedis;
+    private final QuotaLeasing quotaLeasing;
+    private final Executor asyncExecutor;
+    private final RequestCoalescer coalescer;
+    private final RedisFailover failover;
+    private final RedisFailover.LocalRateLimiter fallback;
+    // The default in-memory fallback, stopped on close; null if none or if the failover supplies its own
+    private RateLimiterFixedWindowInMemory fallbackWindow;
+    private final Clock clock;
+    private final KeySharding keySharding;
+    private final String metricsName;
+    private final RedisKeyCodec keyCodec;
+    private final PermitWaiters waiters = new PermitWaiters();
+    // Window in which every shard of a sharded key was found full; counts only grow within a window
+    private final Map<String, Long> exhaustedShardedWindows = new ConcurrentHashMap<>();
 
-    private RateLimiterFixedWindowWithRedisImpl(RateLimiterFixedWindowWithRedis fixedWindowWithRedis) {
-        this.fixedWindowWithRedis = fixedWindowWithRedis;
+    private RateLimiterFixedWindowWithRedisImpl(Builder builder) {
+        this.fixedWindowWithRedis = builder.fixedWindowWithRedis;
+        this.quotaLeasing = builder.quotaLeasing;
+        this.failover = builder.failover;
+        this.clock = builder.clock;
+        this.keySharding = builder.keySharding;
+        this.metricsName = builder.metricsName;
+        this.keyCodec = fixedWindowWithRedis.getRedisClient().getKeyCodec();
+        this.fallback = failover != null ? createFallback(failover) : null;
+        this.asyncExecutor = builder.asyncExecutor != null
+                ? builder.asyncExecutor
+                : Executors.newVirtualThreadPerTaskExecutor();
+        this.coalescer = new RequestCoalescer(this::admit, asyncExecutor);
     }
 
     public static Builder builder() {
         return new Builder();
     }
 
+    /**
+     * Creates the local limiter used while Redis is unavailable: the configured factory if any,
+     * otherwise an in-memory fixed window with the same window size.
+     */
+    private RedisFailover.LocalRateLimiter createFallback(RedisFailover failover) {
+        int localLimit = failover.localLimit(fixedWindowWithRedis.getLimit());
+        long windowMillis = fixedWindowWithRedis.getWindowSize() * 1000L;
+        if (failover.getFallbackFactory() != null) {
+            return failover.getFallbackFactory().create(localLimit, windowMillis);
+        }
+        ScheduledExecutorService cleanup = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limiter-fallback-cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fallbackWindow = new RateLimiterFixedWindowInMemory.Builder()
+                .withLimit(localLimit)
+                .withWindowSize(windowMillis)
+                .withMode(FixedWindowInMemoryMode.ATOMIC)
+                .withClock(clock)
+                .withExecutorService(cleanup)
+                .build();
+        return new InMemoryFallback(new RateLimiterFixedWindowInMemoryImpl(fallbackWindow), cleanup);
+    }
+
+    /**
+     * Stops the cleanup thread of the default failover limiter, if one was created.
+     * The Redis client and any executor passed to the builder are left to their owners.
+     */
+    @Override
+    public void close() {
+        if (fallbackWindow != null) {
+            fallbackWindow.shutdown();
+        }
+        if (fallback instanceof InMemoryFallback inMemory) {
+            inMemory.policyWindows.values().forEach(RateLimiterMultiWindowInMemory::shutdown);
+        }
+    }
+
+    /**
+     * The default failover limiter: the in-memory fixed window for plain checks and, for policy checks,
+     * an in-memory multi-window limiter per distinct policy, each limit divided by the node count.
+     * All of them share one cleanup thread.
+     */
+    private final class InMemoryFallback implements RedisFailover.LocalRateLimiter {
+        private final RateLimiterFixedWindowInMemoryImpl window;
+        private final ScheduledExecutorService cleanup;
+        private final Map<RateLimitPolicy, RateLimiterMultiWindowInMemory> policyWindows = new ConcurrentHashMap<>();
+        private final Map<RateLimitPolicy, RateLimiterMultiWindowInMemoryImpl> policyLimiters = new ConcurrentHashMap<>();
+
+        private InMemoryFallback(RateLimiterFixedWindowInMemoryImpl window, ScheduledExecutorService cleanup) {
+            this.window = window;
+            this.cleanup = cleanup;
+        }
+
+        @Override
+        public boolean isAllowed(String key) {
+            return window.isAllowed(key);
+        }
+
+        @Override
+        public boolean isAllowed(String key, int cost) {
+            return window.isAllowed(key, cost);
+        }
+
+        @Override
+        public boolean isAllowed(String key, int cost, RateLimitPolicy policy) {
+            return policyLimiters.computeIfAbsent(policy, this::createPolicyLimiter).isAllowed(key, cost);
+        }
+
+        private RateLimiterMultiWindowInMemoryImpl createPolicyLimiter(RateLimitPolicy policy) {
+            RateLimiterMultiWindowInMemory policyWindow = new RateLimiterMultiWindowInMemory.Builder()
+                    .withPolicy(failover.localPolicy(policy))
+                    .withClock(clock)
+                    .withExecutorService(cleanup)
+                    .build();
+            policyWindows.put(policy, policyWindow);
+            return new RateLimiterMultiWindowInMemoryImpl(policyWindow);
+        }
+    }
+
+    /**
+     * Runs a Redis call under the configured failover, or directly if failover is disabled.
+     */
+    private <T> T callRedis(Supplier<T> redisCall, Supplier<T> fallbackCall) {
+        return failover == null ? redisCall.get() : failover.execute(redisCall, fallbackCall);
+    }
+
     /**
      * Checks if a request is allowed for a given key under the fixed window algorithm.
      *
@@ -23,15 +168,380 @@ public class RateLimiterFixedWindowWithRedisImpl {
      * @return true if the request is allowed, false otherwise.
      */
     public boolean isAllowed(String key) {
+        RateLimiterMetrics metrics = fixedWindowWithRedis.getRedisClient().getMetrics();
+        if (!metrics.isEnabled()) {
+            return evaluate(key);
+        }
+        long start = System.nanoTime();
+        boolean allowed = evaluate(key);
+        metrics.recordDecision(metricsName, allowed, System.nanoTime() - start);
+        return allowed;
+    }
+
+    private boolean evaluate(String key) {
         // Calculate the current window based on the window size
-        long currentWindow = System.currentTimeMillis() / 1000 / fixedWindowWithRedis.getWindowSize();
-        String redisKey = "rate:" + key + ":" + currentWindow;
+        long currentWindow = clock.currentTimeMillis() / 1000 / fixedWindowWithRedis.getWindowSize();
+        if (quotaLeasing != null) {
+            return isAllowedByLease(key, currentWindow);
+        }
+        if (keySharding != null && keySharding.isSharded(key)) {
+            return callRedis(() -> admitSharded(key, 1, currentWindow) == 1, () -> fallback.isAllowed(key));
+        }
+        byte[] redisKey = windowKey(key, currentWindow);
+
+        // Increment the count for the current window; true if the count is within the limit
+        return callRedis(() -> fixedWindowWithRedis.incrementKey(redisKey) <= fixedWindowWithRedis.getLimit(),
+                () -> fallback.isAllowed(key));
+    }
+
+    /**
+     * Checks if a request with the given cost is allowed, counting the whole cost or nothing.
+     *
+     * @param key  The unique identifier for the request.
+     * @param cost The units of the limit the request uses; only 1 with quota leasing or for sharded keys.
+     * @return true if the request is allowed, false otherwise (always false if the cost exceeds the limit).
+     */
+    public boolean isAllowed(String key, int cost) {
+        if (cost <= 0) {
+            throw new IllegalArgumentException("Cost must be greater than 0");
+        }
+        return cost <= fixedWindowWithRedis.getLimit() && tryAcquire(key, cost) == 0;
+    }
+
+    /**
+     * Checks a request with the given cost against every limit of the policy in one script call.
+     * The cost is counted in all windows or, if any limit would be exceeded, in none of them.
+     * The policy replaces the configured limit and window for this call; quota leasing and key sharding
+     * do not apply. While Redis is unavailable the failover's local limiter enforces the policy's
+     * limits divided by the node count, again all or nothing.
+     *
+     * @param key    The unique identifier for the request.
+     * @param cost   The units of each limit the request uses.
+     * @param policy The limits to enforce.
+     * @return true if the request is allowed, false otherwise.
+     */
+    public boolean isAllowed(String key, int cost, RateLimitPolicy policy) {
+        if (cost <= 0) {
+            throw new IllegalArgumentException("Cost must be greater than 0");
+        }
+        RateLimiterMetrics metrics = fixedWindowWithRedis.getRedisClient().getMetrics();
+        if (!metrics.isEnabled()) {
+            return evaluate(key, cost, policy);
+        }
+        long start = System.nanoTime();
+        boolean allowed = evaluate(key, cost, policy);
+        metrics.recordDecision(metricsName, allowed, System.nanoTime() - start);
+        return allowed;
+    }
+
+    private boolean evaluate(String key, int cost, RateLimitPolicy policy) {
+        long now = clock.currentTimeMillis();
+        List<byte[]> redisKeys = new ArrayList<>(policy.getLimits().size());
+        for (RateLimitPolicy.Limit limit : policy.getLimits()) {
+            // The hash tag keeps every window of the key in one cluster slot so one script can update them
+            long windowSizeMillis = limit.getWindowSizeMillis();
+            redisKeys.add(keyCodec.key(KEY_PREFIX, key, true, windowSizeMillis, now / windowSizeMillis));
+        }
+        return callRedis(() -> fixedWindowWithRedis.tryReserveAll(redisKeys, cost, policy),
+                () -> fallback.isAllowed(key, cost, policy));
+    }
+
+    /**
+     * Checks if a request is allowed without blocking the caller. The check runs on the configured
+     * async executor, and checks for the same key that are in flight together share one INCRBY.
+     *
+     * @param key The unique identifier for the request.
+     * @return A future completed with true if the request is allowed, false otherwise.
+     */
+    public CompletableFuture<Boolean> isAllowedAsync(String key) {
+        if (quotaLeasing != null) {
+            // Leased permits are mostly served locally; only refills touch Redis
+            return CompletableFuture.supplyAsync(() -> isAllowed(key), asyncExecutor);
+        }
+        RateLimiterMetrics metrics = fixedWindowWithRedis.getRedisClient().getMetrics();
+        if (!metrics.isEnabled()) {
+            return coalescer.submit(key);
+        }
+        long start = System.nanoTime();
+        return coalescer.submit(key).whenComplete((allowed, failure) -> {
+            if (allowed != null) {
+                metrics.recordDecision(metricsName, allowed, System.nanoTime() - start);
+            }
+        });
+    }
+
+    /**
+     * Asks for several permits at once on behalf of coalesced checks.
+     *
+     * @return The number of permits admitted.
+     */
+    private long admit(String key, int permits) {
+        long currentWindow = clock.currentTimeMillis() / 1000 / fixedWindowWithRedis.getWindowSize();
+        boolean sharded = keySharding != null && keySharding.isSharded(key);
+        return callRedis(() -> sharded
+                        ? admitSharded(key, permits, currentWindow)
+                        : fixedWindowWithRedis.reservePermits(windowKey(key, currentWindow), permits),
+                () -> admitLocally(key, permits));
+    }
+
+    /**
+     * Coalesced permits are separate requests, so the local limiter admits as many as fit, one at a time.
+     */
+    private long admitLocally(String key, int permits) {
+        long admitted = 0;
+        for (int i = 0; i < permits && fallback.isAllowed(key); i++) {
+            admitted++;
+        }
+        return admitted;
+    }
+
+    /**
+     * Takes the given number of permits in the current window if they all fit, without waiting.
+     * Window keys follow the clock, so a denied caller learns the wait from the window boundary
+     * without a second Redis call.
+     *
+     * @param key     The unique identifier for the request.
+     * @param permits The number of permits, at most the limit; only 1 with quota leasing or for sharded keys.
+     * @return 0 if the permits were taken, otherwise the milliseconds until the next window.
+     */
+    public long tryAcquire(String key, int permits) {
+        checkPermits(key, permits);
+        RateLimiterMetrics metrics = fixedWindowWithRedis.getRedisClient().getMetrics();
+        if (!metrics.isEnabled()) {
+            return reserve(key, permits);
+        }
+        long start = System.nanoTime();
+        long wait = reserve(key, permits);
+        metrics.recordDecision(metricsName, wait == 0, System.nanoTime() - start);
+        return wait;
+    }
+
+    /**
+     * Takes the given number of permits, waiting for the next window if needed. Callers waiting on the
+     * same key are served in FIFO order, and only the first of them calls Redis, once per window,
+     * so a backlog sends almost no denied checks to Redis.
+     *
+     * @param key     The unique identifier for the request.
+     * @param permits The number of permits, at most the limit; only 1 with quota leasing or for sharded keys.
+     * @param timeout The longest time to wait.
+     * @return true if the permits were taken, false if they would not be available within the timeout.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean acquire(String key, int permits, Duration timeout) throws InterruptedException {
+        checkPermits(key, permits);
+        return waiters.acquire(key, timeout, () -> tryAcquire(key, permits));
+    }
+
+    private void checkPermits(String key, int permits) {
+        if (permits <= 0 || permits > fixedWindowWithRedis.getLimit()) {
+            throw new IllegalArgumentException("Permits must be between 1 and the limit");
+        }
+        if (permits > 1 && (quotaLeasing != null || (keySharding != null && keySharding.isSharded(key)))) {
+            // Leases and shard spills grant permits piecemeal, so several cannot be taken all at once
+            throw new IllegalArgumentException("Only one permit at a time can be acquired with quota leasing or key sharding");
+        }
+    }
+
+    private long reserve(String key, int permits) {
+        long windowMillis = fixedWindowWithRedis.getWindowSize() * 1000L;
+        long now = clock.currentTimeMillis();
+        long currentWindow = now / windowMillis;
+        boolean granted;
+        if (quotaLeasing != null) {
+            granted = isAllowedByLease(key, currentWindow);
+        } else if (keySharding != null && keySharding.isSharded(key)) {
+            granted = callRedis(() -> admitSharded(key, 1, currentWindow) == 1, () -> fallback.isAllowed(key));
+        } else {
+            granted = callRedis(() -> fixedWindowWithRedis.tryReserveAll(windowKey(key, currentWindow), permits),
+                    () -> fallback.isAllowed(key, permits));
+        }
+        return granted ? 0 : (currentWindow + 1) * windowMillis - now;
+    }
+
+    /**
+     * Checks several keys for one inbound request, sending every increment in one pipeline
+     * (one round trip per Redis node; cluster nodes are contacted in parallel).
+     * Each key is counted independently, so allowed keys consume quota even if another key is denied.
+     *
+     * @param keys The unique identifiers for the request.
+     * @return The decision for each distinct key, in iteration order.
+     */
+    public Map<String, Boolean> isAllowedBatch(Collection<String> keys) {
+        RateLimiterMetrics metrics = fixedWindowWithRedis.getRedisClient().getMetrics();
+        if (!metrics.isEnabled()) {
+            return evaluateBatch(keys);
+        }
+        long start = System.nanoTime();
+        Map<String, Boolean> decisions = evaluateBatch(keys);
+        // Every key of the batch waited for the whole batch
+        long latencyNanos = System.nanoTime() - start;
+        decisions.values().forEach(allowed -> metrics.recordDecision(metricsName, allowed, latencyNanos));
+        return decisions;
+    }
+
+    private Map<String, Boolean> evaluateBatch(Collection<String> keys) {
+        Map<String, Boolean> decisions = new LinkedHashMap<>();
+        long currentWindow = clock.currentTimeMillis() / 1000 / fixedWindowWithRedis.getWindowSize();
+        if (quotaLeasing != null) {
+            // Leased permits are served locally, so there is nothing to batch
+            for (String key : keys) {
+                decisions.computeIfAbsent(key, k -> isAllowedByLease(k, currentWindow));
+            }
+            return decisions;
+        }
+
+        Map<String, byte[]> redisKeys = new LinkedHashMap<>();
+        Map<String, Boolean> shardedDecisions = new LinkedHashMap<>();
+        for (String key : keys) {
+            if (keySharding != null && keySharding.isSharded(key)) {
+                // Sharded keys pick their sub-keys one check at a time, outside the pipeline
+                shardedDecisions.computeIfAbsent(key, this::evaluate);
+            } else {
+                redisKeys.computeIfAbsent(key, k -> windowKey(k, currentWindow));
+            }
+        }
 
-        // Increment the count for the current window
-        long currentCount = fixedWindowWithRedis.incrementKey(redisKey);
+        Map<String, Boolean> pipelinedDecisions = redisKeys.isEmpty() ? Map.of() : callRedis(() -> {
+            long[] counts = fixedWindowWithRedis.incrementKeys(new ArrayList<>(redisKeys.values()));
+            Map<String, Boolean> redisDecisions = new LinkedHashMap<>();
+            int i = 0;
+            for (String key : redisKeys.keySet()) {
+                redisDecisions.put(key, counts[i++] <= fixedWindowWithRedis.getLimit());
+            }
+            return redisDecisions;
+        }, () -> {
+            Map<String, Boolean> fallbackDecisions = new LinkedHashMap<>();
+            redisKeys.keySet().forEach(key -> fallbackDecisions.put(key, fallback.isAllowed(key)));
+            return fallbackDecisions;
+        });
+        for (String key : keys) {
+            decisions.computeIfAbsent(key, k -> shardedDecisions.containsKey(k) ? shardedDecisions.get(k) : pipelinedDecisions.get(k));
+        }
+        return decisions;
+    }
 
-        // Return true if the current count is within the limit
-        return currentCount <= fixedWindowWithRedis.getLimit();
+    /**
+     * Checks several keys for one inbound request in one pipeline, see {@link #isAllowedBatch(Collection)}.
+     *
+     * @param keys The unique identifiers for the request.
+     * @return true if every key is allowed, false otherwise.
+     */
+    public boolean isAllowedAll(Collection<String> keys) {
+        return !isAllowedBatch(keys).containsValue(false);
+    }
+
+    /**
+     * Takes permits for a sharded key: first from the selected sub-key, then, if that sub-key is full,
+     * from the sub-keys that still have room according to one pipelined read of every sub-key.
+     *
+     * @return The number of permits admitted.
+     */
+    private long admitSharded(String key, int permits, long currentWindow) {
+        Long exhaustedWindow = exhaustedShardedWindows.get(key);
+        if (exhaustedWindow != null && exhaustedWindow == currentWindow) {
+            return 0;
+        }
+
+        int limit = fixedWindowWithRedis.getLimit();
+        int selected = keySharding.selectShard(key);
+        long granted = fixedWindowWithRedis.reservePermits(shardKey(key, selected, currentWindow), permits,
+                keySharding.shardLimit(limit, selected));
+        if (granted == permits) {
+            return granted;
+        }
+
+        List<byte[]> shardKeys = new ArrayList<>(keySharding.getShards());
+        for (int shard = 0; shard < keySharding.getShards(); shard++) {
+            shardKeys.add(shardKey(key, shard, currentWindow));
+        }
+        long[] counts = fixedWindowWithRedis.getCounts(shardKeys);
+        for (int shard = 0; shard < counts.length && granted < permits; shard++) {
+            int shardLimit = keySharding.shardLimit(limit, shard);
+            if (shard != selected && counts[shard] < shardLimit) {
+                granted += fixedWindowWithRedis.reservePermits(shardKeys.get(shard),
+                        (int) Math.min(permits - granted, shardLimit - counts[shard]), shardLimit);
+            }
+        }
+        if (granted < permits) {
+            exhaustedShardedWindows.put(key, currentWindow);
+        }
+        return granted;
+    }
+
+    private byte[] shardKey(String key, int shard, long currentWindow) {
+        return keyCodec.key(KEY_PREFIX, keySharding.tag(key, shard), true, currentWindow);
+    }
+
+    /**
+     * @return The counter of the key in the given window, {@code rate:<key>:<window>} with the text codec.
+     */
+    private byte[] windowKey(String key, long currentWindow) {
+        return keyCodec.key(KEY_PREFIX, key, false, currentWindow);
+    }
+
+    private boolean isAllowedByLease(String key, long currentWindow) {
+        if (quotaLeasing.claimPrune(currentWindow)) {
+            // Off the request path; leases only grow stale, so a late prune is harmless
+            asyncExecutor.execute(() -> quotaLeasing.removeExpired(currentWindow));
+        }
+        QuotaLeasing.Lease lease = quotaLeasing.getLeases().get(key);
+        if (lease == null) {
+            lease = quotaLeasing.getLeases().computeIfAbsent(key, k -> new QuotaLeasing.Lease());
+        }
+
+        AtomicLong state = lease.getState();
+        while (true) {
+            long current = state.get();
+            if (current == QuotaLeasing.Lease.RETIRED) {
+                // Pruned while idle; continue on the lease that replaces it
+                lease = quotaLeasing.getLeases().computeIfAbsent(key, k -> new QuotaLeasing.Lease());
+                state = lease.getState();
+                continue;
+            }
+            if (QuotaLeasing.Lease.window(current) == currentWindow) {
+                if (QuotaLeasing.Lease.remaining(current) > 0) {
+                    if (state.compareAndSet(current, current - 1)) {
+                        return true;
+                    }
+                    continue;
+                }
+                if (lease.getExhaustedWindow() == currentWindow) {
+                    return false;
+                }
+            }
+            if (QuotaLeasing.Lease.window(current) > currentWindow) {
+                // Another thread already moved this lease to a newer window
+                return false;
+            }
+
+            synchronized (lease) {
+                if (state.get() != current) {
+                    // Another thread refilled or rolled the lease while we waited
+                    continue;
+                }
+                if (lease.getExhaustedWindow() == currentWindow) {
+                    return false;
+                }
+
+                // Unused permits from an older window are simply discarded
+                int leaseSize = lease.nextLeaseSize(clock.currentTimeMillis(),
+                        quotaLeasing.getTargetLeaseMillis(), quotaLeasing.maxLeaseSize(fixedWindowWithRedis.getLimit()));
+                Long granted = callRedis(
+                        () -> fixedWindowWithRedis.reservePermits(windowKey(key, currentWindow), leaseSize),
+                        () -> null);
+                if (granted == null) {
+                    // Redis is unavailable; leave the lease untouched so the next check tries again
+                    return fallback.isAllowed(key);
+                }
+                if (granted == 0) {
+                    lease.setExhaustedWindow(currentWindow);
+                    state.set(QuotaLeasing.Lease.pack(currentWindow, 0));
+                    return false;
+                }
+                state.set(QuotaLeasing.Lease.pack(currentWindow, granted - 1));
+                return true;
+            }
+        }
     }
 
     /**
@@ -39,6 +549,12 @@ public class RateLimiterFixedWindowWithRedisImpl {
      */
     public static class Builder {
         private RateLimiterFixedWindowWithRedis fixedWindowWithRedis;
+        private QuotaLeasing quotaLeasing;
+        private Executor asyncExecutor;
+        private RedisFailover failover;
+        private Clock clock = Clock.SYSTEM;
+        private KeySharding keySharding;
+        private String metricsName = METRICS_NAME;
 
         /**
          * Sets the fixed window configuration for this implementation.
@@ -51,6 +567,81 @@ public class RateLimiterFixedWindowWithRedisImpl {
             return this;
         }
 
+        /**
+         * Enables local quota leasing: permits are reserved from Redis in blocks and served locally.
+         * Disabled by default, in which case every request is counted in Redis.
+         *
+         * @param quotaLeasing The leasing configuration.
+         * @return The builder instance.
+         */
+        public Builder withQuotaLeasing(QuotaLeasing quotaLeasing) {
+            this.quotaLeasing = quotaLeasing;
+            return this;
+        }
+
+        /**
+         * Sets the executor running asynchronous checks. Defaults to one virtual thread per task.
+         *
+         * @param asyncExecutor The executor.
+         * @return The builder instance.
+         */
+        public Builder withAsyncExecutor(Executor asyncExecutor) {
+            this.asyncExecutor = asyncExecutor;
+            return this;
+        }
+
+        /**
+         * Enables failover: Redis calls run within a latency budget behind a circuit breaker, and a local
+         * limiter enforcing the limit divided by the node count answers while Redis is unhealthy.
+         * Defaults to an in-memory fixed window fallback unless the failover sets its own factory.
+         * Disabled by default, in which case Redis errors are thrown to the caller.
+         *
+         * @param failover The failover configuration.
+         * @return The builder instance.
+         */
+        public Builder withFailover(RedisFailover failover) {
+            this.failover = failover;
+            return this;
+        }
+
+        /**
+         * Sets the time source for window boundaries. Defaults to {@link Clock#SYSTEM};
+         * a {@link com.ratelimiter.common.clock.RedisSyncedClock} keeps boundaries consistent across nodes.
+         *
+         * @param clock The clock.
+         * @return The builder instance.
+         */
+        public Builder withClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Spreads the counters of hot keys over several sub-keys in different cluster slots. Each sub-key
+         * enforces its share of the limit; when the chosen one is full, the others are checked with one
+         * pipelined read and used if they have room. Cannot be combined with quota leasing.
+         * Disabled by default.
+         *
+         * @param keySharding The sharding configuration.
+         * @return The builder instance.
+         */
+        public Builder withKeySharding(KeySharding keySharding) {
+            this.keySharding = keySharding;
+            return this;
+        }
+
+        /**
+         * Sets the name decisions are recorded under in the Redis client's metrics, so several limiters
+         * sharing one client report separately. Defaults to {@link RateLimiterFixedWindowWithRedisImpl#METRICS_NAME}.
+         *
+         * @param metricsName The name.
+         * @return The builder instance.
+         */
+        public Builder withMetricsName(String metricsName) {
+            this.metricsName = metricsName != null ? metricsName : METRICS_NAME;
+            return this;
+        }
+
         /**
          * Builds the RateLimiterFixedWindowWithRedisImpl instance.
          *
@@ -60,7 +651,16 @@ public class RateLimiterFixedWindowWithRedisImpl {
             if (fixedWindowWithRedis == null) {
                 throw new IllegalArgumentException("RateLimiterFixedWindowWithRedis is required");
             }
-            return new RateLimiterFixedWindowWithRedisImpl(fixedWindowWithRedis);
+            if (clock == null) {
+                throw new IllegalArgumentException("Clock must not be null");
+            }
+            if (keySharding != null && quotaLeasing != null) {
+                throw new IllegalArgumentException("Key sharding cannot be combined with quota leasing");
+            }
+            if (keySharding != null) {
+                keySharding.checkLimit(fixedWindowWithRedis.getLimit());
+            }
+            return new RateLimiterFixedWindowWithRedisImpl(this);
         }
     }
 }
@@ -1,23 +1,46 @@
 package com.ratelimiter.slidingwindow.configs;
 
+import com.ratelimiter.common.clock.Clock;
 import com.ratelimiter.common.constants.TimeUnit;
+import com.ratelimiter.common.models.KeySharding;
 import com.ratelimiter.common.models.RedisClient;
+import com.ratelimiter.common.resilience.RedisFailover;
+import com.ratelimiter.slidingwindow.constants.SlidingWindowMode;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * Configuration class for the sliding window rate limiter.
  */
 
 public class RateLimiterSlidingWindow {
+    public static final String METRICS_NAME = "sliding-window-redis";
+
     private final RedisClient redisClient;
     private final TimeUnit timeUnit;
     private final int windowSize;
     private final int limit;
+    private final SlidingWindowMode mode;
+    private final Executor asyncExecutor;
+    private final RedisFailover failover;
+    private final Clock clock;
+    private final KeySharding keySharding;
+    private final String metricsName;
 
-    private RateLimiterSlidingWindow(RedisClient redisClient, TimeUnit timeUnit, int windowSize, int limit) {
-        this.redisClient = redisClient;
-        this.timeUnit = timeUnit;
-        this.windowSize = windowSize;
-        this.limit = limit;
+    private RateLimiterSlidingWindow(RateLimiterSlidingWindowBuilder builder) {
+        this.redisClient = builder.redisClient;
+        this.timeUnit = builder.timeUnit;
+        this.windowSize = builder.windowSize;
+        this.limit = builder.limit;
+        this.mode = builder.mode;
+        this.asyncExecutor = builder.asyncExecutor != null
+                ? builder.asyncExecutor
+                : Executors.newVirtualThreadPerTaskExecutor();
+        this.failover = builder.failover;
+        this.clock = builder.clock;
+        this.keySharding = builder.keySharding;
+        this.metricsName = builder.metricsName;
     }
 
     /**
@@ -48,6 +71,48 @@ public class RateLimiterSlidingWindow {
         return limit;
     }
 
+    /**
+     * @return How the sliding window is evaluated against Redis.
+     */
+    public SlidingWindowMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return The executor running asynchronous checks.
+     */
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * @return The time source for request timestamps and window boundaries.
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * @return The hot-key sharding configuration, or null if every key uses a single Redis key.
+     */
+    public KeySharding getKeySharding() {
+        return keySharding;
+    }
+
+    /**
+     * @return The name decisions are recorded under in the Redis client's metrics.
+     */
+    public String getMetricsName() {
+        return metricsName;
+    }
+
+    /**
+     * @return The failover configuration, or null if Redis errors are thrown to the caller.
+     */
+    public RedisFailover getFailover() {
+        return failover;
+    }
+
     @Override
     public String toString() {
         return "RateLimiterSlidingWindow{" +
@@ -55,6 +120,8 @@ public class RateLimiterSlidingWindow {
                 ", timeUnit=" + timeUnit +
                 ", windowSize=" + windowSize +
                 ", limit=" + limit +
+                ", mode=" + mode +
+                ", failover=" + (failover != null) +
                 '}';
     }
 
@@ -66,6 +133,12 @@ public class RateLimiterSlidingWindow {
         private int windowSize;
         private int limit;
         private RedisClient redisClient;
+        private SlidingWindowMode mode = SlidingWindowMode.LOG;
+        private Executor asyncExecutor;
+        private RedisFailover failover;
+        private Clock clock = Clock.SYSTEM;
+        private KeySharding keySharding;
+        private String metricsName = METRICS_NAME;
 
         /**
          * Sets the Redis client for this configuration.
@@ -93,8 +166,100 @@ public class RateLimiterSlidingWindow {
             return this;
         }
 
+        /**
+         * Sets how the sliding window is evaluated against Redis. Defaults to {@link SlidingWindowMode#LOG}.
+         *
+         * @param mode The evaluation mode.
+         * @return The builder instance.
+         */
+        public RateLimiterSlidingWindowBuilder mode(SlidingWindowMode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * Sets the executor running asynchronous checks. Defaults to one virtual thread per task.
+         *
+         * @param asyncExecutor The executor.
+         * @return The builder instance.
+         */
+        public RateLimiterSlidingWindowBuilder asyncExecutor(Executor asyncExecutor) {
+            this.asyncExecutor = asyncExecutor;
+            return this;
+        }
+
+        /**
+         * Enables failover: Redis calls run within a latency budget behind a circuit breaker, and a local
+         * limiter enforcing the limit divided by the node count answers while Redis is unhealthy.
+         * Defaults to an in-memory sliding window counter fallback unless the failover sets its own factory.
+         * Disabled by default, in which case Redis errors are thrown to the caller.
+         *
+         * @param failover The failover configuration.
+         * @return The builder instance.
+         */
+        public RateLimiterSlidingWindowBuilder failover(RedisFailover failover) {
+            this.failover = failover;
+            return this;
+        }
+
+        /**
+         * Sets the time source for request timestamps and window boundaries. Defaults to {@link Clock#SYSTEM};
+         * a {@link com.ratelimiter.common.clock.RedisSyncedClock} keeps boundaries consistent across nodes.
+         *
+         * @param clock The clock.
+         * @return The builder instance.
+         */
+        public RateLimiterSlidingWindowBuilder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Spreads the state of hot keys over several sub-keys in different cluster slots, each enforcing
+         * its share of the limit. A check is decided by the sub-key it picks alone, so use round-robin
+         * selection to keep the shares evenly used. Disabled by default.
+         *
+         * @param keySharding The sharding configuration.
+         * @return The builder instance.
+         */
+        public RateLimiterSlidingWindowBuilder keySharding(KeySharding keySharding) {
+            this.keySharding = keySharding;
+            return this;
+        }
+
+        /**
+         * Sets the name decisions are recorded under in the Redis client's metrics, so several limiters
+         * sharing one client report separately. Defaults to {@link RateLimiterSlidingWindow#METRICS_NAME}.
+         *
+         * @param metricsName The name.
+         * @return The builder instance.
+         */
+        public RateLimiterSlidingWindowBuilder metricsName(String metricsName) {
+            this.metricsName = metricsName != null ? metricsName : METRICS_NAME;
+            return this;
+        }
+
         public RateLimiterSlidingWindow build() {
-            return new RateLimiterSlidingWindow(redisClient, timeUnit, windowSize, limit);
+            if (timeUnit == null) {
+                throw new IllegalArgumentException("TimeUnit must not be null");
+            }
+            if (windowSize <= 0) {
+                throw new IllegalArgumentException("Window size must be greater than 0");
+            }
+            if ((long) windowSize * timeUnit.getMilliValue() > Integer.MAX_VALUE) {
+                // Window arithmetic and the Redis scripts work in int milliseconds
+                throw new IllegalArgumentException("Window size must be at most " + Integer.MAX_VALUE + " ms");
+            }
+            if (mode == null) {
+                throw new IllegalArgumentException("SlidingWindowMode must not be null");
+            }
+            if (clock == null) {
+                throw new IllegalArgumentException("Clock must not be null");
+            }
+            if (keySharding != null) {
+                keySharding.checkLimit(limit);
+            }
+            return new RateLimiterSlidingWindow(this);
         }
     }
 }
@@ -0,0 +1,308 @@
+package com.ratelimiter.slidingwindow.configs;
+
+import com.ratelimiter.common.clock.Clock;
+import com.ratelimiter.common.constants.TimeUnit;
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
+import com.ratelimiter.slidingwindow.constants.SlidingWindowInMemoryMode;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Configuration class for the in-memory sliding window rate limiter.
+ * <p>
+ * Each key has its own {@link SlidingWindowLog} or {@link SlidingWindowCounter}, updated under that
+ * object's monitor, so checks on different keys never contend. A scheduled task removes keys whose
+ * requests have all left the window, since an idle key behaves exactly like a missing one.
+ */
+public class RateLimiterSlidingWindowInMemory {
+
+    public static final String METRICS_NAME = "sliding-window-in-memory";
+
+    private final TimeUnit timeUnit;
+    private final int windowSize;
+    private final int limit;
+    private final SlidingWindowInMemoryMode mode;
+    private final int subBuckets;
+    private final long windowSizeMillis;
+    private final long bucketMillis;
+    private final Clock clock;
+    private final long epochMillis;
+    private final Map<String, SlidingWindowLog> logs;
+    private final Map<String, SlidingWindowCounter> counters;
+    private final RateLimiterMetrics metrics;
+    private final String metricsName;
+    private final ScheduledExecutorService executorService;
+
+    private RateLimiterSlidingWindowInMemory(RateLimiterSlidingWindowInMemoryBuilder builder) {
+        this.timeUnit = builder.timeUnit;
+        this.windowSize = builder.windowSize;
+        this.limit = builder.limit;
+        this.mode = builder.mode;
+        this.subBuckets = builder.subBuckets;
+        this.windowSizeMillis = (long) windowSize * timeUnit.getMilliValue();
+        this.bucketMillis = windowSizeMillis / subBuckets;
+        this.clock = builder.clock;
+        this.epochMillis = clock.currentTimeMillis();
+        this.logs = new ConcurrentHashMap<>();
+        this.counters = new ConcurrentHashMap<>();
+        this.metrics = builder.metrics;
+        this.metricsName = builder.metricsName;
+        this.executorService = builder.executorService != null
+                ? builder.executorService
+                : Executors.newScheduledThreadPool(1);
+
+        // Start a periodic cleanup task for idle keys
+        this.executorService.scheduleAtFixedRate(
+                this::cleanupIdleKeys,
+                windowSizeMillis,
+                windowSizeMillis,
+                java.util.concurrent.TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * @return The time unit of the sliding window.
+     */
+    public TimeUnit getTimeUnit() {
+        return timeUnit;
+    }
+
+    /**
+     * @return The size of the sliding window.
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * @return The maximum allowed requests in the sliding window.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return How per-key state is kept.
+     */
+    public SlidingWindowInMemoryMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return The number of sub-buckets per window in {@link SlidingWindowInMemoryMode#COUNTER} mode.
+     */
+    public int getSubBuckets() {
+        return subBuckets;
+    }
+
+    public long getWindowSizeMillis() {
+        return windowSizeMillis;
+    }
+
+    /**
+     * @return The length of one sub-bucket in {@link SlidingWindowInMemoryMode#COUNTER} mode.
+     */
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    public Map<String, SlidingWindowLog> getLogs() {
+        return logs;
+    }
+
+    public Map<String, SlidingWindowCounter> getCounters() {
+        return counters;
+    }
+
+    public RateLimiterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The name this limiter's measurements are recorded under.
+     */
+    public String getMetricsName() {
+        return metricsName;
+    }
+
+    /**
+     * @return Milliseconds elapsed since this limiter was created, used as the request timestamp.
+     */
+    public long currentTick() {
+        return clock.currentTimeMillis() - epochMillis;
+    }
+
+    private void cleanupIdleKeys() {
+        long start = System.nanoTime();
+        long now = currentTick();
+        int[] removed = new int[1];
+        if (mode == SlidingWindowInMemoryMode.LOG) {
+            logs.forEach((key, log) -> {
+                synchronized (log) {
+                    if (!log.isIdle(now, windowSizeMillis)) {
+                        return;
+                    }
+                    // Retire first so a concurrent check cannot record into a log that is being unlinked
+                    log.retire();
+                }
+                logs.remove(key, log);
+                removed[0]++;
+            });
+        } else {
+            counters.forEach((key, counter) -> {
+                synchronized (counter) {
+                    if (!counter.isIdle(now, bucketMillis)) {
+                        return;
+                    }
+                    counter.retire();
+                }
+                counters.remove(key, counter);
+                removed[0]++;
+            });
+        }
+        if (metrics.isEnabled()) {
+            metrics.recordCleanup(metricsName, System.nanoTime() - start, removed[0]);
+            metrics.recordKeyCount(metricsName, mode == SlidingWindowInMemoryMode.LOG ? logs.size() : counters.size());
+        }
+    }
+
+    public void shutdown() {
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(5, java.util.concurrent.TimeUnit.SECONDS)) {
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiterSlidingWindowInMemory{" +
+                "timeUnit=" + timeUnit +
+                ", windowSize=" + windowSize +
+                ", limit=" + limit +
+                ", mode=" + mode +
+                ", subBuckets=" + subBuckets +
+                '}';
+    }
+
+    /**
+     * Builder class to construct a RateLimiterSlidingWindowInMemory instance.
+     */
+    public static class RateLimiterSlidingWindowInMemoryBuilder {
+        private TimeUnit timeUnit;
+        private int windowSize;
+        private int limit;
+        private SlidingWindowInMemoryMode mode = SlidingWindowInMemoryMode.LOG;
+        private int subBuckets = 10;
+        private ScheduledExecutorService executorService;
+        private RateLimiterMetrics metrics = RateLimiterMetrics.NOOP;
+        private String metricsName = METRICS_NAME;
+        private Clock clock = Clock.SYSTEM;
+
+        public RateLimiterSlidingWindowInMemoryBuilder windowSize(int windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        public RateLimiterSlidingWindowInMemoryBuilder limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        public RateLimiterSlidingWindowInMemoryBuilder timeUnit(TimeUnit timeUnit) {
+            this.timeUnit = timeUnit;
+            return this;
+        }
+
+        /**
+         * Sets how per-key state is kept. Defaults to {@link SlidingWindowInMemoryMode#LOG}.
+         *
+         * @param mode The state mode.
+         * @return The builder instance.
+         */
+        public RateLimiterSlidingWindowInMemoryBuilder mode(SlidingWindowInMemoryMode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * Sets how many sub-buckets a window is split into in {@link SlidingWindowInMemoryMode#COUNTER} mode.
+         * More sub-buckets track the true sliding window more closely at 8 bytes per sub-bucket per key.
+         * Defaults to 10.
+         *
+         * @param subBuckets The number of sub-buckets.
+         * @return The builder instance.
+         */
+        public RateLimiterSlidingWindowInMemoryBuilder subBuckets(int subBuckets) {
+            this.subBuckets = subBuckets;
+            return this;
+        }
+
+        public RateLimiterSlidingWindowInMemoryBuilder executorService(ScheduledExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * Sets where decisions, key counts and cleanup passes are recorded. Defaults to {@link RateLimiterMetrics#NOOP}.
+         *
+         * @param metrics The metrics sink.
+         * @return The builder instance.
+         */
+        public RateLimiterSlidingWindowInMemoryBuilder metrics(RateLimiterMetrics metrics) {
+            this.metrics = metrics != null ? metrics : RateLimiterMetrics.NOOP;
+            return this;
+        }
+
+        /**
+         * Sets the name measurements are recorded under, so several limiters sharing one metrics sink
+         * report separately. Defaults to {@link RateLimiterSlidingWindowInMemory#METRICS_NAME}.
+         *
+         * @param metricsName The name.
+         * @return The builder instance.
+         */
+        public RateLimiterSlidingWindowInMemoryBuilder metricsName(String metricsName) {
+            this.metricsName = metricsName != null ? metricsName : METRICS_NAME;
+            return this;
+        }
+
+        /**
+         * Sets the time source for request timestamps. Defaults to {@link Clock#SYSTEM}.
+         *
+         * @param clock The clock.
+         * @return The builder instance.
+         */
+        public RateLimiterSlidingWindowInMemoryBuilder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public RateLimiterSlidingWindowInMemory build() {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("Limit must be greater than 0");
+            }
+            if (windowSize <= 0) {
+                throw new IllegalArgumentException("Window size must be greater than 0");
+            }
+            if (timeUnit == null) {
+                throw new IllegalArgumentException("TimeUnit must not be null");
+            }
+            if (mode == null) {
+                throw new IllegalArgumentException("SlidingWindowInMemoryMode must not be null");
+            }
+            if (clock == null) {
+                throw new IllegalArgumentException("Clock must not be null");
+            }
+            if (subBuckets <= 0 || subBuckets > (long) windowSize * timeUnit.getMilliValue()) {
+                throw new IllegalArgumentException("Sub-buckets must be between 1 and the window size in milliseconds");
+            }
+            return new RateLimiterSlidingWindowInMemory(this);
+        }
+    }
+}
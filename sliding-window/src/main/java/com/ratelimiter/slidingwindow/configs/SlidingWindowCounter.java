@@ -0,0 +1,101 @@
+package com.ratelimiter.slidingwindow.configs;
+
+/**
+ * Approximate sliding window state for one key: request counts for the last {@code subBuckets + 1}
+ * fixed sub-buckets. The window is the current sub-bucket, the {@code subBuckets - 1} before it, and the
+ * oldest one weighted by the part of it still inside the window, so the error shrinks as sub-buckets are added.
+ * <p>
+ * Methods must be called while holding this object's monitor. Once cleanup retires a counter it is no
+ * longer in the limiter's map, and callers must look the key up again.
+ */
+public class SlidingWindowCounter {
+    private final long[] counts;
+    private long lastBucket;
+    private boolean retired;
+
+    public SlidingWindowCounter(int subBuckets, long currentBucket) {
+        this.counts = new long[subBuckets + 1];
+        this.lastBucket = currentBucket;
+    }
+
+    /**
+     * Rolls the sub-buckets forward to {@code now}, then counts the request if the weighted total is under the limit.
+     *
+     * @param now          The current tick, in milliseconds.
+     * @param bucketMillis The length of one sub-bucket.
+     * @param limit        The number of requests allowed per window.
+     * @return true if the request is admitted.
+     */
+    public boolean tryAcquire(long now, long bucketMillis, int limit) {
+        return tryAcquire(now, bucketMillis, limit, 1) == 0;
+    }
+
+    /**
+     * Rolls the sub-buckets forward to {@code now}, then counts the requests if the weighted total
+     * leaves room for all of them.
+     *
+     * @param now          The current tick, in milliseconds.
+     * @param bucketMillis The length of one sub-bucket.
+     * @param limit        The number of requests allowed per window.
+     * @param permits      The number of requests, at most the limit.
+     * @return 0 if the requests are admitted, otherwise the milliseconds until the weighted total leaves room.
+     */
+    public long tryAcquire(long now, long bucketMillis, int limit, int permits) {
+        // A clock that stepped back keeps counting into the latest sub-bucket
+        long currentBucket = Math.max(now / bucketMillis, lastBucket);
+        advance(currentBucket);
+
+        int slots = counts.length;
+        long recent = 0;
+        for (int i = 0; i < slots - 1; i++) {
+            recent += counts[slotOf(currentBucket - i)];
+        }
+        long oldest = counts[slotOf(currentBucket - (slots - 1))];
+        long elapsed = Math.max(0, now - currentBucket * bucketMillis);
+
+        long remaining = Math.max(0, bucketMillis - elapsed);
+
+        // recent + oldest * remaining / bucketMillis + permits - 1 < limit, without dividing
+        long room = (long) (limit - permits + 1) * bucketMillis - recent * bucketMillis;
+        if (oldest * remaining >= room) {
+            if (room <= 0 || oldest == 0) {
+                // Only the next sub-bucket boundary drops counts out of the window
+                return Math.max(1, remaining);
+            }
+            // The oldest sub-bucket's weight shrinks linearly until oldest * (remaining - wait) < room
+            return Math.max(1, remaining - (room - 1) / oldest);
+        }
+        counts[slotOf(currentBucket)] += permits;
+        return 0;
+    }
+
+    /**
+     * @return true if every counted sub-bucket has left the window, so the counter behaves like a missing one.
+     */
+    public boolean isIdle(long now, long bucketMillis) {
+        return now / bucketMillis - lastBucket >= counts.length;
+    }
+
+    public boolean isRetired() {
+        return retired;
+    }
+
+    public void retire() {
+        this.retired = true;
+    }
+
+    private void advance(long currentBucket) {
+        if (currentBucket <= lastBucket) {
+            return;
+        }
+        long stale = Math.min(currentBucket - lastBucket, counts.length);
+        for (long i = 1; i <= stale; i++) {
+            counts[slotOf(lastBucket + i)] = 0;
+        }
+        lastBucket = currentBucket;
+    }
+
+    private int slotOf(long bucket) {
+        return (int) Math.floorMod(bucket, (long) counts.length);
+    }
+}
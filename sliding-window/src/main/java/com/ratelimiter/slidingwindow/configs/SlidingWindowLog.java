@@ -0,0 +1,81 @@
+package com.ratelimiter.slidingwindow.configs;
+
+/**
+ * Exact sliding window state for one key: the timestamps of the admitted requests still inside
+ * the window, kept in a primitive ring buffer sized to the limit.
+ * <p>
+ * Methods must be called while holding this object's monitor. Once cleanup retires a log it is no
+ * longer in the limiter's map, and callers must look the key up again.
+ */
+public class SlidingWindowLog {
+    private final long[] timestamps;
+    private int head;
+    private int size;
+    private boolean retired;
+
+    public SlidingWindowLog(int limit) {
+        this.timestamps = new long[limit];
+    }
+
+    /**
+     * Drops timestamps that left the window, then records the request if there is room.
+     *
+     * @param now              The current tick, in milliseconds.
+     * @param windowSizeMillis The window size.
+     * @return true if the request is admitted.
+     */
+    public boolean tryAcquire(long now, long windowSizeMillis) {
+        return tryAcquire(now, windowSizeMillis, 1) == 0;
+    }
+
+    /**
+     * Drops timestamps that left the window, then records the requests if there is room for all of them.
+     *
+     * @param now              The current tick, in milliseconds.
+     * @param windowSizeMillis The window size.
+     * @param permits          The number of requests, at most the limit.
+     * @return 0 if the requests are admitted, otherwise the milliseconds until enough old requests leave the window.
+     */
+    public long tryAcquire(long now, long windowSizeMillis, int permits) {
+        evictBefore(now - windowSizeMillis);
+        int overflow = size + permits - timestamps.length;
+        if (overflow > 0) {
+            // Room opens when the overflow-th oldest request leaves the window
+            int index = head + overflow - 1;
+            long leaving = timestamps[index < timestamps.length ? index : index - timestamps.length];
+            return Math.max(1, leaving + windowSizeMillis - now);
+        }
+        for (int i = 0; i < permits; i++) {
+            int tail = head + size;
+            timestamps[tail < timestamps.length ? tail : tail - timestamps.length] = now;
+            size++;
+        }
+        return 0;
+    }
+
+    /**
+     * @return true if the newest request left the window, so the log behaves like a missing one.
+     */
+    public boolean isIdle(long now, long windowSizeMillis) {
+        if (size == 0) {
+            return true;
+        }
+        int newest = head + size - 1;
+        return timestamps[newest < timestamps.length ? newest : newest - timestamps.length] <= now - windowSizeMillis;
+    }
+
+    public boolean isRetired() {
+        return retired;
+    }
+
+    public void retire() {
+        this.retired = true;
+    }
+
+    private void evictBefore(long windowStart) {
+        while (size > 0 && timestamps[head] <= windowStart) {
+            head = head + 1 == timestamps.length ? 0 : head + 1;
+            size--;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.ratelimiter.slidingwindow.constants;
+
+/**
+ * How the in-memory sliding window keeps per-key state.
+ */
+public enum SlidingWindowInMemoryMode {
+    /**
+     * Exact log: a ring buffer of request timestamps per key, sized to the limit.
+     * Memory per key grows with the limit.
+     */
+    LOG,
+    /**
+     * Approximate window built from fixed sub-buckets, with the oldest bucket weighted by its overlap
+     * with the sliding window. Memory per key depends only on the number of sub-buckets.
+     */
+    COUNTER
+}
@@ -0,0 +1,21 @@
+package com.ratelimiter.slidingwindow.constants;
+
+/**
+ * How the sliding window is evaluated against Redis.
+ */
+public enum SlidingWindowMode {
+    /**
+     * Sorted-set log maintained with separate ZREMRANGEBYSCORE, ZCARD, ZADD and EXPIRE calls.
+     */
+    LOG,
+    /**
+     * Sorted-set log maintained by a single Lua script: one round trip, evaluated atomically.
+     */
+    LOG_SCRIPT,
+    /**
+     * Approximate sliding window built from two fixed-window counters per key (current and previous),
+     * with the previous window weighted by its overlap with the sliding window.
+     * Uses O(1) Redis memory per key regardless of the limit.
+     */
+    COUNTER
+}
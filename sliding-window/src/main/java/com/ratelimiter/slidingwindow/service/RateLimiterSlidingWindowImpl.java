@@ -1,16 +1,157 @@
 package com.ratelimiter.slidingwindow.service;
 
 import com.ratelimiter.common.constants.RedisServerMode;
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
+import com.ratelimiter.common.models.KeySharding;
+import com.ratelimiter.common.models.RateLimitPolicy;
 import com.ratelimiter.common.models.RedisClient;
+import com.ratelimiter.common.models.RedisKeyCodec;
+import com.ratelimiter.common.models.RedisScript;
+import com.ratelimiter.common.models.RequestCoalescer;
+import com.ratelimiter.common.resilience.RedisFailover;
+import com.ratelimiter.common.waiting.PermitWaiters;
 import com.ratelimiter.slidingwindow.configs.RateLimiterSlidingWindow;
+import com.ratelimiter.slidingwindow.configs.RateLimiterSlidingWindowInMemory;
+import com.ratelimiter.slidingwindow.constants.SlidingWindowInMemoryMode;
+import com.ratelimiter.slidingwindow.constants.SlidingWindowMode;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Response;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * Implementation of sliding window rate limiting using Redis.
+ * Call {@link #close()} to stop the cleanup thread of the default failover limiter.
  */
-public class RateLimiterSlidingWindowImpl {
+public class RateLimiterSlidingWindowImpl implements AutoCloseable {
+    private static final byte[] KEY_PREFIX = RedisKeyCodec.prefix("rateLimit:");
+
+    /**
+     * KEYS[1] = log key; ARGV = now (ms), window size (ms), limit, one member per requested permit.
+     * Trims, counts, adds and expires in one atomic step; returns the number of members admitted.
+     */
+    private static final RedisScript SLIDING_LOG_SCRIPT = new RedisScript(
+            "local now = tonumber(ARGV[1])\n" +
+            "local window = tonumber(ARGV[2])\n" +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[1], 0, now - window)\n" +
+            "local admitted = math.min(#ARGV - 3, tonumber(ARGV[3]) - redis.call('ZCARD', KEYS[1]))\n" +
+            "if admitted <= 0 then\n" +
+            "  return 0\n" +
+            "end\n" +
+            "for i = 1, admitted do\n" +
+            "  redis.call('ZADD', KEYS[1], now, ARGV[3 + i])\n" +
+            "end\n" +
+            "redis.call('PEXPIRE', KEYS[1], window)\n" +
+            "return admitted");
+
+    /**
+     * KEYS[1] = current window counter, KEYS[2] = previous window counter;
+     * ARGV = milliseconds elapsed in the current window, window size (ms), limit, requested permits.
+     * Returns the number of permits admitted.
+     */
+    private static final RedisScript SLIDING_COUNTER_SCRIPT = new RedisScript(
+            "local elapsed = tonumber(ARGV[1])\n" +
+            "local window = tonumber(ARGV[2])\n" +
+            "local current = tonumber(redis.call('GET', KEYS[1]) or '0')\n" +
+            "local previous = tonumber(redis.call('GET', KEYS[2]) or '0')\n" +
+            "local weighted = previous * (window - elapsed) / window + current\n" +
+            "local admitted = math.min(tonumber(ARGV[4]), math.ceil(tonumber(ARGV[3]) - weighted))\n" +
+            "if admitted <= 0 then\n" +
+            "  return 0\n" +
+            "end\n" +
+            "if redis.call('INCRBY', KEYS[1], admitted) == admitted then\n" +
+            "  redis.call('PEXPIRE', KEYS[1], window * 2)\n" +
+            "end\n" +
+            "return admitted");
+
+    /**
+     * Same keys and arguments as {@link #SLIDING_LOG_SCRIPT}, but admits all members or none.
+     * Returns 0 if admitted, otherwise the milliseconds until enough members leave the window.
+     */
+    private static final RedisScript ACQUIRE_LOG_SCRIPT = new RedisScript(
+            "local now = tonumber(ARGV[1])\n" +
+            "local window = tonumber(ARGV[2])\n" +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[1], 0, now - window)\n" +
+            "local overflow = redis.call('ZCARD', KEYS[1]) + #ARGV - 3 - tonumber(ARGV[3])\n" +
+            "if overflow > 0 then\n" +
+            "  local leaving = redis.call('ZRANGE', KEYS[1], overflow - 1, overflow - 1, 'WITHSCORES')\n" +
+            "  return math.max(1, tonumber(leaving[2]) + window - now)\n" +
+            "end\n" +
+            "for i = 4, #ARGV do\n" +
+            "  redis.call('ZADD', KEYS[1], now, ARGV[i])\n" +
+            "end\n" +
+            "redis.call('PEXPIRE', KEYS[1], window)\n" +
+            "return 0");
+
+    /**
+     * Same keys and arguments as {@link #SLIDING_COUNTER_SCRIPT}, but admits all permits or none.
+     * Returns 0 if admitted, otherwise the milliseconds until the previous window's weight leaves room,
+     * or until the window boundary if only the current window's count can free it.
+     */
+    private static final RedisScript ACQUIRE_COUNTER_SCRIPT = new RedisScript(
+            "local elapsed = tonumber(ARGV[1])\n" +
+            "local window = tonumber(ARGV[2])\n" +
+            "local current = tonumber(redis.call('GET', KEYS[1]) or '0')\n" +
+            "local previous = tonumber(redis.call('GET', KEYS[2]) or '0')\n" +
+            "local permits = tonumber(ARGV[4])\n" +
+            "local room = tonumber(ARGV[3]) - permits + 1 - current\n" +
+            "if previous * (window - elapsed) / window >= room then\n" +
+            "  if room <= 0 or previous == 0 then\n" +
+            "    return window - elapsed\n" +
+            "  end\n" +
+            "  return math.max(1, math.floor(window - elapsed - room * window / previous) + 1)\n" +
+            "end\n" +
+            "if redis.call('INCRBY', KEYS[1], permits) == permits then\n" +
+            "  redis.call('PEXPIRE', KEYS[1], window * 2)\n" +
+            "end\n" +
+            "return 0");
+
+    /**
+     * KEYS = current and previous window counter of each limit, in pairs; ARGV = cost, then for each limit
+     * the milliseconds elapsed in its current window, its window size (ms) and its limit.
+     * Counts the cost in every current window only if the weighted count of all limits leaves room;
+     * returns 0 if counted, otherwise the 1-based position of the first limit that is exceeded.
+     */
+    private static final RedisScript POLICY_COUNTER_SCRIPT = new RedisScript(
+            "local cost = tonumber(ARGV[1])\n" +
+            "for i = 1, #KEYS / 2 do\n" +
+            "  local elapsed = tonumber(ARGV[3 * i - 1])\n" +
+            "  local window = tonumber(ARGV[3 * i])\n" +
+            "  local current = tonumber(redis.call('GET', KEYS[2 * i - 1]) or '0')\n" +
+            "  local previous = tonumber(redis.call('GET', KEYS[2 * i]) or '0')\n" +
+            "  if previous * (window - elapsed) / window + current + cost - 1 >= tonumber(ARGV[3 * i + 1]) then\n" +
+            "    return i\n" +
+            "  end\n" +
+            "end\n" +
+            "for i = 1, #KEYS / 2 do\n" +
+            "  if redis.call('INCRBY', KEYS[2 * i - 1], cost) == cost then\n" +
+            "    redis.call('PEXPIRE', KEYS[2 * i - 1], tonumber(ARGV[3 * i]) * 2)\n" +
+            "  end\n" +
+            "end\n" +
+            "return 0");
+
     private final RateLimiterSlidingWindow rateLimiterSlidingWindow;
+    // Distinguishes members written by different limiter instances, in this process or another, that share
+    // a millisecond; each instance numbers its own members, so the id must not be shared between instances
+    private final long instanceId = ThreadLocalRandom.current().nextLong();
+    private final AtomicLong memberSequence = new AtomicLong();
+    private final RequestCoalescer coalescer;
+    private final RedisFailover.LocalRateLimiter fallback;
+    // The default in-memory fallback, stopped on close; null if none or if the failover supplies its own
+    private RateLimiterSlidingWindowInMemory fallbackWindow;
+    private final PermitWaiters waiters = new PermitWaiters();
 
     /**
      * Constructor to initialize the RateLimiterSlidingWindow implementation.
@@ -20,6 +161,70 @@ public class RateLimiterSlidingWindowImpl {
 
     public RateLimiterSlidingWindowImpl(RateLimiterSlidingWindow rateLimiterSlidingWindow) {
         this.rateLimiterSlidingWindow = rateLimiterSlidingWindow;
+        this.coalescer = new RequestCoalescer(this::admit, rateLimiterSlidingWindow.getAsyncExecutor());
+        RedisFailover failover = rateLimiterSlidingWindow.getFailover();
+        this.fallback = failover != null ? createFallback(failover) : null;
+        rateLimiterSlidingWindow.getRedisClient().preload(SLIDING_LOG_SCRIPT, SLIDING_COUNTER_SCRIPT,
+                ACQUIRE_LOG_SCRIPT, ACQUIRE_COUNTER_SCRIPT, POLICY_COUNTER_SCRIPT);
+    }
+
+    /**
+     * Creates the local limiter used while Redis is unavailable: the configured factory if any,
+     * otherwise an in-memory sliding window counter with the same window size.
+     */
+    private RedisFailover.LocalRateLimiter createFallback(RedisFailover failover) {
+        int localLimit = failover.localLimit(rateLimiterSlidingWindow.getLimit());
+        long windowMillis = (long) rateLimiterSlidingWindow.getWindowSize() * rateLimiterSlidingWindow.getTimeUnit().getMilliValue();
+        if (failover.getFallbackFactory() != null) {
+            return failover.getFallbackFactory().create(localLimit, windowMillis);
+        }
+        ScheduledExecutorService cleanup = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limiter-fallback-cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fallbackWindow = new RateLimiterSlidingWindowInMemory
+                .RateLimiterSlidingWindowInMemoryBuilder()
+                .timeUnit(rateLimiterSlidingWindow.getTimeUnit())
+                .windowSize(rateLimiterSlidingWindow.getWindowSize())
+                .limit(localLimit)
+                .mode(SlidingWindowInMemoryMode.COUNTER)
+                .clock(rateLimiterSlidingWindow.getClock())
+                .executorService(cleanup)
+                .build();
+        RateLimiterSlidingWindowInMemoryImpl window = new RateLimiterSlidingWindowInMemoryImpl(fallbackWindow);
+        // Policy checks keep the interface's default and are denied: there is no in-memory sliding
+        // limiter for several windows at once
+        return new RedisFailover.LocalRateLimiter() {
+            @Override
+            public boolean isAllowed(String key) {
+                return window.isAllowed(key);
+            }
+
+            @Override
+            public boolean isAllowed(String key, int cost) {
+                return window.isAllowed(key, cost);
+            }
+        };
+    }
+
+    /**
+     * Stops the cleanup thread of the default failover limiter, if one was created.
+     * The Redis client and the async executor are left to their owners.
+     */
+    @Override
+    public void close() {
+        if (fallbackWindow != null) {
+            fallbackWindow.shutdown();
+        }
+    }
+
+    /**
+     * Runs a Redis call under the configured failover, or directly if failover is disabled.
+     */
+    private <T> T callRedis(Supplier<T> redisCall, Supplier<T> fallbackCall) {
+        RedisFailover failover = rateLimiterSlidingWindow.getFailover();
+        return failover == null ? redisCall.get() : failover.execute(redisCall, fallbackCall);
     }
 
     /**
@@ -31,17 +236,37 @@ public class RateLimiterSlidingWindowImpl {
      */
 
     public boolean isAllowed(RateLimiterSlidingWindow rateLimiterSlidingWindow, String rateLimitBy) {
-        final int limit = rateLimiterSlidingWindow.getLimit();
+        RateLimiterMetrics metrics = rateLimiterSlidingWindow.getRedisClient().getMetrics();
+        if (!metrics.isEnabled()) {
+            return callRedis(() -> evaluate(rateLimiterSlidingWindow, rateLimitBy), () -> fallback.isAllowed(rateLimitBy));
+        }
+        long start = System.nanoTime();
+        boolean allowed = callRedis(() -> evaluate(rateLimiterSlidingWindow, rateLimitBy), () -> fallback.isAllowed(rateLimitBy));
+        metrics.recordDecision(rateLimiterSlidingWindow.getMetricsName(), allowed, System.nanoTime() - start);
+        return allowed;
+    }
+
+    private boolean evaluate(RateLimiterSlidingWindow rateLimiterSlidingWindow, String rateLimitBy) {
+        Target target = target(rateLimiterSlidingWindow, rateLimitBy);
+        final int limit = target.limit();
         final int windowSizeMillis = rateLimiterSlidingWindow.getWindowSize() * rateLimiterSlidingWindow.getTimeUnit().getMilliValue();
 
-        long currentTime = System.currentTimeMillis(); // Current time in milliseconds
+        long currentTime = rateLimiterSlidingWindow.getClock().currentTimeMillis(); // Current time in milliseconds
         long windowStartTime = currentTime - windowSizeMillis;
 
         RedisClient redisClient = rateLimiterSlidingWindow.getRedisClient();
-        String key = "rateLimit:" + rateLimitBy;
+
+        if (rateLimiterSlidingWindow.getMode() != SlidingWindowMode.LOG) {
+            ScriptCall call = scriptCall(rateLimiterSlidingWindow, target, currentTime, 1, false);
+            return Long.valueOf(1L).equals(call.script().eval(redisClient, call.keys(), call.args()));
+        }
+
+        byte[] key = target.logKey();
+        byte[] member = nextMember(redisClient.getKeyCodec(), currentTime);
 
         if (redisClient.getRedisServerMode() == RedisServerMode.CLUSTER) {
             JedisCluster jedisCluster = redisClient.getJedisClusterClient();
+            long start = redisClient.startTimer();
 
             // Remove outdated requests
             jedisCluster.zremrangeByScore(key, 0, windowStartTime);
@@ -50,15 +275,19 @@ public class RateLimiterSlidingWindowImpl {
             long requestCount = jedisCluster.zcard(key);
             if (requestCount < limit) {
                 // Add the new request
-                jedisCluster.zadd(key, currentTime, String.valueOf(currentTime));
+                jedisCluster.zadd(key, currentTime, member);
                 // Set expiry in seconds
                 jedisCluster.expire(key, windowSizeMillis / 1000);
+                redisClient.recordRedisCommand(start);
                 return true;
             }
+            redisClient.recordRedisCommand(start);
             return false;
 
         } else { // For Standalone mode
-            try (Jedis jedisClient = redisClient.getJedisPool().getResource()) {
+            try (Jedis jedisClient = redisClient.getResource()) {
+                long start = redisClient.startTimer();
+
                 // Remove outdated requests
                 jedisClient.zremrangeByScore(key, 0, windowStartTime);
 
@@ -66,13 +295,362 @@ public class RateLimiterSlidingWindowImpl {
                 long requestCount = jedisClient.zcard(key);
                 if (requestCount < limit) {
                     // Add the new request
-                    jedisClient.zadd(key, currentTime, String.valueOf(currentTime));
+                    jedisClient.zadd(key, currentTime, member);
                     // Set expiry in seconds
                     jedisClient.expire(key, windowSizeMillis / 1000);
+                    redisClient.recordRedisCommand(start);
                     return true;
                 }
+                redisClient.recordRedisCommand(start);
                 return false;
             }
         }
     }
+
+    /**
+     * Checks if a request with the given cost is allowed, counting the whole cost or nothing.
+     *
+     * @param rateLimitBy The key or identifier for the request.
+     * @param cost        The units of the limit the request uses; at most the sub-key's limit for sharded keys.
+     * @return true if the request is allowed, false otherwise (always false if the cost exceeds the limit).
+     */
+    public boolean isAllowed(String rateLimitBy, int cost) {
+        if (cost <= 0) {
+            throw new IllegalArgumentException("Cost must be greater than 0");
+        }
+        return cost <= rateLimiterSlidingWindow.getLimit() && tryAcquire(rateLimitBy, cost) == 0;
+    }
+
+    /**
+     * Checks a request with the given cost against every limit of the policy in one script call.
+     * Each limit is approximated with a current and a previous window counter, as in
+     * {@link SlidingWindowMode#COUNTER}, whatever the configured mode, since logs cannot carry costs cheaply.
+     * The cost is counted in all windows or, if any limit would be exceeded, in none of them.
+     * The policy replaces the configured limit and window for this call; key sharding does not apply.
+     * While Redis is unavailable the failover's local limiter decides through its policy check, which
+     * for the default in-memory fallback denies without consuming anything.
+     *
+     * @param rateLimitBy The key or identifier for the request.
+     * @param cost        The units of each limit the request uses.
+     * @param policy      The limits to enforce.
+     * @return true if the request is allowed, false otherwise.
+     */
+    public boolean isAllowed(String rateLimitBy, int cost, RateLimitPolicy policy) {
+        if (cost <= 0) {
+            throw new IllegalArgumentException("Cost must be greater than 0");
+        }
+        RateLimiterMetrics metrics = rateLimiterSlidingWindow.getRedisClient().getMetrics();
+        if (!metrics.isEnabled()) {
+            return callRedis(() -> evaluate(rateLimitBy, cost, policy), () -> fallback.isAllowed(rateLimitBy, cost, policy));
+        }
+        long start = System.nanoTime();
+        boolean allowed = callRedis(() -> evaluate(rateLimitBy, cost, policy), () -> fallback.isAllowed(rateLimitBy, cost, policy));
+        metrics.recordDecision(rateLimiterSlidingWindow.getMetricsName(), allowed, System.nanoTime() - start);
+        return allowed;
+    }
+
+    private boolean evaluate(String rateLimitBy, int cost, RateLimitPolicy policy) {
+        long currentTime = rateLimiterSlidingWindow.getClock().currentTimeMillis();
+        List<RateLimitPolicy.Limit> limits = policy.getLimits();
+        RedisKeyCodec keyCodec = rateLimiterSlidingWindow.getRedisClient().getKeyCodec();
+        List<byte[]> keys = new ArrayList<>(2 * limits.size());
+        List<byte[]> args = new ArrayList<>(1 + 3 * limits.size());
+        args.add(RedisKeyCodec.arg(cost));
+        for (RateLimitPolicy.Limit limit : limits) {
+            long windowSizeMillis = limit.getWindowSizeMillis();
+            long currentWindow = currentTime / windowSizeMillis;
+            // The hash tag keeps every counter of the key in one cluster slot so one script can update them
+            keys.add(keyCodec.key(KEY_PREFIX, rateLimitBy, true, windowSizeMillis, currentWindow));
+            keys.add(keyCodec.key(KEY_PREFIX, rateLimitBy, true, windowSizeMillis, currentWindow - 1));
+            args.add(RedisKeyCodec.arg(currentTime % windowSizeMillis));
+            args.add(RedisKeyCodec.arg(windowSizeMillis));
+            args.add(RedisKeyCodec.arg(limit.getLimit()));
+        }
+        return Long.valueOf(0L).equals(POLICY_COUNTER_SCRIPT.eval(rateLimiterSlidingWindow.getRedisClient(), keys, args));
+    }
+
+    /**
+     * Checks several keys for one inbound request, sending every check in one pipeline
+     * (one round trip per Redis node; cluster nodes are contacted in parallel).
+     * Each key is counted independently, so allowed keys consume quota even if another key is denied.
+     *
+     * @param rateLimitBy The keys or identifiers for the request.
+     * @return The decision for each distinct key, in iteration order.
+     */
+    public Map<String, Boolean> isAllowedBatch(Collection<String> rateLimitBy) {
+        RateLimiterMetrics metrics = rateLimiterSlidingWindow.getRedisClient().getMetrics();
+        if (!metrics.isEnabled()) {
+            return decideBatch(rateLimitBy);
+        }
+        long start = System.nanoTime();
+        Map<String, Boolean> decisions = decideBatch(rateLimitBy);
+        // Every key of the batch waited for the whole batch
+        long latencyNanos = System.nanoTime() - start;
+        String metricsName = rateLimiterSlidingWindow.getMetricsName();
+        decisions.values().forEach(allowed -> metrics.recordDecision(metricsName, allowed, latencyNanos));
+        return decisions;
+    }
+
+    private Map<String, Boolean> decideBatch(Collection<String> rateLimitBy) {
+        return callRedis(() -> evaluateBatch(rateLimitBy), () -> {
+            Map<String, Boolean> decisions = new LinkedHashMap<>();
+            for (String key : rateLimitBy) {
+                decisions.computeIfAbsent(key, fallback::isAllowed);
+            }
+            return decisions;
+        });
+    }
+
+    private Map<String, Boolean> evaluateBatch(Collection<String> rateLimitBy) {
+        RateLimiterSlidingWindow config = this.rateLimiterSlidingWindow;
+        RedisClient redisClient = config.getRedisClient();
+        long currentTime = config.getClock().currentTimeMillis();
+        Map<String, Boolean> decisions = new LinkedHashMap<>();
+
+        if (config.getMode() != SlidingWindowMode.LOG) {
+            Map<String, ScriptCall> calls = new LinkedHashMap<>();
+            for (String key : rateLimitBy) {
+                if (!calls.containsKey(key)) {
+                    calls.put(key, scriptCall(config, target(config, key), currentTime, 1, false));
+                }
+            }
+            Map<String, Response<Object>> responses = new LinkedHashMap<>();
+            redisClient.pipelined(pipeline -> calls.forEach((key, call) ->
+                    responses.put(key, call.script().evalsha(pipeline, call.keys(), call.args()))));
+            calls.forEach((key, call) -> decisions.put(key, Long.valueOf(1L).equals(
+                    call.script().resolve(responses.get(key), redisClient, call.keys(), call.args()))));
+            return decisions;
+        }
+
+        // The log mode needs each count before deciding, so it takes two pipelined round trips
+        final int windowSizeMillis = config.getWindowSize() * config.getTimeUnit().getMilliValue();
+        long windowStartTime = currentTime - windowSizeMillis;
+        Map<String, Target> targets = new LinkedHashMap<>();
+        for (String key : rateLimitBy) {
+            if (!targets.containsKey(key)) {
+                targets.put(key, target(config, key));
+            }
+        }
+        Map<String, Response<Long>> counts = new LinkedHashMap<>();
+        redisClient.pipelined(pipeline -> targets.forEach((key, target) -> {
+            pipeline.zremrangeByScore(target.logKey(), 0, windowStartTime);
+            counts.put(key, pipeline.zcard(target.logKey()));
+        }));
+        counts.forEach((key, count) -> decisions.put(key, count.get() < targets.get(key).limit()));
+        redisClient.pipelined(pipeline -> decisions.forEach((key, allowed) -> {
+            if (allowed) {
+                pipeline.zadd(targets.get(key).logKey(), currentTime, nextMember(redisClient.getKeyCodec(), currentTime));
+                pipeline.expire(targets.get(key).logKey(), windowSizeMillis / 1000);
+            }
+        }));
+        return decisions;
+    }
+
+    /**
+     * Checks several keys for one inbound request in one pipeline, see {@link #isAllowedBatch(Collection)}.
+     *
+     * @param rateLimitBy The keys or identifiers for the request.
+     * @return true if every key is allowed, false otherwise.
+     */
+    public boolean isAllowedAll(Collection<String> rateLimitBy) {
+        return !isAllowedBatch(rateLimitBy).containsValue(false);
+    }
+
+    /**
+     * Checks if a request is allowed without blocking the caller. The check runs on the configured
+     * async executor, and checks for the same key that are in flight together share one Redis operation.
+     *
+     * @param rateLimitBy The key or identifier for the request.
+     * @return A future completed with true if the request is allowed, false otherwise.
+     */
+    public CompletableFuture<Boolean> isAllowedAsync(String rateLimitBy) {
+        RateLimiterMetrics metrics = rateLimiterSlidingWindow.getRedisClient().getMetrics();
+        if (!metrics.isEnabled()) {
+            return coalescer.submit(rateLimitBy);
+        }
+        long start = System.nanoTime();
+        return coalescer.submit(rateLimitBy).whenComplete((allowed, failure) -> {
+            if (allowed != null) {
+                metrics.recordDecision(rateLimiterSlidingWindow.getMetricsName(), allowed, System.nanoTime() - start);
+            }
+        });
+    }
+
+    /**
+     * Takes the given number of permits if they all fit in the window, without waiting. The decision and
+     * the wait come back from one script call in every mode; the plain log mode uses the log script here.
+     *
+     * @param rateLimitBy The key or identifier for the request.
+     * @param permits     The number of permits, at most the limit (of one sub-key for sharded keys).
+     * @return 0 if the permits were taken, otherwise the milliseconds until they may fit.
+     */
+    public long tryAcquire(String rateLimitBy, int permits) {
+        RateLimiterSlidingWindow config = this.rateLimiterSlidingWindow;
+        checkPermits(config, rateLimitBy, permits);
+        Target target = target(config, rateLimitBy, permits);
+        RateLimiterMetrics metrics = config.getRedisClient().getMetrics();
+        if (!metrics.isEnabled()) {
+            return callRedis(() -> reserve(config, target, permits), () -> reserveLocally(rateLimitBy, permits));
+        }
+        long start = System.nanoTime();
+        long wait = callRedis(() -> reserve(config, target, permits), () -> reserveLocally(rateLimitBy, permits));
+        metrics.recordDecision(config.getMetricsName(), wait == 0, System.nanoTime() - start);
+        return wait;
+    }
+
+    /**
+     * Takes the given number of permits, waiting for room in the window if needed. Callers waiting on the
+     * same key are served in FIFO order, and only the first of them calls Redis, once per computed wait,
+     * so a backlog sends almost no denied checks to Redis.
+     *
+     * @param rateLimitBy The key or identifier for the request.
+     * @param permits     The number of permits, at most the limit (of one sub-key for sharded keys).
+     * @param timeout     The longest time to wait.
+     * @return true if the permits were taken, false if they would not be available within the timeout.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean acquire(String rateLimitBy, int permits, Duration timeout) throws InterruptedException {
+        checkPermits(rateLimiterSlidingWindow, rateLimitBy, permits);
+        return waiters.acquire(rateLimitBy, timeout, () -> tryAcquire(rateLimitBy, permits));
+    }
+
+    /**
+     * Validates against the key's whole limit and, for sharded keys, against the largest share,
+     * whichever sub-key the check would pick.
+     */
+    private void checkPermits(RateLimiterSlidingWindow config, String rateLimitBy, int permits) {
+        if (permits <= 0 || permits > config.getLimit()) {
+            throw new IllegalArgumentException("Permits must be between 1 and the limit");
+        }
+        KeySharding keySharding = config.getKeySharding();
+        // Shard 0 always has the largest share
+        if (keySharding != null && keySharding.isSharded(rateLimitBy)
+                && permits > keySharding.shardLimit(config.getLimit(), 0)) {
+            throw new IllegalArgumentException("Permits must not exceed the share of one sub-key for sharded keys");
+        }
+    }
+
+    private long reserve(RateLimiterSlidingWindow config, Target target, int permits) {
+        ScriptCall call = scriptCall(config, target, config.getClock().currentTimeMillis(), permits, true);
+        return (Long) call.script().eval(config.getRedisClient(), call.keys(), call.args());
+    }
+
+    /**
+     * Takes all the permits from the local fallback limiter or none, which cannot tell how long a denial
+     * lasts; a denied caller is asked to wait the average spacing between permits.
+     */
+    private long reserveLocally(String rateLimitBy, int permits) {
+        if (fallback.isAllowed(rateLimitBy, permits)) {
+            return 0;
+        }
+        long windowSizeMillis = (long) rateLimiterSlidingWindow.getWindowSize()
+                * rateLimiterSlidingWindow.getTimeUnit().getMilliValue();
+        return Math.max(1, windowSizeMillis / rateLimiterSlidingWindow.getLimit());
+    }
+
+    /**
+     * Asks for several permits at once on behalf of coalesced checks.
+     *
+     * @return The number of permits admitted.
+     */
+    private long admit(String rateLimitBy, int permits) {
+        RateLimiterSlidingWindow config = this.rateLimiterSlidingWindow;
+        if (config.getMode() == SlidingWindowMode.LOG) {
+            // The plain log mode has no multi-permit form, so the checks run one by one;
+            // the decisions are recorded by isAllowedAsync, not per check
+            long admitted = 0;
+            for (int i = 0; i < permits
+                    && callRedis(() -> evaluate(config, rateLimitBy), () -> fallback.isAllowed(rateLimitBy)); i++) {
+                admitted++;
+            }
+            return admitted;
+        }
+        return callRedis(() -> {
+            ScriptCall call = scriptCall(config, target(config, rateLimitBy), config.getClock().currentTimeMillis(), permits, false);
+            Object result = call.script().eval(config.getRedisClient(), call.keys(), call.args());
+            return result instanceof Long admitted ? admitted : 0L;
+        }, () -> {
+            long admitted = 0;
+            for (int i = 0; i < permits && fallback.isAllowed(rateLimitBy); i++) {
+                admitted++;
+            }
+            return admitted;
+        });
+    }
+
+    /**
+     * Builds the script invocation for the script-based modes.
+     *
+     * @param allOrNothing true to use the scripts that admit every permit or none and return the wait.
+     */
+    private ScriptCall scriptCall(RateLimiterSlidingWindow config, Target target, long currentTime, int permits,
+                                  boolean allOrNothing) {
+        final int limit = target.limit();
+        final int windowSizeMillis = config.getWindowSize() * config.getTimeUnit().getMilliValue();
+        RedisKeyCodec keyCodec = config.getRedisClient().getKeyCodec();
+
+        if (config.getMode() == SlidingWindowMode.COUNTER) {
+            long currentWindow = currentTime / windowSizeMillis;
+            long elapsedInWindow = currentTime % windowSizeMillis;
+
+            // The hash tag keeps both counters in the same cluster slot so one script can read them
+            return new ScriptCall(allOrNothing ? ACQUIRE_COUNTER_SCRIPT : SLIDING_COUNTER_SCRIPT,
+                    List.of(keyCodec.key(KEY_PREFIX, target.counterTag(), true, currentWindow),
+                            keyCodec.key(KEY_PREFIX, target.counterTag(), true, currentWindow - 1)),
+                    List.of(RedisKeyCodec.arg(elapsedInWindow), RedisKeyCodec.arg(windowSizeMillis), RedisKeyCodec.arg(limit),
+                            RedisKeyCodec.arg(permits)));
+        }
+        List<byte[]> args = new ArrayList<>(3 + permits);
+        args.add(RedisKeyCodec.arg(currentTime));
+        args.add(RedisKeyCodec.arg(windowSizeMillis));
+        args.add(RedisKeyCodec.arg(limit));
+        for (int i = 0; i < permits; i++) {
+            args.add(nextMember(keyCodec, currentTime));
+        }
+        return new ScriptCall(allOrNothing ? ACQUIRE_LOG_SCRIPT : SLIDING_LOG_SCRIPT, List.of(target.logKey()), args);
+    }
+
+    /**
+     * Picks the Redis state a check runs against: the key's own, or one sub-key of a sharded hot key.
+     */
+    private Target target(RateLimiterSlidingWindow config, String rateLimitBy) {
+        return target(config, rateLimitBy, 1);
+    }
+
+    /**
+     * Picks the Redis state for a check of several permits; a sharded key is routed to a sub-key whose
+     * share can hold them, which {@link #checkPermits} guarantees exists.
+     */
+    private Target target(RateLimiterSlidingWindow config, String rateLimitBy, int permits) {
+        KeySharding keySharding = config.getKeySharding();
+        RedisKeyCodec keyCodec = config.getRedisClient().getKeyCodec();
+        if (keySharding == null || !keySharding.isSharded(rateLimitBy)) {
+            return new Target(keyCodec.key(KEY_PREFIX, rateLimitBy, false), rateLimitBy, config.getLimit());
+        }
+        int shard = keySharding.selectShard(rateLimitBy);
+        if (keySharding.shardLimit(config.getLimit(), shard) < permits) {
+            // Only the first limit % shards sub-keys have the larger share
+            shard %= config.getLimit() % keySharding.getShards();
+        }
+        String tag = keySharding.tag(rateLimitBy, shard);
+        return new Target(keyCodec.key(KEY_PREFIX, tag, true), tag, keySharding.shardLimit(config.getLimit(), shard));
+    }
+
+    /**
+     * @param logKey     The sorted-set key used by the log modes.
+     * @param counterTag The hash tag of the counter keys used by the counter mode.
+     * @param limit      The limit enforced on this state.
+     */
+    private record Target(byte[] logKey, String counterTag, int limit) {
+    }
+
+    private record ScriptCall(RedisScript script, List<byte[]> keys, List<byte[]> args) {
+    }
+
+    /**
+     * Builds a sorted-set member that is unique even for requests arriving in the same millisecond.
+     */
+    private byte[] nextMember(RedisKeyCodec keyCodec, long currentTime) {
+        return keyCodec.member(currentTime, instanceId, memberSequence.incrementAndGet());
+    }
 }
@@ -0,0 +1,137 @@
+package com.ratelimiter.slidingwindow.service;
+
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
+import com.ratelimiter.common.waiting.PermitWaiters;
+import com.ratelimiter.slidingwindow.configs.RateLimiterSlidingWindowInMemory;
+import com.ratelimiter.slidingwindow.configs.SlidingWindowCounter;
+import com.ratelimiter.slidingwindow.configs.SlidingWindowLog;
+import com.ratelimiter.slidingwindow.constants.SlidingWindowInMemoryMode;
+
+import java.time.Duration;
+
+/**
+ * Implementation of sliding window rate limiting using in-memory storage.
+ * <p>
+ * Once a key exists, a check locks only that key's state and allocates nothing.
+ */
+public class RateLimiterSlidingWindowInMemoryImpl {
+
+    private final RateLimiterSlidingWindowInMemory slidingWindowInMemory;
+    private final PermitWaiters waiters = new PermitWaiters();
+
+    public RateLimiterSlidingWindowInMemoryImpl(RateLimiterSlidingWindowInMemory slidingWindowInMemory) {
+        this.slidingWindowInMemory = slidingWindowInMemory;
+    }
+
+    /**
+     * Checks if a request is allowed for a given key under the sliding window algorithm.
+     *
+     * @param key The unique identifier for the request.
+     * @return true if the request is allowed, false otherwise.
+     */
+    public boolean isAllowed(String key) {
+        RateLimiterMetrics metrics = slidingWindowInMemory.getMetrics();
+        if (!metrics.isEnabled()) {
+            return reserve(key, 1) == 0;
+        }
+        long start = System.nanoTime();
+        boolean allowed = reserve(key, 1) == 0;
+        metrics.recordDecision(slidingWindowInMemory.getMetricsName(), allowed, System.nanoTime() - start);
+        return allowed;
+    }
+
+    /**
+     * Checks if a request with the given cost is allowed, counting the whole cost or nothing.
+     *
+     * @param key  The unique identifier for the request.
+     * @param cost The units of the limit the request uses.
+     * @return true if the request is allowed, false otherwise (always false if the cost exceeds the limit).
+     */
+    public boolean isAllowed(String key, int cost) {
+        if (cost <= 0) {
+            throw new IllegalArgumentException("Cost must be greater than 0");
+        }
+        return cost <= slidingWindowInMemory.getLimit() && tryAcquire(key, cost) == 0;
+    }
+
+    /**
+     * Takes the given number of permits if they all fit in the window, without waiting.
+     *
+     * @param key     The unique identifier for the request.
+     * @param permits The number of permits, at most the limit.
+     * @return 0 if the permits were taken, otherwise the milliseconds until enough requests leave the window.
+     */
+    public long tryAcquire(String key, int permits) {
+        checkPermits(permits);
+        RateLimiterMetrics metrics = slidingWindowInMemory.getMetrics();
+        if (!metrics.isEnabled()) {
+            return reserve(key, permits);
+        }
+        long start = System.nanoTime();
+        long wait = reserve(key, permits);
+        metrics.recordDecision(slidingWindowInMemory.getMetricsName(), wait == 0, System.nanoTime() - start);
+        return wait;
+    }
+
+    /**
+     * Takes the given number of permits, waiting for earlier requests to leave the window if needed.
+     * Callers waiting on the same key are served in FIFO order, and only the first of them checks the
+     * window, when room is due to open.
+     *
+     * @param key     The unique identifier for the request.
+     * @param permits The number of permits, at most the limit.
+     * @param timeout The longest time to wait.
+     * @return true if the permits were taken, false if they would not be available within the timeout.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean acquire(String key, int permits, Duration timeout) throws InterruptedException {
+        checkPermits(permits);
+        return waiters.acquire(key, timeout, () -> tryAcquire(key, permits));
+    }
+
+    private void checkPermits(int permits) {
+        if (permits <= 0 || permits > slidingWindowInMemory.getLimit()) {
+            throw new IllegalArgumentException("Permits must be between 1 and the limit");
+        }
+    }
+
+    /**
+     * @return 0 if the permits were taken, otherwise the milliseconds until they may fit.
+     */
+    private long reserve(String key, int permits) {
+        if (slidingWindowInMemory.getMode() == SlidingWindowInMemoryMode.LOG) {
+            while (true) {
+                SlidingWindowLog log = slidingWindowInMemory.getLogs().get(key);
+                if (log == null) {
+                    log = slidingWindowInMemory.getLogs().computeIfAbsent(key,
+                            k -> new SlidingWindowLog(slidingWindowInMemory.getLimit()));
+                }
+                synchronized (log) {
+                    if (log.isRetired()) {
+                        // Cleanup unlinked this log while we waited; look the key up again
+                        slidingWindowInMemory.getLogs().remove(key, log);
+                        continue;
+                    }
+                    return log.tryAcquire(slidingWindowInMemory.currentTick(), slidingWindowInMemory.getWindowSizeMillis(), permits);
+                }
+            }
+        }
+
+        while (true) {
+            SlidingWindowCounter counter = slidingWindowInMemory.getCounters().get(key);
+            if (counter == null) {
+                counter = slidingWindowInMemory.getCounters().computeIfAbsent(key, k -> new SlidingWindowCounter(
+                        slidingWindowInMemory.getSubBuckets(),
+                        slidingWindowInMemory.currentTick() / slidingWindowInMemory.getBucketMillis()));
+            }
+            synchronized (counter) {
+                if (counter.isRetired()) {
+                    slidingWindowInMemory.getCounters().remove(key, counter);
+                    continue;
+                }
+                return counter.tryAcquire(slidingWindowInMemory.currentTick(), slidingWindowInMemory.getBucketMillis(),
+                        slidingWindowInMemory.getLimit(), permits);
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.ratelimiter.tokenbucket.configs;
+
+import com.ratelimiter.common.clock.Clock;
+import com.ratelimiter.common.constants.TimeUnit;
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Configuration class for token bucket rate limiting using in-memory storage.
+ * <p>
+ * Each bucket is a single {@link AtomicLong} holding the last refill timestamp and the
+ * remaining tokens (see {@link TokenBucketState}). Refill is computed lazily on access,
+ * so no thread is needed to top the buckets up. The scheduled task only drops buckets
+ * that have refilled completely, since a full bucket behaves exactly like a missing one.
+ */
+public class RateLimiterTokenBucketInMemory {
+
+    public static final String METRICS_NAME = "token-bucket-in-memory";
+
+    private final int capacity;
+    private final int refillRate;
+    private final TimeUnit timeUnit;
+    private final Clock clock;
+    private final long epochMillis;
+    private final long fullRefillMillis;
+    private final Map<String, AtomicLong> buckets;
+    private final RateLimiterMetrics metrics;
+    private final String metricsName;
+    private final ScheduledExecutorService executorService;
+
+    private RateLimiterTokenBucketInMemory(Builder builder) {
+        this.capacity = builder.capacity;
+        this.refillRate = builder.refillRate;
+        this.timeUnit = builder.timeUnit;
+        this.clock = builder.clock;
+        this.epochMillis = clock.currentTimeMillis();
+        this.fullRefillMillis = Math.max(1L,
+                ((long) capacity * timeUnit.getMilliValue() + refillRate - 1) / refillRate);
+        this.executorService = builder.executorService != null
+                ? builder.executorService
+                : Executors.newScheduledThreadPool(1);
+        this.buckets = new ConcurrentHashMap<>();
+        this.metrics = builder.metrics;
+        this.metricsName = builder.metricsName;
+
+        // Start a periodic cleanup task for idle (full) buckets
+        this.executorService.scheduleAtFixedRate(
+                this::cleanupFullBuckets,
+                fullRefillMillis,
+                fullRefillMillis,
+                java.util.concurrent.TimeUnit.MILLISECONDS
+        );
+    }
+
+    public Map<String, AtomicLong> getBuckets() {
+        return buckets;
+    }
+
+    public RateLimiterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The name this limiter's measurements are recorded under.
+     */
+    public String getMetricsName() {
+        return metricsName;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getRefillRate() {
+        return refillRate;
+    }
+
+    public TimeUnit getTimeUnit() {
+        return timeUnit;
+    }
+
+    /**
+     * @return Milliseconds elapsed since this limiter was created, used as the bucket timestamp.
+     */
+    public long currentTick() {
+        return clock.currentTimeMillis() - epochMillis;
+    }
+
+    /**
+     * Applies the lazy refill to a packed bucket state.
+     *
+     * @param state The packed state read from the bucket.
+     * @param now   The current tick, see {@link #currentTick()}.
+     * @return The packed state after refilling up to {@code now}.
+     */
+    public long refill(long state, long now) {
+        long lastRefill = TokenBucketState.lastRefill(state);
+        long tokens = TokenBucketState.tokens(state);
+        long elapsed = now - lastRefill;
+        if (elapsed <= 0 || tokens >= capacity) {
+            return state;
+        }
+        if (elapsed >= fullRefillMillis) {
+            return TokenBucketState.pack(now, capacity);
+        }
+
+        long unitMillis = timeUnit.getMilliValue();
+        long added = elapsed * refillRate / unitMillis;
+        if (added == 0) {
+            return state;
+        }
+        if (tokens + added >= capacity) {
+            return TokenBucketState.pack(now, capacity);
+        }
+        // Only consume the time that produced whole tokens so the remainder carries over.
+        // Rounding up errs on the side of admitting slightly less, never more.
+        long consumed = (added * unitMillis + refillRate - 1) / refillRate;
+        return TokenBucketState.pack(lastRefill + consumed, tokens + added);
+    }
+
+    /**
+     * @param refilled The packed state after {@link #refill(long, long)}.
+     * @param missing  The number of tokens still needed.
+     * @param now      The current tick, see {@link #currentTick()}.
+     * @return The milliseconds until the refill adds {@code missing} tokens, at least 1.
+     */
+    public long millisUntilRefilled(long refilled, long missing, long now) {
+        // refill() adds floor(elapsed * refillRate / unitMillis) tokens, so invert that rounding up
+        long needed = (missing * timeUnit.getMilliValue() + refillRate - 1) / refillRate;
+        return Math.max(1, TokenBucketState.lastRefill(refilled) + needed - now);
+    }
+
+    private void cleanupFullBuckets() {
+        long start = System.nanoTime();
+        long now = currentTick();
+        int[] removed = new int[1];
+        buckets.forEach((key, bucket) -> {
+            long state = bucket.get();
+            if (state != TokenBucketState.RETIRED
+                    && TokenBucketState.tokens(refill(state, now)) >= capacity
+                    && bucket.compareAndSet(state, TokenBucketState.RETIRED)) {
+                buckets.remove(key, bucket);
+                removed[0]++;
+            }
+        });
+        if (metrics.isEnabled()) {
+            metrics.recordCleanup(metricsName, System.nanoTime() - start, removed[0]);
+            metrics.recordKeyCount(metricsName, buckets.size());
+        }
+    }
+
+    public void shutdown() {
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(5, java.util.concurrent.TimeUnit.SECONDS)) {
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+        }
+    }
+
+    public static class Builder {
+        private int capacity;
+        private int refillRate;
+        private TimeUnit timeUnit = TimeUnit.SECONDS;
+        private ScheduledExecutorService executorService;
+        private RateLimiterMetrics metrics = RateLimiterMetrics.NOOP;
+        private String metricsName = METRICS_NAME;
+        private Clock clock = Clock.SYSTEM;
+
+        public Builder withCapacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Sets how many tokens are added to a bucket per {@link #withTimeUnit(TimeUnit) time unit}.
+         */
+        public Builder withRefillRate(int refillRate) {
+            this.refillRate = refillRate;
+            return this;
+        }
+
+        public Builder withTimeUnit(TimeUnit timeUnit) {
+            this.timeUnit = timeUnit;
+            return this;
+        }
+
+        public Builder withExecutorService(ScheduledExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * Sets where decisions, key counts and cleanup passes are recorded. Defaults to {@link RateLimiterMetrics#NOOP}.
+         */
+        public Builder withMetrics(RateLimiterMetrics metrics) {
+            this.metrics = metrics != null ? metrics : RateLimiterMetrics.NOOP;
+            return this;
+        }
+
+        /**
+         * Sets the name measurements are recorded under, so several limiters sharing one metrics sink
+         * report separately. Defaults to {@link RateLimiterTokenBucketInMemory#METRICS_NAME}.
+         */
+        public Builder withMetricsName(String metricsName) {
+            this.metricsName = metricsName != null ? metricsName : METRICS_NAME;
+            return this;
+        }
+
+        /**
+         * Sets the time source for refills. Defaults to {@link Clock#SYSTEM}.
+         */
+        public Builder withClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public RateLimiterTokenBucketInMemory build() {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Capacity must be greater than 0");
+            }
+            if (capacity > TokenBucketState.MAX_TOKENS) {
+                throw new IllegalArgumentException("Capacity must not exceed " + TokenBucketState.MAX_TOKENS);
+            }
+            if (refillRate <= 0) {
+                throw new IllegalArgumentException("Refill rate must be greater than 0");
+            }
+            if (timeUnit == null) {
+                throw new IllegalArgumentException("TimeUnit must not be null");
+            }
+            if (clock == null) {
+                throw new IllegalArgumentException("Clock must not be null");
+            }
+            return new RateLimiterTokenBucketInMemory(this);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.ratelimiter.tokenbucket.configs;
+
+/**
+ * Packs a bucket's last refill timestamp and remaining tokens into a single {@code long}
+ * so both can be updated with one compare-and-set.
+ * <p>
+ * Layout: the upper 42 bits hold the timestamp in milliseconds relative to the limiter's
+ * creation (roughly 139 years), the lower 22 bits hold the token count.
+ */
+public final class TokenBucketState {
+
+    public static final int TOKEN_BITS = 22;
+    public static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    public static final int MAX_TOKENS = (int) TOKEN_MASK;
+
+    /**
+     * Marker for a bucket removed by cleanup; callers must look the bucket up again.
+     */
+    public static final long RETIRED = -1L;
+
+    private TokenBucketState() {
+    }
+
+    public static long pack(long lastRefill, long tokens) {
+        return (lastRefill << TOKEN_BITS) | tokens;
+    }
+
+    public static long lastRefill(long state) {
+        return state >>> TOKEN_BITS;
+    }
+
+    public static long tokens(long state) {
+        return state & TOKEN_MASK;
+    }
+}
@@ -0,0 +1,138 @@
+package com.ratelimiter.tokenbucket.service;
+
+import com.ratelimiter.common.metrics.RateLimiterMetrics;
+import com.ratelimiter.common.waiting.PermitWaiters;
+import com.ratelimiter.tokenbucket.configs.RateLimiterTokenBucketInMemory;
+import com.ratelimiter.tokenbucket.configs.TokenBucketState;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementation of token bucket rate limiting using in-memory storage.
+ * <p>
+ * Once a key's bucket exists, a check is a read, a lazy refill and a single CAS;
+ * it takes no lock and allocates nothing.
+ */
+public class RateLimiterTokenBucketInMemoryImpl {
+
+    private final RateLimiterTokenBucketInMemory tokenBucketInMemory;
+    private final PermitWaiters waiters = new PermitWaiters();
+
+    public RateLimiterTokenBucketInMemoryImpl(RateLimiterTokenBucketInMemory tokenBucketInMemory) {
+        this.tokenBucketInMemory = tokenBucketInMemory;
+    }
+
+    /**
+     * Checks if a request is allowed for a given key and takes one token if it is.
+     *
+     * @param key The unique identifier for the request.
+     * @return true if the request is allowed, false otherwise.
+     */
+    public boolean isAllowed(String key) {
+        RateLimiterMetrics metrics = tokenBucketInMemory.getMetrics();
+        if (!metrics.isEnabled()) {
+            return tryConsume(key, 1) == 0;
+        }
+        long start = System.nanoTime();
+        boolean allowed = tryConsume(key, 1) == 0;
+        metrics.recordDecision(tokenBucketInMemory.getMetricsName(), allowed, System.nanoTime() - start);
+        return allowed;
+    }
+
+    /**
+     * Checks if a request with the given cost is allowed, taking one token per unit of cost or none.
+     *
+     * @param key  The unique identifier for the request.
+     * @param cost The units of the capacity the request uses.
+     * @return true if the request is allowed, false otherwise (always false if the cost exceeds the capacity).
+     */
+    public boolean isAllowed(String key, int cost) {
+        if (cost <= 0) {
+            throw new IllegalArgumentException("Cost must be greater than 0");
+        }
+        return cost <= tokenBucketInMemory.getCapacity() && tryAcquire(key, cost) == 0;
+    }
+
+    /**
+     * Takes the given number of tokens if they are all available, without waiting.
+     *
+     * @param key     The unique identifier for the request.
+     * @param permits The number of tokens, at most the capacity.
+     * @return 0 if the tokens were taken, otherwise the milliseconds until the bucket refills enough.
+     */
+    public long tryAcquire(String key, int permits) {
+        checkPermits(permits);
+        RateLimiterMetrics metrics = tokenBucketInMemory.getMetrics();
+        if (!metrics.isEnabled()) {
+            return tryConsume(key, permits);
+        }
+        long start = System.nanoTime();
+        long wait = tryConsume(key, permits);
+        metrics.recordDecision(tokenBucketInMemory.getMetricsName(), wait == 0, System.nanoTime() - start);
+        return wait;
+    }
+
+    /**
+     * Takes the given number of tokens, waiting for the refill if needed. Callers waiting on the same key
+     * are served in FIFO order, and only the first of them checks the bucket, when the refill is due.
+     *
+     * @param key     The unique identifier for the request.
+     * @param permits The number of tokens, at most the capacity.
+     * @param timeout The longest time to wait.
+     * @return true if the tokens were taken, false if they would not be available within the timeout.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean acquire(String key, int permits, Duration timeout) throws InterruptedException {
+        checkPermits(permits);
+        return waiters.acquire(key, timeout, () -> tryAcquire(key, permits));
+    }
+
+    private void checkPermits(int permits) {
+        if (permits <= 0 || permits > tokenBucketInMemory.getCapacity()) {
+            throw new IllegalArgumentException("Permits must be between 1 and the capacity");
+        }
+    }
+
+    /**
+     * @return 0 if the tokens were taken, otherwise the milliseconds until enough tokens are refilled.
+     */
+    private long tryConsume(String key, int permits) {
+        AtomicLong bucket = bucketFor(key);
+        while (true) {
+            long state = bucket.get();
+            if (state == TokenBucketState.RETIRED) {
+                bucket = bucketFor(key);
+                continue;
+            }
+
+            long now = tokenBucketInMemory.currentTick();
+            long refilled = tokenBucketInMemory.refill(state, now);
+            long tokens = TokenBucketState.tokens(refilled);
+            if (tokens < permits) {
+                // Denied requests leave the bucket untouched; the refill is recomputed next time
+                return tokenBucketInMemory.millisUntilRefilled(refilled, permits - tokens, now);
+            }
+
+            long next = TokenBucketState.pack(TokenBucketState.lastRefill(refilled), tokens - permits);
+            if (bucket.compareAndSet(state, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private AtomicLong bucketFor(String key) {
+        Map<String, AtomicLong> buckets = tokenBucketInMemory.getBuckets();
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null && bucket.get() != TokenBucketState.RETIRED) {
+            return bucket;
+        }
+        if (bucket != null) {
+            // Help the cleanup task unlink the retired bucket before creating a fresh one
+            buckets.remove(key, bucket);
+        }
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(
+                TokenBucketState.pack(tokenBucketInMemory.currentTick(), tokenBucketInMemory.getCapacity())));
+    }
+}